@@ -0,0 +1,194 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CellValueSource;
+import com.example.demo.formula.CompiledFormula;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.GridValues;
+import com.example.demo.formula.RangeRef;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Compares the packed-coordinate structures with the boxed ones they replaced: evaluating formulas
+ * against a sheet's values, and walking the dependency graph for a recalculation. Run with -prof gc
+ * and compare gc.alloc.rate.norm to see the allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CellKeyBenchmark {
+    private static final int ROWS = 1000;
+    private static final int COLS = 10;
+    private static final int CHAIN = 1000;
+
+    private final GridValues packedValues = new GridValues();
+    private final LegacyGridValues boxedValues = new LegacyGridValues();
+    private final DependencyGraph packedGraph = new DependencyGraph();
+    private final LegacyDependencyGraph boxedGraph = new LegacyDependencyGraph();
+    private final List<CellRef> changed = List.of(new CellRef(1, 1));
+
+    private CompiledFormula pointReads;
+    private CompiledFormula rangeRead;
+
+    @Setup
+    public void setup() {
+        for (int row = 1; row <= ROWS; row++) {
+            for (int col = 1; col <= COLS; col++) {
+                String value = String.valueOf(row * col);
+                packedValues.put(row, col, value);
+                boxedValues.put(row, col, value);
+            }
+        }
+        FormulaCompiler compiler = new FormulaCompiler(100);
+        pointReads = compiler.compile("=A900 + B950 * C990 - J999 / D500");
+        rangeRead = compiler.compile("=SUM(A200:E400)");
+
+        // B1 = A1, B2 = B1, ... a chain every change to A1 has to walk, plus a range reader at the end
+        CellRef previous = new CellRef(1, 1);
+        for (int row = 1; row <= CHAIN; row++) {
+            CellRef cell = new CellRef(row, 2);
+            List<RangeRef> reads = List.of(RangeRef.of(previous, previous));
+            packedGraph.setPrecedents(cell, reads);
+            boxedGraph.setPrecedents(cell, reads);
+            previous = cell;
+        }
+        List<RangeRef> total = List.of(RangeRef.parse("B1:B" + CHAIN));
+        packedGraph.setPrecedents(new CellRef(1, 3), total);
+        boxedGraph.setPrecedents(new CellRef(1, 3), total);
+    }
+
+    @Benchmark
+    public double pointReadsPacked() {
+        return pointReads.evaluate(packedValues);
+    }
+
+    @Benchmark
+    public double pointReadsBoxed() {
+        return pointReads.evaluate(boxedValues);
+    }
+
+    @Benchmark
+    public double rangeReadPacked() {
+        return rangeRead.evaluate(packedValues);
+    }
+
+    @Benchmark
+    public double rangeReadBoxed() {
+        return rangeRead.evaluate(boxedValues);
+    }
+
+    @Benchmark
+    public List<CellRef> recalculationOrderPacked() {
+        return packedGraph.recalculationOrder(changed);
+    }
+
+    @Benchmark
+    public List<CellRef> recalculationOrderBoxed() {
+        return boxedGraph.recalculationOrder(changed);
+    }
+
+    // Copy of GridValues before packed keys: rows and columns boxed into nested maps
+    static final class LegacyGridValues implements CellValueSource {
+        private final NavigableMap<Integer, Map<Integer, String>> rows = new TreeMap<>();
+
+        void put(int row, int col, String value) {
+            rows.computeIfAbsent(row, k -> new HashMap<>()).put(col, value);
+        }
+
+        @Override
+        public String valueAt(int row, int col) {
+            Map<Integer, String> cols = rows.get(row);
+            return cols == null ? null : cols.get(col);
+        }
+
+        @Override
+        public void forEachValueInRange(RangeRef range, Consumer<String> action) {
+            for (Map<Integer, String> cols : rows.subMap(range.startRow(), true, range.endRow(), true).values()) {
+                for (int col = range.startCol(); col <= range.endCol(); col++) {
+                    String value = cols.get(col);
+                    if (value != null) {
+                        action.accept(value);
+                    }
+                }
+            }
+        }
+    }
+
+    // Copy of the recalculation walk of DependencyGraph before packed keys, keyed by CellRef records
+    static final class LegacyDependencyGraph {
+        private final Map<CellRef, Set<CellRef>> cellDependents = new HashMap<>();
+        private final Map<RangeRef, Set<CellRef>> rangeDependents = new HashMap<>();
+
+        void setPrecedents(CellRef dependent, List<RangeRef> ranges) {
+            for (RangeRef range : ranges) {
+                if (range.size() == 1) {
+                    cellDependents.computeIfAbsent(new CellRef(range.startRow(), range.startCol()), k -> new HashSet<>()).add(dependent);
+                } else {
+                    rangeDependents.computeIfAbsent(range, k -> new HashSet<>()).add(dependent);
+                }
+            }
+        }
+
+        Set<CellRef> dependentsOf(CellRef cell) {
+            Set<CellRef> direct = cellDependents.getOrDefault(cell, Set.of());
+            if (rangeDependents.isEmpty()) {
+                return direct;
+            }
+            Set<CellRef> result = new HashSet<>(direct);
+            for (Map.Entry<RangeRef, Set<CellRef>> entry : rangeDependents.entrySet()) {
+                if (entry.getKey().contains(cell.row(), cell.col())) {
+                    result.addAll(entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        List<CellRef> recalculationOrder(Collection<CellRef> changed) {
+            Set<CellRef> cells = new HashSet<>();
+            Deque<CellRef> stack = new ArrayDeque<>(changed);
+            while (!stack.isEmpty()) {
+                for (CellRef dependent : dependentsOf(stack.pop())) {
+                    if (cells.add(dependent)) {
+                        stack.push(dependent);
+                    }
+                }
+            }
+
+            Map<CellRef, Integer> pendingInputs = new HashMap<>();
+            for (CellRef cell : cells) {
+                pendingInputs.put(cell, 0);
+            }
+            for (CellRef cell : cells) {
+                for (CellRef dependent : dependentsOf(cell)) {
+                    pendingInputs.computeIfPresent(dependent, (k, count) -> count + 1);
+                }
+            }
+            Deque<CellRef> ready = new ArrayDeque<>();
+            pendingInputs.forEach((cell, count) -> {
+                if (count == 0) {
+                    ready.add(cell);
+                }
+            });
+            List<CellRef> order = new ArrayList<>(cells.size());
+            while (!ready.isEmpty()) {
+                CellRef cell = ready.poll();
+                order.add(cell);
+                for (CellRef dependent : dependentsOf(cell)) {
+                    Integer remaining = pendingInputs.computeIfPresent(dependent, (k, count) -> count - 1);
+                    if (remaining != null && remaining == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.formula.CellMap;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.Cell;
+import com.example.demo.model.CellDependency;
+import com.example.demo.model.Sheet;
+import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellDependencyRepository;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetRepository;
+import com.example.demo.repository.SheetSnapshotRepository;
+import com.example.demo.service.ActivityLogService;
+import com.example.demo.service.ActivityLogWriter;
+import com.example.demo.service.CellService;
+import com.example.demo.service.DependencyGraphService;
+import com.example.demo.service.FormulaMetrics;
+import com.example.demo.service.SheetCellCache;
+import com.example.demo.service.SheetEventHub;
+import com.example.demo.service.SheetLocks;
+import com.example.demo.service.SheetSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+
+/*
+ * Map-backed stand-ins for the JPA repositories, so the services can be benchmarked without a database.
+ * Only the methods the cell write path calls are implemented; anything else throws.
+ */
+public class InMemoryRepositories {
+    // sheet id -> cells keyed by coordinate
+    private final Map<Integer, CellMap<Cell>> cells = new HashMap<>();
+    private final Map<Integer, Cell> cellsById = new HashMap<>();
+    // sheet id -> dependency rows keyed by the formula cell
+    private final Map<Integer, CellMap<List<CellDependency>>> dependencies = new HashMap<>();
+    private int nextId = 1;
+    private long activityLogRows;
+
+    public final CellRepository cellRepository = proxy(CellRepository.class, this::cellRepositoryCall);
+    public final CellDependencyRepository cellDependencyRepository = proxy(CellDependencyRepository.class, this::dependencyRepositoryCall);
+    public final SheetRepository sheetRepository = proxy(SheetRepository.class, (proxy, method, args) -> {
+        if (method.getName().equals("incrementVersion")) {
+            return 1L;
+        }
+        throw unsupported(method.getName());
+    });
+    public final ActivityLogRepository activityLogRepository = proxy(ActivityLogRepository.class, (proxy, method, args) -> {
+        if (method.getName().equals("batchInsert")) {
+            activityLogRows += ((List<?>) args[0]).size();
+            return null;
+        }
+        throw unsupported(method.getName());
+    });
+
+    // A CellService wired to these repositories, with synchronous activity logging and an unbounded cell cache
+    public CellService cellService() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityLogWriter writer = new ActivityLogWriter(activityLogRepository, TransactionOperations.withoutTransaction(), false, 1, 1, 1, 1, 1, meterRegistry);
+        EntityManager entityManager = proxy(EntityManager.class, (proxy, method, args) -> null);
+        // Snapshots are queued after commit, which inTransaction does not signal, so none are ever taken
+        SheetSnapshotService snapshots = new SheetSnapshotService(proxy(SheetSnapshotRepository.class, (proxy, method, args) -> {
+            throw unsupported(method.getName());
+        }), sheetRepository, cellRepository, activityLogRepository, TransactionOperations.withoutTransaction(), 10_000, meterRegistry);
+        SheetLocks sheetLocks = new SheetLocks(64, 0);
+        return new CellService(cellRepository, new ActivityLogService(writer, snapshots, activityLogRepository), new FormulaCompiler(10_000),
+                new DependencyGraphService(cellDependencyRepository, sheetLocks, Long.MAX_VALUE), entityManager,
+                new SheetCellCache(cellRepository, Long.MAX_VALUE), sheetLocks, new FormulaMetrics(meterRegistry),
+                sheetRepository, new SheetEventHub(sheetRepository, new ObjectMapper(), 100, 10_000, 15_000, 1_800_000, 1, meterRegistry));
+    }
+
+    public long getActivityLogRows() {
+        return activityLogRows;
+    }
+
+    // Runs the work the way a committed transaction would, firing the completion callbacks the services register
+    public static <T> T inTransaction(Supplier<T> work) {
+        TransactionSynchronizationManager.initSynchronization();
+        int status = TransactionSynchronization.STATUS_ROLLED_BACK;
+        try {
+            T result = work.get();
+            status = TransactionSynchronization.STATUS_COMMITTED;
+            return result;
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+        }
+    }
+
+    private Object cellRepositoryCall(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "save": {
+                Cell cell = (Cell) args[0];
+                if (cell.getId() == null) {
+                    cell.setId(nextId++);
+                }
+                sheetCells(cell.getSheet().getId()).put(cell.getRowNum(), cell.getColIdx(), cell);
+                cellsById.put(cell.getId(), cell);
+                return cell;
+            }
+            case "upsert": {
+                Cell cell = (Cell) args[1];
+                cell.setColNum(CellRef.columnName(cell.getColIdx()));
+                Cell stored = sheetCells((Integer) args[0]).get(cell.getRowNum(), cell.getColIdx());
+                if (stored == null) {
+                    cell.setId(nextId++);
+                    sheetCells((Integer) args[0]).put(cell.getRowNum(), cell.getColIdx(), cell);
+                    cellsById.put(cell.getId(), cell);
+                    return true;
+                }
+                stored.setColNum(cell.getColNum());
+                stored.setValue(cell.getValue());
+                stored.setFormula(cell.getFormula());
+                cell.setId(stored.getId());
+                return false;
+            }
+            case "findBySheetAndRowNumAndColIdx": {
+                CellMap<Cell> sheet = cells.get(((Sheet) args[0]).getId());
+                return Optional.ofNullable(sheet == null ? null : sheet.get((Integer) args[1], (Integer) args[2]));
+            }
+            case "findRowsForBatch": {
+                List<Cell> rows = new ArrayList<>();
+                sheetCells((Integer) args[0]).forEach((row, col, cell) -> {
+                    if (row >= (Integer) args[1] && row <= (Integer) args[2]) {
+                        Cell copy = new Cell(null, row, cell.getColNum(), cell.getValue(), cell.getFormula());
+                        copy.setId(cell.getId());
+                        rows.add(copy);
+                    }
+                });
+                return rows;
+            }
+            case "countBySheetId":
+                return (long) sheetCells((Integer) args[0]).size();
+            case "findInRange": {
+                List<Cell> found = new ArrayList<>();
+                sheetCells((Integer) args[0]).forEachInRange(range(args), (row, col, cell) -> found.add(cell));
+                return found;
+            }
+            case "findValuesInRange": {
+                List<String> found = new ArrayList<>();
+                sheetCells((Integer) args[0]).forEachInRange(range(args), (row, col, cell) -> {
+                    if (cell.getValue() != null) {
+                        found.add(cell.getValue());
+                    }
+                });
+                return found;
+            }
+            case "batchInsert":
+                for (Object o : (List<?>) args[1]) {
+                    Cell cell = (Cell) o;
+                    cell.setId(nextId++);
+                    sheetCells((Integer) args[0]).put(cell.getRowNum(), cell.getColIdx(), cell);
+                    cellsById.put(cell.getId(), cell);
+                }
+                return null;
+            case "batchUpdate":
+                for (Object o : (List<?>) args[0]) {
+                    Cell update = (Cell) o;
+                    Cell stored = cellsById.get(update.getId());
+                    stored.setValue(update.getValue());
+                    stored.setFormula(update.getFormula());
+                }
+                return null;
+            case "findById":
+                return Optional.ofNullable(cellsById.get((Integer) args[0]));
+            case "delete": {
+                Cell cell = (Cell) args[0];
+                sheetCells(cell.getSheet().getId()).remove(cell.getRowNum(), cell.getColIdx());
+                cellsById.remove(cell.getId());
+                return null;
+            }
+            default:
+                if (method.isDefault()) {
+                    return InvocationHandler.invokeDefault(proxy, method, args);
+                }
+                throw unsupported(method.getName());
+        }
+    }
+
+    private Object dependencyRepositoryCall(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "findBySheetId": {
+                List<CellDependency> rows = new ArrayList<>();
+                sheetDependencies((Integer) args[0]).forEach((row, col, deps) -> rows.addAll(deps));
+                return rows;
+            }
+            case "deleteByDependent": {
+                List<CellDependency> removed = sheetDependencies((Integer) args[0]).remove((Integer) args[1], (Integer) args[2]);
+                return removed == null ? 0 : removed.size();
+            }
+            case "saveAll": {
+                for (Object o : (Iterable<?>) args[0]) {
+                    CellDependency dep = (CellDependency) o;
+                    sheetDependencies(dep.getSheetId())
+                            .computeIfAbsent(CellRef.pack(dep.getDependentRow(), dep.getDependentCol()), k -> new ArrayList<>())
+                            .add(dep);
+                }
+                return args[0];
+            }
+            case "replaceAll": {
+                Integer sheetId = (Integer) args[0];
+                CellMap<List<CellDependency>> sheet = sheetDependencies(sheetId);
+                ((Map<?, ?>) args[1]).forEach((key, value) -> {
+                    CellRef dependent = (CellRef) key;
+                    List<CellDependency> rows = new ArrayList<>();
+                    for (Object o : (List<?>) value) {
+                        RangeRef range = (RangeRef) o;
+                        rows.add(new CellDependency(null, sheetId, dependent.row(), dependent.col(),
+                                range.startRow(), range.startCol(), range.endRow(), range.endCol()));
+                    }
+                    if (rows.isEmpty()) {
+                        sheet.remove(dependent.packed());
+                    } else {
+                        sheet.put(dependent.packed(), rows);
+                    }
+                });
+                return null;
+            }
+            default:
+                throw unsupported(method.getName());
+        }
+    }
+
+    private CellMap<Cell> sheetCells(Integer sheetId) {
+        return cells.computeIfAbsent(sheetId, k -> new CellMap<>());
+    }
+
+    private CellMap<List<CellDependency>> sheetDependencies(Integer sheetId) {
+        return dependencies.computeIfAbsent(sheetId, k -> new CellMap<>());
+    }
+
+    private static RangeRef range(Object[] args) {
+        return new RangeRef((Integer) args[1], (Integer) args[3], (Integer) args[2], (Integer) args[4]);
+    }
+
+    private static UnsupportedOperationException unsupported(String method) {
+        return new UnsupportedOperationException(method + " is not implemented by the in-memory repositories");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    default: return type.getSimpleName() + "(in-memory)";
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
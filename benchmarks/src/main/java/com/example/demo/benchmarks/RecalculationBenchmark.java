@@ -0,0 +1,128 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.Book;
+import com.example.demo.model.Cell;
+import com.example.demo.model.Sheet;
+import com.example.demo.service.CellService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Dependency registration and recalculation over synthetic sheets, through the real CellService on
+ * in-memory repositories. Every shape hangs off A1, so updateRoot recalculates all `size` formulas:
+ *   CHAIN    B1 = A1 + 1, B2 = B1 + 1, ...          (depth size)
+ *   FAN      B1 = A1 * 1, B2 = A1 * 2, ...          (width size)
+ *   DIAMOND  B1 .. B(size-1) read A1, C1 = SUM(B1:B(size-1))
+ *   RANGES   B1 = SUM(A1:A2), B2 = SUM(A1:A3), ...  (size distinct ranges; every lookup of a dependent
+ *            has to find the ranges containing a cell among all of them)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecalculationBenchmark {
+    public enum Shape { CHAIN, FAN, DIAMOND, RANGES }
+
+    @Param({"CHAIN", "FAN", "DIAMOND", "RANGES"})
+    public Shape shape;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private CellService cellService;
+    private Sheet sheet;
+    private DependencyGraph graph;
+    private Map<CellRef, List<RangeRef>> precedents;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Book book = new Book();
+        book.setId(1);
+        book.setName("bench");
+        sheet = new Sheet();
+        sheet.setId(1);
+        sheet.setName("bench");
+        sheet.setBook(book);
+
+        InMemoryRepositories repositories = new InMemoryRepositories();
+        cellService = repositories.cellService();
+        FormulaCompiler compiler = new FormulaCompiler(0);
+        precedents = new LinkedHashMap<>();
+        graph = new DependencyGraph();
+
+        write(new Cell(sheet, 1, "A", "1", null));
+        for (Map.Entry<CellRef, String> formula : formulas().entrySet()) {
+            CellRef ref = formula.getKey();
+            write(new Cell(sheet, ref.row(), ref.colNum(), null, formula.getValue()));
+            List<RangeRef> ranges = DependencyGraph.rangesOf(compiler.compile(formula.getValue()));
+            precedents.put(ref, ranges);
+            graph.setPrecedents(ref, ranges);
+        }
+    }
+
+    private Map<CellRef, String> formulas() {
+        Map<CellRef, String> formulas = new LinkedHashMap<>();
+        switch (shape) {
+            case CHAIN:
+                for (int row = 1; row <= size; row++) {
+                    formulas.put(new CellRef(row, 2), (row == 1 ? "=A1" : "=B" + (row - 1)) + " + 1");
+                }
+                break;
+            case FAN:
+                for (int row = 1; row <= size; row++) {
+                    formulas.put(new CellRef(row, 2), "=A1 * " + row);
+                }
+                break;
+            case DIAMOND:
+                for (int row = 1; row < size; row++) {
+                    formulas.put(new CellRef(row, 2), "=A1 + " + row);
+                }
+                formulas.put(new CellRef(1, 3), "=SUM(B1:B" + (size - 1) + ")");
+                break;
+            case RANGES:
+                for (int row = 1; row <= size; row++) {
+                    formulas.put(new CellRef(row, 2), "=SUM(A1:A" + (row + 1) + ")");
+                }
+                break;
+        }
+        return formulas;
+    }
+
+    private Cell write(Cell cell) {
+        return InMemoryRepositories.inTransaction(() -> cellService.createOrUpdateCell(cell)).cell();
+    }
+
+    // A cell write that recalculates every formula of the shape
+    @Benchmark
+    public Cell updateRoot() {
+        return write(new Cell(sheet, 1, "A", String.valueOf(next++ % 1000), null));
+    }
+
+    // Cycle checks and graph inserts for every formula of the shape, as when the sheet is first written
+    @Benchmark
+    public DependencyGraph registerDependencies() {
+        DependencyGraph fresh = new DependencyGraph();
+        precedents.forEach((ref, ranges) -> {
+            fresh.checkForCycle(ref, ranges);
+            fresh.setPrecedents(ref, ranges);
+        });
+        return fresh;
+    }
+
+    // Only the topological ordering of a recalculation, without evaluating or writing
+    @Benchmark
+    public List<CellRef> recalculationOrder() {
+        return graph.recalculationOrder(List.of(new CellRef(1, 1)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ActivityLogFilter;
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.ActivityLog;
+import com.example.demo.service.ActivityLogService;
+import com.example.demo.service.SheetHistoryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/activity")
+public class ActivityController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final ActivityLogService activityLogService;
+
+    public ActivityController(ActivityLogService activityLogService) {
+        this.activityLogService = activityLogService;
+    }
+
+    // Activity log entries, newest first, one keyset page at a time
+    @GetMapping
+    public ResponseEntity<Object> getActivity(@RequestParam(required = false) Integer bookId,
+                                              @RequestParam(required = false) Integer sheetId,
+                                              @RequestParam(required = false) String cell,
+                                              @RequestParam(required = false) String user,
+                                              @RequestParam(required = false) String operation,
+                                              @RequestParam(required = false) String from,
+                                              @RequestParam(required = false) String to,
+                                              @RequestParam(required = false) Integer after,
+                                              @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        try {
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+            }
+            CellRef cellRef = cell == null ? null : CellRef.parse(cell);
+            ActivityLogFilter filter = new ActivityLogFilter(bookId, sheetId,
+                    cellRef == null ? null : cellRef.row(), cellRef == null ? null : cellRef.colNum(),
+                    user, operation == null ? null : parseOperation(operation),
+                    from == null ? null : SheetHistoryService.parseTimestamp("from", from),
+                    to == null ? null : SheetHistoryService.parseTimestamp("to", to));
+
+            // Fetch one extra entry to learn whether another page follows
+            List<ActivityLog> entries = activityLogService.getActivityPage(filter, after, limit + 1);
+            boolean hasMore = entries.size() > limit;
+            if (hasMore) {
+                entries = entries.subList(0, limit);
+            }
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", 200);
+            body.put("data", entries);
+            if (hasMore) {
+                body.put("nextCursor", entries.get(entries.size() - 1).getId());
+            }
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", "/activity"));
+        }
+    }
+
+    private static ActivityLog.OperationType parseOperation(String operation) {
+        try {
+            return ActivityLog.OperationType.valueOf(operation.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("operation must be ADD, UPDATE or DELETE.");
+        }
+    }
+}
@@ -10,7 +10,6 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/books")
@@ -23,11 +22,7 @@ public class BookController {
 
 	@GetMapping
 	public ResponseEntity<Object> getAllBooks() {
-		List<BookDTO> books = bookService.getAllBooks()
-				.stream()
-				.map(BookDTO::new)
-				.collect(Collectors.toList());
-		return ResponseEntity.ok(Map.of("status", 200, "data", books));
+		return ResponseEntity.ok(Map.of("status", 200, "data", bookService.getAllBooks()));
 	}
 
     @GetMapping("/{id}")
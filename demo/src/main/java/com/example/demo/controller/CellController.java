@@ -2,30 +2,43 @@ package com.example.demo.controller;
 
 import com.example.demo.dto.CellDTO;
 import com.example.demo.exception.*;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.RangeRef;
 import com.example.demo.model.Cell;
 import com.example.demo.model.Sheet;
+import com.example.demo.service.CellBatchResult;
 import com.example.demo.service.CellService;
+import com.example.demo.service.CellWriteResult;
+import com.example.demo.service.SheetLocks;
 import com.example.demo.service.SheetService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/cells")
 public class CellController {
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 10000;
+
     private final CellService cellService;
     private final SheetService sheetService;
+    private final SheetLocks sheetLocks;
 
-    public CellController(CellService cellService, SheetService sheetService) {
+    public CellController(CellService cellService, SheetService sheetService, SheetLocks sheetLocks) {
         this.cellService = cellService;
         this.sheetService = sheetService;
+        this.sheetLocks = sheetLocks;
     }
 
-    private Sheet resolveSheet(Map<String, Object> sheetMap) {
+    // Writes lock the sheet by this id before anything is read through the request's EntityManager (SheetLocks.callLocked)
+    private Integer resolveSheetId(Map<String, Object> sheetMap) {
         if (sheetMap == null) {
             throw new IllegalArgumentException("Sheet object is required.");
         }
@@ -35,17 +48,16 @@ public class CellController {
         Map<String, Object> bookMap = (Map<String, Object>) sheetMap.get("book");
 
         if (sheetId != null) {
-            return sheetService.getSheetById(sheetId)
-                    .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+            return sheetId;
         } else if (sheetName != null && bookMap != null) {
             Integer bookId = (Integer) bookMap.get("id");
             String bookName = (String) bookMap.get("name");
 
             if (bookId != null) {
-                return sheetService.getSheetByBookIdAndName(bookId, sheetName)
+                return sheetService.getSheetIdByBookIdAndName(bookId, sheetName)
                         .orElseThrow(() -> new SheetNotFoundException("Sheet with name '" + sheetName + "' not found under Book ID " + bookId));
             } else if (bookName != null) {
-                return sheetService.getSheetByBookNameAndSheetName(bookName, sheetName)
+                return sheetService.getSheetIdByBookNameAndSheetName(bookName, sheetName)
                         .orElseThrow(() -> new SheetNotFoundException("Sheet with name '" + sheetName + "' not found under Book '" + bookName + "'"));
             } else {
                 throw new IllegalArgumentException("Book must have an ID or name.");
@@ -55,27 +67,68 @@ public class CellController {
         }
     }
 
+    private Sheet loadSheet(Integer sheetId) {
+        return sheetService.getSheetById(sheetId)
+                .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+    }
+
     @GetMapping
-    public ResponseEntity<Object> getCellsBySheetId(@RequestParam Integer sheetId) {
+    public ResponseEntity<Object> getCellsBySheetId(@RequestParam Integer sheetId,
+                                                    @RequestParam(required = false) String range,
+                                                    @RequestParam(required = false) String after,
+                                                    @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                                    WebRequest request) {
         try {
             Sheet sheet = sheetService.getSheetById(sheetId)
                     .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
-            List<CellDTO> cellDTOs = cellService.getCellsBySheet(sheet).stream().map(CellDTO::new).collect(Collectors.toList());
-            return ResponseEntity.ok(Map.of("status", 200, "data", cellDTOs));
+            // Unchanged since the client's copy: answered without reading any cells
+            String etag = SheetETags.of(sheet);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+            }
+            RangeRef rangeRef = range == null ? null : RangeRef.parse(range);
+            CellRef afterRef = after == null ? null : CellRef.parse(after);
+
+            // Fetch one extra row to learn whether another page follows
+            List<CellDTO> cells = cellService.getCellsPage(sheet, rangeRef, afterRef, limit + 1);
+            boolean hasMore = cells.size() > limit;
+            if (hasMore) {
+                cells = cells.subList(0, limit);
+            }
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", 200);
+            body.put("data", cells);
+            if (hasMore) {
+                CellDTO last = cells.get(cells.size() - 1);
+                body.put("nextCursor", last.getColNum().toUpperCase() + last.getRowNum());
+            }
+            return ResponseEntity.ok().eTag(etag).body(body);
         } catch (SheetNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", "/cells"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", "/cells"));
         }
     }
 
     @GetMapping("/{sheetId}/{rowNum}/{colNum}")
-    public ResponseEntity<Object> getCellBySheetRowCol(@PathVariable int sheetId, @PathVariable int rowNum, @PathVariable String colNum) {
+    public ResponseEntity<Object> getCellBySheetRowCol(@PathVariable int sheetId, @PathVariable int rowNum, @PathVariable String colNum,
+                                                       WebRequest request) {
         try {
             Sheet sheet = sheetService.getSheetById(sheetId)
                     .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+            String etag = SheetETags.of(sheet);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
             Cell cell = cellService.getCellBySheetRowCol(sheet, rowNum, colNum)
                     .orElseThrow(() -> new CellNotFoundException("Cell not found for Sheet ID " + sheetId + ", Row " + rowNum + ", Column " + colNum));
-            return ResponseEntity.ok(Map.of("status", 200, "data", new CellDTO(cell)));
+            return ResponseEntity.ok().eTag(etag).body(Map.of("status", 200, "data", new CellDTO(cell)));
         } catch (SheetNotFoundException | CellNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
@@ -90,7 +143,7 @@ public class CellController {
     @PostMapping
     public ResponseEntity<Object> createOrUpdateCell(@RequestBody Map<String, Object> requestBody) {
         try {
-            Sheet sheet = resolveSheet((Map<String, Object>) requestBody.get("sheet"));
+            Integer sheetId = resolveSheetId((Map<String, Object>) requestBody.get("sheet"));
             Integer rowNum = (Integer) requestBody.get("rowNum");
             String colNum = (String) requestBody.get("colNum");
             String value = (String) requestBody.getOrDefault("value", null);
@@ -100,20 +153,59 @@ public class CellController {
                 throw new IllegalArgumentException("Row number and column number are required.");
             }
     
-            Cell cell = new Cell(sheet, rowNum, colNum, value, formula);
-            boolean existedBefore = cellService.getCellBySheetRowCol(sheet, rowNum, colNum).isPresent();
-    
-            Cell result = cellService.createOrUpdateCell(cell);
-            int status = existedBefore ? 200 : 201;
+            CellWriteResult result = sheetLocks.callLocked(sheetId,
+                    () -> cellService.createOrUpdateCell(new Cell(loadSheet(sheetId), rowNum, colNum, value, formula)));
+            int status = result.created() ? 201 : 200;
     
             return ResponseEntity.status(status)
-                .body(Map.of("status", status, "data", new CellDTO(result)));
+                .body(Map.of("status", status, "data", new CellDTO(result.cell())));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", "/cells"));
         } catch (IllegalArgumentException | SheetNotFoundException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", "/cells"));
         }
     }
     
+    @PostMapping("/batch")
+    public ResponseEntity<Object> upsertCells(@RequestBody Map<String, Object> requestBody) {
+        try {
+            Integer sheetId = resolveSheetId((Map<String, Object>) requestBody.get("sheet"));
+            List<Map<String, Object>> cellMaps = (List<Map<String, Object>>) requestBody.get("cells");
+
+            if (cellMaps == null || cellMaps.isEmpty()) {
+                throw new IllegalArgumentException("A non-empty cells array is required.");
+            }
+
+            List<Cell> cells = new ArrayList<>(cellMaps.size());
+            for (Map<String, Object> cellMap : cellMaps) {
+                Integer rowNum = (Integer) cellMap.get("rowNum");
+                String colNum = (String) cellMap.get("colNum");
+                if (rowNum == null || colNum == null) {
+                    throw new IllegalArgumentException("Row number and column number are required for every cell.");
+                }
+                cells.add(new Cell(null, rowNum, colNum, (String) cellMap.get("value"), (String) cellMap.get("formula")));
+            }
+
+            CellBatchResult result = sheetLocks.callLocked(sheetId, () -> {
+                Sheet sheet = loadSheet(sheetId);
+                cells.forEach(cell -> cell.setSheet(sheet));
+                return cellService.upsertCells(sheet, cells);
+            });
+            return ResponseEntity.ok(Map.of("status", 200, "data", Map.of(
+                    "created", result.created(),
+                    "updated", result.updated(),
+                    "recalculated", result.recalculated())));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", "/cells/batch"));
+        } catch (IllegalArgumentException | SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", "/cells/batch"));
+        }
+    }
+
     @PutMapping
     public ResponseEntity<Object> updateCell(@RequestBody Map<String, Object> requestBody) {
         return createOrUpdateCell(requestBody);
@@ -122,7 +214,7 @@ public class CellController {
     @DeleteMapping
     public ResponseEntity<Object> deleteCellHumanReadable(@RequestBody Map<String, Object> requestBody) {
         try {
-            Sheet sheet = resolveSheet((Map<String, Object>) requestBody.get("sheet"));
+            Integer sheetId = resolveSheetId((Map<String, Object>) requestBody.get("sheet"));
             Integer rowNum = (Integer) requestBody.get("rowNum");
             String colNum = (String) requestBody.get("colNum");
 
@@ -130,8 +222,14 @@ public class CellController {
                 throw new IllegalArgumentException("Row number and column number are required.");
             }
 
-            cellService.deleteCellByCoordinates(sheet, rowNum, colNum);
+            sheetLocks.callLocked(sheetId, () -> {
+                cellService.deleteCellByCoordinates(loadSheet(sheetId), rowNum, colNum);
+                return null;
+            });
             return ResponseEntity.ok(Map.of("status", 200, "message", "Cell deleted successfully"));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", "/cells"));
         } catch (IllegalArgumentException | SheetNotFoundException | CellNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", "/cells"));
@@ -141,8 +239,16 @@ public class CellController {
     @DeleteMapping("/{cellId}")
     public ResponseEntity<Object> deleteCellById(@PathVariable Integer cellId) {
         try {
-            cellService.deleteCellById(cellId);
+            Integer sheetId = cellService.getSheetIdOfCell(cellId)
+                    .orElseThrow(() -> new CellNotFoundException("Cell with ID " + cellId + " not found."));
+            sheetLocks.callLocked(sheetId, () -> {
+                cellService.deleteCellById(cellId);
+                return null;
+            });
             return ResponseEntity.ok(Map.of("status", 200, "message", "Cell deleted successfully by ID"));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", "/cells/" + cellId));
         } catch (CellNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
@@ -168,10 +274,14 @@ public class CellController {
                                                         @PathVariable int rowNum,
                                                         @PathVariable String colNum) {
         try {
-            Sheet sheet = sheetService.getSheetById(sheetId)
-                    .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
-            cellService.deleteCellByCoordinates(sheet, rowNum, colNum);
+            sheetLocks.callLocked(sheetId, () -> {
+                cellService.deleteCellByCoordinates(loadSheet(sheetId), rowNum, colNum);
+                return null;
+            });
             return ResponseEntity.ok(Map.of("status", 200, "message", "Cell deleted successfully by sheet/row/col"));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", "/cells/" + sheetId + "/" + rowNum + "/" + colNum));
         } catch (SheetNotFoundException | CellNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
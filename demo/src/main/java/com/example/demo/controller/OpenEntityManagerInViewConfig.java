@@ -0,0 +1,28 @@
+package com.example.demo.controller;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/*
+ * Spring Boot's open-in-view (spring.jpa.open-in-view, off in application.properties) with one exception:
+ * event streams. The view's EntityManager lives as long as the request and keeps its JDBC connection, which
+ * for a subscription is as long as the client stays connected, so a few subscribers would drain the pool.
+ */
+@Configuration(proxyBeanMethods = false)
+class OpenEntityManagerInViewConfig implements WebMvcConfigurer {
+    private final EntityManagerFactory entityManagerFactory;
+
+    OpenEntityManagerInViewConfig(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+        interceptor.setEntityManagerFactory(entityManagerFactory);
+        registry.addWebRequestInterceptor(interceptor).excludePathPatterns("/sheets/*/events");
+    }
+}
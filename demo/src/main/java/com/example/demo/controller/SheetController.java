@@ -1,42 +1,91 @@
 package com.example.demo.controller;
 
 import com.example.demo.dto.SheetDTO;
+import com.example.demo.exception.HistoryArchivedException;
+import com.example.demo.exception.SheetBusyException;
 import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.formula.RangeRef;
 import com.example.demo.model.Sheet;
+import com.example.demo.service.CellService;
+import com.example.demo.service.SheetChanges;
+import com.example.demo.service.SheetChangesService;
+import com.example.demo.service.SheetDataFormat;
+import com.example.demo.service.SheetAtVersion;
+import com.example.demo.service.SheetEventHub;
+import com.example.demo.service.SheetHistoryService;
+import com.example.demo.service.ImportJob;
+import com.example.demo.service.SheetExportService;
+import com.example.demo.service.SheetImportService;
+import com.example.demo.service.SheetLocks;
+import com.example.demo.service.SheetRange;
+import com.example.demo.service.RangeWriteResult;
 import com.example.demo.service.SheetService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/sheets")
 public class SheetController {
     private final SheetService sheetService;
+    private final SheetExportService sheetExportService;
+    private final SheetImportService sheetImportService;
+    private final SheetChangesService sheetChangesService;
+    private final SheetEventHub sheetEventHub;
+    private final SheetHistoryService sheetHistoryService;
+    private final CellService cellService;
+    private final SheetLocks sheetLocks;
+    private final ObjectMapper objectMapper;
 
-    public SheetController(SheetService sheetService) {
+    public SheetController(SheetService sheetService, SheetExportService sheetExportService, SheetImportService sheetImportService,
+                           SheetChangesService sheetChangesService, SheetEventHub sheetEventHub, SheetHistoryService sheetHistoryService,
+                           CellService cellService, SheetLocks sheetLocks, ObjectMapper objectMapper) {
         this.sheetService = sheetService;
+        this.sheetExportService = sheetExportService;
+        this.sheetImportService = sheetImportService;
+        this.sheetChangesService = sheetChangesService;
+        this.sheetEventHub = sheetEventHub;
+        this.sheetHistoryService = sheetHistoryService;
+        this.cellService = cellService;
+        this.sheetLocks = sheetLocks;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
     public ResponseEntity<Object> getAllSheets() {
-        List<SheetDTO> sheets = sheetService.getAllSheets()
-                .stream()
-                .map(SheetDTO::new)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(Map.of("status", 200, "data", sheets));
+        return ResponseEntity.ok(Map.of("status", 200, "data", sheetService.getAllSheets()));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Object> getSheetById(@PathVariable int id) {
+    public ResponseEntity<Object> getSheetById(@PathVariable int id,
+                                               @RequestParam(required = false) String asOf,
+                                               @RequestParam(required = false) Long version,
+                                               WebRequest request) {
+        if (asOf != null || version != null) {
+            return getSheetHistory(id, asOf, version);
+        }
         try {
             Sheet sheet = sheetService.getSheetById(id)
                     .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found."));
-            return ResponseEntity.ok(Map.of("status", 200, "data", new SheetDTO(sheet)));
+            String etag = SheetETags.of(sheet);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok().eTag(etag).body(Map.of("status", 200, "data", new SheetDTO(sheet)));
         } catch (SheetNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
@@ -48,6 +97,288 @@ public class SheetController {
         }
     }
 
+    // The sheet with its cells as they were at a time or version, rebuilt from a snapshot and the activity log
+    private ResponseEntity<Object> getSheetHistory(int id, String asOf, Long version) {
+        String path = "/sheets/" + id;
+        try {
+            if (asOf != null && version != null) {
+                throw new IllegalArgumentException("Use either asOf or version, not both.");
+            }
+            SheetAtVersion sheet = asOf != null
+                    ? sheetHistoryService.sheetAsOf(id, SheetHistoryService.parseTimestamp("asOf", asOf))
+                    : sheetHistoryService.sheetAt(id, version);
+            return ResponseEntity.ok(Map.of("status", 200, "data", Map.of(
+                    "id", id,
+                    "name", sheet.name(),
+                    "version", sheet.version(),
+                    "cells", sheet.cells())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        } catch (HistoryArchivedException e) {
+            return ResponseEntity.status(HttpStatus.GONE)
+                    .body(Map.of("status", 410, "error", "Gone", "message", e.getMessage(), "path", path));
+        }
+    }
+
+    // Streams every cell of the sheet as CSV or NDJSON, optionally gzipped, without loading the sheet into memory
+    @GetMapping("/{id}/export")
+    public ResponseEntity<StreamingResponseBody> exportSheet(@PathVariable int id,
+                                                             @RequestParam(defaultValue = "csv") String format,
+                                                             @RequestParam(defaultValue = "false") boolean gzip) {
+        String path = "/sheets/" + id + "/export";
+        SheetDataFormat dataFormat;
+        try {
+            dataFormat = SheetDataFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return errorStream(HttpStatus.BAD_REQUEST, e.getMessage(), path);
+        }
+        if (sheetService.getSheetById(id).isEmpty()) {
+            return errorStream(HttpStatus.NOT_FOUND, "Sheet with ID " + id + " not found.", path);
+        }
+
+        String fileName = "sheet-" + id + "." + dataFormat.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : dataFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(out -> sheetExportService.export(id, dataFormat, gzip, out));
+    }
+
+    // Accepts the raw CSV or NDJSON body (same columns as export) and loads it in the background
+    @PostMapping("/{id}/import")
+    public ResponseEntity<Object> importSheet(@PathVariable int id,
+                                              @RequestParam(defaultValue = "csv") String format,
+                                              @RequestParam(defaultValue = "false") boolean gzip,
+                                              InputStream body) {
+        String path = "/sheets/" + id + "/import";
+        try {
+            SheetDataFormat dataFormat = SheetDataFormat.parse(format);
+            Sheet sheet = sheetService.getSheetById(id)
+                    .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found."));
+            ImportJob job = sheetImportService.submit(sheet, dataFormat, gzip, body);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, path + "/" + job.getId())
+                    .body(Map.of("status", 202, "data", job));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("status", 500, "error", "Internal Server Error", "message", "Could not read the upload.", "path", path));
+        }
+    }
+
+    @GetMapping("/{id}/import/{jobId}")
+    public ResponseEntity<Object> getImportJob(@PathVariable int id, @PathVariable String jobId) {
+        return sheetImportService.getJob(jobId)
+                .filter(job -> job.getSheetId() == id)
+                .<ResponseEntity<Object>>map(job -> ResponseEntity.ok(Map.of("status", 200, "data", job)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of(
+                                "status", 404,
+                                "error", "Not Found",
+                                "message", "Import job " + jobId + " not found for Sheet ID " + id + ".",
+                                "path", "/sheets/" + id + "/import/" + jobId
+                        )));
+    }
+
+    // A rectangle of the sheet as dense arrays of values (and formulas), row by row or column by column
+    @GetMapping("/{id}/range/{range}")
+    public ResponseEntity<Object> getRange(@PathVariable int id, @PathVariable String range,
+                                           @RequestParam(defaultValue = "false") boolean formulas,
+                                           @RequestParam(defaultValue = "rows") String layout,
+                                           WebRequest request) {
+        String path = "/sheets/" + id + "/range/" + range;
+        try {
+            Sheet sheet = sheetService.getSheetById(id)
+                    .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found."));
+            String etag = SheetETags.of(sheet);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            if (!layout.equals("rows") && !layout.equals("columns")) {
+                throw new IllegalArgumentException("layout must be rows or columns.");
+            }
+            SheetRange cells = cellService.getRange(id, RangeRef.parse(range), formulas, layout.equals("columns"));
+
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("sheetId", id);
+            data.put("range", cells.range().toString());
+            data.put("version", cells.version());
+            data.put("layout", layout);
+            data.put("values", cells.values());
+            if (cells.formulas() != null) {
+                data.put("formulas", cells.formulas());
+            }
+            // Tagged with the version the cells were read at, which a write may have moved past the check above
+            return ResponseEntity.ok().eTag(SheetETags.of(id, cells.version())).body(Map.of("status", 200, "data", data));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        }
+    }
+
+    // Overwrites a rectangle of the sheet with dense arrays of values and formulas, in the layout GET returns them in
+    @PutMapping("/{id}/range/{range}")
+    public ResponseEntity<Object> writeRange(@PathVariable int id, @PathVariable String range,
+                                             @RequestParam(defaultValue = "rows") String layout,
+                                             @RequestBody Map<String, Object> requestBody) {
+        String path = "/sheets/" + id + "/range/" + range;
+        try {
+            if (!layout.equals("rows") && !layout.equals("columns")) {
+                throw new IllegalArgumentException("layout must be rows or columns.");
+            }
+            RangeRef rangeRef = RangeRef.parse(range);
+            if (rangeRef.size() > CellService.MAX_RANGE_CELLS) {
+                throw new IllegalArgumentException("Range " + rangeRef + " has " + rangeRef.size() + " cells; at most "
+                        + CellService.MAX_RANGE_CELLS + " can be written at once.");
+            }
+            String[][] contents = rangeContents(requestBody.get("values"), rangeRef, layout.equals("columns"));
+            // Locked before the sheet is read, so waiting for a busy sheet holds no pooled connection
+            RangeWriteResult result = sheetLocks.callLocked(id, () -> {
+                Sheet sheet = sheetService.getSheetById(id)
+                        .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found."));
+                return cellService.writeRange(sheet, rangeRef, contents);
+            });
+
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("sheetId", id);
+            data.put("range", rangeRef.toString());
+            data.put("version", result.version());
+            data.put("created", result.created());
+            data.put("updated", result.updated());
+            data.put("deleted", result.deleted());
+            data.put("unchanged", result.unchanged());
+            data.put("recalculated", result.recalculated());
+            return ResponseEntity.ok().eTag(SheetETags.of(id, result.version())).body(Map.of("status", 200, "data", data));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("status", 409, "error", "Conflict", "message", e.getMessage(), "path", path));
+        }
+    }
+
+    // The request's values as contents[row][col], whichever layout they came in; numbers and booleans are taken as text
+    private static String[][] rangeContents(Object values, RangeRef range, boolean columnar) {
+        int height = columnar ? range.cols() : range.rows();
+        int width = columnar ? range.rows() : range.cols();
+        String shape = height + " " + (columnar ? "columns" : "rows") + " of " + width + " cells";
+        if (!(values instanceof List<?> lines) || lines.size() != height) {
+            throw new IllegalArgumentException("values must be " + shape + " for range " + range + ".");
+        }
+        String[][] contents = new String[range.rows()][range.cols()];
+        for (int i = 0; i < height; i++) {
+            if (!(lines.get(i) instanceof List<?> line) || line.size() != width) {
+                throw new IllegalArgumentException("values must be " + shape + " for range " + range + ".");
+            }
+            for (int j = 0; j < width; j++) {
+                Object value = line.get(j);
+                if (value != null && !(value instanceof String || value instanceof Number || value instanceof Boolean)) {
+                    throw new IllegalArgumentException("values may only hold strings, numbers, booleans and nulls.");
+                }
+                String text = value == null ? null : value.toString();
+                if (columnar) {
+                    contents[j][i] = text;
+                } else {
+                    contents[i][j] = text;
+                }
+            }
+        }
+        return contents;
+    }
+
+    // Net cell changes since a version the client already has, e.g. the ETag version of its last full read
+    @GetMapping("/{id}/changes")
+    public ResponseEntity<Object> getChanges(@PathVariable int id, @RequestParam long since) {
+        String path = "/sheets/" + id + "/changes";
+        try {
+            SheetChanges changes = sheetChangesService.changesSince(id, since);
+            return ResponseEntity.ok(Map.of("status", 200, "data", Map.of(
+                    "sheetId", id,
+                    "since", since,
+                    "version", changes.version(),
+                    "changes", changes.changes())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        } catch (HistoryArchivedException e) {
+            return ResponseEntity.status(HttpStatus.GONE)
+                    .body(Map.of("status", 410, "error", "Gone", "message", e.getMessage(), "path", path));
+        }
+    }
+
+    // Net cell changes between two versions of the sheet
+    @GetMapping("/{id}/diff")
+    public ResponseEntity<Object> getDiff(@PathVariable int id, @RequestParam long from, @RequestParam long to) {
+        String path = "/sheets/" + id + "/diff";
+        try {
+            SheetChanges changes = sheetHistoryService.diff(id, from, to);
+            return ResponseEntity.ok(Map.of("status", 200, "data", Map.of(
+                    "sheetId", id,
+                    "from", from,
+                    "to", to,
+                    "changes", changes.changes())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("status", 400, "error", "Bad Request", "message", e.getMessage(), "path", path));
+        } catch (SheetNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", 404, "error", "Not Found", "message", e.getMessage(), "path", path));
+        } catch (HistoryArchivedException e) {
+            return ResponseEntity.status(HttpStatus.GONE)
+                    .body(Map.of("status", 410, "error", "Gone", "message", e.getMessage(), "path", path));
+        }
+    }
+
+    // Server-Sent Events with the sheet's cell changes as they commit, recalculated formulas included
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(@PathVariable int id) {
+        String path = "/sheets/" + id + "/events";
+        try {
+            return ResponseEntity.ok(sheetEventHub.subscribe(id));
+        } catch (SheetNotFoundException e) {
+            return errorEvents(HttpStatus.NOT_FOUND, e.getMessage(), path);
+        }
+    }
+
+    // An event stream that carries the error as its only event
+    private ResponseEntity<SseEmitter> errorEvents(HttpStatus status, String message, String path) {
+        Map<String, Object> body = Map.of("status", status.value(), "error", status.getReasonPhrase(), "message", message, "path", path);
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(body)));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.status(status).body(emitter);
+    }
+
+    // Streaming endpoints must return a StreamingResponseBody, so errors are written through one as well
+    private ResponseEntity<StreamingResponseBody> errorStream(HttpStatus status, String message, String path) {
+        Map<String, Object> body = Map.of("status", status.value(), "error", status.getReasonPhrase(), "message", message, "path", path);
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, body));
+    }
+
     @PostMapping
     public ResponseEntity<Object> createSheet(@RequestBody Sheet sheet) {
         try {
@@ -65,7 +396,7 @@ public class SheetController {
     
     private ResponseEntity<Object> updateSheet(int id, Sheet updatedSheet, String path) {
         try {
-            Sheet sheet = sheetService.updateSheet(id, updatedSheet);
+            Sheet sheet = sheetLocks.callLocked(id, () -> sheetService.updateSheet(id, updatedSheet));
             return ResponseEntity.ok(Map.of("status", 200, "data", new SheetDTO(sheet)));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -83,6 +414,14 @@ public class SheetController {
                             "message", e.getMessage(),
                             "path", path
                     ));
+        } catch (SheetBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of(
+                            "status", 409,
+                            "error", "Conflict",
+                            "message", e.getMessage(),
+                            "path", path
+                    ));
         } catch (ResponseStatusException e) {
             return ResponseEntity.status(e.getStatusCode())
                     .body(Map.of(
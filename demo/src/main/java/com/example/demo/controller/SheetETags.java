@@ -0,0 +1,17 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.Sheet;
+
+// Strong validator for every response derived from one sheet; the sheet's version changes with each write to it
+final class SheetETags {
+    private SheetETags() {
+    }
+
+    static String of(Sheet sheet) {
+        return of(sheet.getId(), sheet.getVersion());
+    }
+
+    static String of(int sheetId, long version) {
+        return "\"" + sheetId + "-" + version + "\"";
+    }
+}
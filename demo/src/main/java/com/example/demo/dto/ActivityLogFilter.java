@@ -0,0 +1,10 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.ActivityLog;
+
+import java.time.LocalDateTime;
+
+// Conditions of an activity log query, each null when not filtered on; from is inclusive, to exclusive
+public record ActivityLogFilter(Integer bookId, Integer sheetId, Integer rowNum, String colNum, String updatedBy,
+                                ActivityLog.OperationType operation, LocalDateTime from, LocalDateTime to) {
+}
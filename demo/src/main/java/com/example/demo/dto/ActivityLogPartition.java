@@ -0,0 +1,7 @@
+package com.example.demo.dto;
+
+import java.time.LocalDate;
+
+// One range partition of activity_log, holding rows before its bound; the bound is null for the last, open-ended one
+public record ActivityLogPartition(String name, LocalDate before) {
+}
@@ -11,7 +11,12 @@ public class BookDTO {
     private String name;
 
     public BookDTO(Book book) {
-        this.id = book.getId();
-        this.name = book.getName();
+        this(book.getId(), book.getName());
+    }
+
+    // Used by JPQL constructor projections
+    public BookDTO(Integer id, String name) {
+        this.id = id;
+        this.name = name;
     }
 }
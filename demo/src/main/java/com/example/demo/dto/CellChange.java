@@ -0,0 +1,7 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.ActivityLog;
+
+// Net change of one cell since a sheet version; value and formula are the cell's current ones, null once deleted
+public record CellChange(int rowNum, String colNum, ActivityLog.OperationType operation, String value, String formula) {
+}
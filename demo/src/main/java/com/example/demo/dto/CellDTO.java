@@ -11,12 +11,17 @@ public class CellDTO {
     private String formula;
 
     public CellDTO(Cell cell) {
-        this.id = cell.getId();
-        this.sheetId = cell.getSheet().getId();
-        this.rowNum = cell.getRowNum();
-        this.colNum = cell.getColNum();
-        this.value = cell.getValue();
-        this.formula = cell.getFormula();
+        this(cell.getId(), cell.getSheet().getId(), cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula());
+    }
+
+    // Used by JPQL constructor projections
+    public CellDTO(Integer id, Integer sheetId, Integer rowNum, String colNum, String value, String formula) {
+        this.id = id;
+        this.sheetId = sheetId;
+        this.rowNum = rowNum;
+        this.colNum = colNum;
+        this.value = value;
+        this.formula = formula;
     }
 
     public Integer getId() { return id; }
@@ -0,0 +1,5 @@
+package com.example.demo.dto;
+
+// Flat, unmanaged view of a cell used by sheet export, snapshots and history reads; not tracked by the persistence context
+public record CellExportRow(Integer rowNum, String colNum, String value, String formula) {
+}
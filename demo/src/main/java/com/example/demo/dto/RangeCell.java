@@ -0,0 +1,5 @@
+package com.example.demo.dto;
+
+// Grid position and contents of a cell read for a dense range; colIdx is 1-based (A = 1)
+public record RangeCell(int rowNum, int colIdx, String value, String formula) {
+}
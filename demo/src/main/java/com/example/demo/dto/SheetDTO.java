@@ -6,14 +6,22 @@ public class SheetDTO {
     private Integer id;
     private String name;
 	private Integer bookId;
+    private long version;
 
     public SheetDTO(Sheet sheet) {
-        this.id = sheet.getId();
-        this.name = sheet.getName();
-		this.bookId = sheet.getBook().getId();
+        this(sheet.getId(), sheet.getName(), sheet.getBook().getId(), sheet.getVersion());
+    }
+
+    // Used by JPQL constructor projections
+    public SheetDTO(Integer id, String name, Integer bookId, long version) {
+        this.id = id;
+        this.name = name;
+        this.bookId = bookId;
+        this.version = version;
     }
 
     public Integer getId() { return id; }
     public String getName() { return name; }
     public Integer getBookId() { return bookId; }
+    public long getVersion() { return version; }
 }
@@ -0,0 +1,7 @@
+package com.example.demo.exception;
+
+public class CircularReferenceException extends FormulaException {
+    public CircularReferenceException(String message) {
+        super(message);
+    }
+}
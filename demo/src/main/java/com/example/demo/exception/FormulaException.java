@@ -0,0 +1,7 @@
+package com.example.demo.exception;
+
+public class FormulaException extends IllegalArgumentException {
+    public FormulaException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.demo.exception;
+
+public class HistoryArchivedException extends RuntimeException {
+    public HistoryArchivedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.demo.exception;
+
+public class SheetBusyException extends RuntimeException {
+    public SheetBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.demo.formula;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/*
+ * Open-addressing hash map from packed cell coordinates (see CellRef.pack) to values. Lookups take
+ * primitives, so reading a cell allocates nothing, unlike a HashMap keyed by boxed or record keys.
+ * Not thread-safe.
+ */
+public class CellMap<V> {
+    // Rows start at 1, so 0 never packs a real cell and marks a free slot
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int row, int col, V value);
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public CellMap() {
+        this(16);
+    }
+
+    public CellMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.min(1L << 30, (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    // Murmur3 finalizer: packed keys of neighbouring cells differ only in a few low bits
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public V get(int row, int col) {
+        return get(CellRef.pack(row, col));
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    public boolean containsKey(int row, int col) {
+        return containsKey(CellRef.pack(row, col));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("0 is not a packed cell coordinate.");
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    public V put(int row, int col, V value) {
+        return put(CellRef.pack(row, col), value);
+    }
+
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        V old = (V) values[slot];
+        size--;
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+        values[free] = null;
+        return old;
+    }
+
+    public V remove(int row, int col) {
+        return remove(CellRef.pack(row, col));
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(CellRef.rowOf(keys[i]), CellRef.colOf(keys[i]), (V) values[i]);
+            }
+        }
+    }
+
+    // Visits the entries inside the range by probing each coordinate or by scanning the table, whichever is less work
+    @SuppressWarnings("unchecked")
+    public void forEachInRange(RangeRef range, EntryConsumer<? super V> action) {
+        if (range.size() <= size) {
+            for (int row = range.startRow(); row <= range.endRow(); row++) {
+                for (int col = range.startCol(); col <= range.endCol(); col++) {
+                    int slot = slotOf(CellRef.pack(row, col));
+                    if (slot >= 0) {
+                        action.accept(row, col, (V) values[slot]);
+                    }
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (key != FREE && range.contains(CellRef.rowOf(key), CellRef.colOf(key))) {
+                action.accept(CellRef.rowOf(key), CellRef.colOf(key), (V) values[i]);
+            }
+        }
+    }
+}
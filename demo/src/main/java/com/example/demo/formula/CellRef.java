@@ -0,0 +1,102 @@
+package com.example.demo.formula;
+
+import com.example.demo.exception.FormulaException;
+
+// A cell coordinate with a 1-based row and a 1-based column index (A = 1, Z = 26, AA = 27)
+public record CellRef(int row, int col) {
+    // XFD, the widest column most spreadsheets allow
+    public static final int MAX_COLUMN = 16384;
+
+    public CellRef {
+        if (row < 1) {
+            throw new FormulaException("Row number must be positive: " + row);
+        }
+        if (col < 1 || col > MAX_COLUMN) {
+            throw new FormulaException("Column index out of range: " + col);
+        }
+    }
+
+    /*
+     * Packs a coordinate into one long, row in the high half and column in the low half, so hot paths
+     * can key maps and sets by primitive without allocating a CellRef per lookup. Packed keys sort in
+     * row-major order, and 0 is never a valid key because rows start at 1.
+     */
+    public static long pack(int row, int col) {
+        return ((long) row << 32) | col;
+    }
+
+    public static int rowOf(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int colOf(long packed) {
+        return (int) packed;
+    }
+
+    public static CellRef unpack(long packed) {
+        return new CellRef(rowOf(packed), colOf(packed));
+    }
+
+    public long packed() {
+        return pack(row, col);
+    }
+
+    public static CellRef of(int row, String colNum) {
+        return new CellRef(row, columnIndex(colNum));
+    }
+
+    // Parses a reference like "B12"
+    public static CellRef parse(String ref) {
+        int i = 0;
+        while (i < ref.length() && Character.isLetter(ref.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i == ref.length()) {
+            throw new FormulaException("Invalid cell reference: " + ref);
+        }
+        int row;
+        try {
+            row = Integer.parseInt(ref.substring(i));
+        } catch (NumberFormatException e) {
+            throw new FormulaException("Invalid cell reference: " + ref);
+        }
+        return new CellRef(row, columnIndex(ref.substring(0, i)));
+    }
+
+    public static int columnIndex(String colNum) {
+        if (colNum == null || colNum.isEmpty()) {
+            throw new FormulaException("Column is required.");
+        }
+        int index = 0;
+        for (int i = 0; i < colNum.length(); i++) {
+            char c = Character.toUpperCase(colNum.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                throw new FormulaException("Invalid column: " + colNum);
+            }
+            index = index * 26 + (c - 'A' + 1);
+            if (index > MAX_COLUMN) {
+                throw new FormulaException("Column out of range: " + colNum);
+            }
+        }
+        return index;
+    }
+
+    public static String columnName(int col) {
+        StringBuilder sb = new StringBuilder(3);
+        while (col > 0) {
+            int rem = (col - 1) % 26;
+            sb.append((char) ('A' + rem));
+            col = (col - 1) / 26;
+        }
+        return sb.reverse().toString();
+    }
+
+    public String colNum() {
+        return columnName(col);
+    }
+
+    @Override
+    public String toString() {
+        return colNum() + row;
+    }
+}
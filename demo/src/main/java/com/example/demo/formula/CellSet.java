@@ -0,0 +1,130 @@
+package com.example.demo.formula;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/*
+ * Open-addressing hash set of packed cell coordinates (see CellRef.pack), the primitive counterpart of
+ * CellMap. Not thread-safe.
+ */
+public class CellSet {
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public CellSet() {
+        this(16);
+    }
+
+    public CellSet(int expectedSize) {
+        allocate(CellMap.tableSizeFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public boolean add(long key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("0 is not a packed cell coordinate.");
+        }
+        int slot = CellMap.hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        return slot(key) >= 0;
+    }
+
+    /*
+     * The table slot holding the key, or -1. Slots are stable until the set is next changed, so callers
+     * can keep per-element data in an int[] of length capacity() instead of a boxed map.
+     */
+    public int slot(long key) {
+        int slot = CellMap.hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean remove(long key) {
+        int slot = slot(key);
+        if (slot < 0) {
+            return false;
+        }
+        size--;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = CellMap.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        for (long key : oldKeys) {
+            if (key != FREE) {
+                int slot = CellMap.hash(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        for (long key : keys) {
+            if (key != FREE) {
+                action.accept(key);
+            }
+        }
+    }
+
+    public Set<CellRef> toCellRefs() {
+        Set<CellRef> refs = new HashSet<>(size * 2);
+        forEach(key -> refs.add(CellRef.unpack(key)));
+        return refs;
+    }
+}
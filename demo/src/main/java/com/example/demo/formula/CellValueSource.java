@@ -0,0 +1,23 @@
+package com.example.demo.formula;
+
+import java.util.function.Consumer;
+
+// Supplies raw cell values to a formula while it is being evaluated
+public interface CellValueSource {
+
+    // Returns the stored value of the cell, or null if the cell does not exist
+    String valueAt(int row, int col);
+
+    // Visits the value of every existing cell inside the range. Implementations backed by
+    // storage should override this with a single range read instead of one lookup per cell.
+    default void forEachValueInRange(RangeRef range, Consumer<String> action) {
+        for (int row = range.startRow(); row <= range.endRow(); row++) {
+            for (int col = range.startCol(); col <= range.endCol(); col++) {
+                String value = valueAt(row, col);
+                if (value != null) {
+                    action.accept(value);
+                }
+            }
+        }
+    }
+}
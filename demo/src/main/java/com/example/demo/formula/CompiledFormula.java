@@ -0,0 +1,27 @@
+package com.example.demo.formula;
+
+import java.util.List;
+import java.util.Set;
+
+// A formula parsed once into an expression tree, ready to be re-evaluated against changing cell values
+public class CompiledFormula {
+    private final String expression;
+    private final Expr root;
+    private final Set<CellRef> cellRefs;
+    private final List<RangeRef> rangeRefs;
+
+    CompiledFormula(String expression, Expr root, Set<CellRef> cellRefs, List<RangeRef> rangeRefs) {
+        this.expression = expression;
+        this.root = root;
+        this.cellRefs = cellRefs;
+        this.rangeRefs = rangeRefs;
+    }
+
+    public double evaluate(CellValueSource source) {
+        return root.eval(source);
+    }
+
+    public String getExpression() { return expression; }
+    public Set<CellRef> getCellRefs() { return cellRefs; }
+    public List<RangeRef> getRangeRefs() { return rangeRefs; }
+}
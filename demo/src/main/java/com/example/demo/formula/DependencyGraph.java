@@ -0,0 +1,318 @@
+package com.example.demo.formula;
+
+import com.example.demo.exception.CircularReferenceException;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/*
+ * In-memory dependency index for a single sheet: which formula cells read which cells. Cells are held
+ * as packed coordinates (CellRef.pack) in primitive maps and sets, so walking the graph does not
+ * allocate per visited cell; the CellRef-based methods convert at the edges. Multi-cell ranges are
+ * indexed by the blocks of BUCKET_ROWS rows of one column they overlap, so finding the ranges that
+ * contain a cell checks the ranges near it rather than every range in the sheet.
+ */
+public class DependencyGraph {
+    static final int BUCKET_ROWS = 64;
+    // A range overlapping more blocks than this, e.g. a whole column, is kept in wideRanges instead
+    static final int MAX_BUCKETS = 4096;
+
+    // formula cell -> ranges it reads
+    private final CellMap<List<RangeRef>> precedents = new CellMap<>();
+    // referenced cell -> formula cells reading it through a single-cell reference
+    private final CellMap<CellSet> cellDependents = new CellMap<>();
+    // referenced multi-cell range -> formula cells reading it
+    private final Map<RangeRef, CellSet> rangeDependents = new HashMap<>();
+    // (row / BUCKET_ROWS, column) -> the ranges in rangeDependents overlapping that block
+    private final CellMap<List<RangeRef>> rangeIndex = new CellMap<>();
+    // Ranges in rangeDependents too large to index; checked for every cell
+    private final List<RangeRef> wideRanges = new ArrayList<>();
+
+    // Replaces whatever the dependent cell read before; an empty list removes it from the graph
+    public void setPrecedents(CellRef dependent, List<RangeRef> ranges) {
+        long key = dependent.packed();
+        removePrecedents(key);
+        if (ranges.isEmpty()) {
+            return;
+        }
+        precedents.put(key, List.copyOf(ranges));
+        for (RangeRef range : ranges) {
+            if (range.size() == 1) {
+                cellDependents.computeIfAbsent(CellRef.pack(range.startRow(), range.startCol()), k -> new CellSet(4)).add(key);
+            } else {
+                rangeDependents.computeIfAbsent(range, k -> {
+                    index(k);
+                    return new CellSet(4);
+                }).add(key);
+            }
+        }
+    }
+
+    private void removePrecedents(long dependent) {
+        List<RangeRef> old = precedents.remove(dependent);
+        if (old == null) {
+            return;
+        }
+        for (RangeRef range : old) {
+            if (range.size() == 1) {
+                long cell = CellRef.pack(range.startRow(), range.startCol());
+                CellSet dependents = cellDependents.get(cell);
+                if (dependents != null && dependents.remove(dependent) && dependents.isEmpty()) {
+                    cellDependents.remove(cell);
+                }
+            } else {
+                CellSet dependents = rangeDependents.get(range);
+                if (dependents != null && dependents.remove(dependent) && dependents.isEmpty()) {
+                    rangeDependents.remove(range);
+                    unindex(range);
+                }
+            }
+        }
+    }
+
+    private static boolean isWide(RangeRef range) {
+        long buckets = (long) (range.endRow() / BUCKET_ROWS - range.startRow() / BUCKET_ROWS + 1) * range.cols();
+        return buckets > MAX_BUCKETS;
+    }
+
+    private void index(RangeRef range) {
+        if (isWide(range)) {
+            wideRanges.add(range);
+            return;
+        }
+        for (int bucket = range.startRow() / BUCKET_ROWS; bucket <= range.endRow() / BUCKET_ROWS; bucket++) {
+            for (int col = range.startCol(); col <= range.endCol(); col++) {
+                rangeIndex.computeIfAbsent(CellRef.pack(bucket, col), k -> new ArrayList<>(2)).add(range);
+            }
+        }
+    }
+
+    private void unindex(RangeRef range) {
+        if (isWide(range)) {
+            wideRanges.remove(range);
+            return;
+        }
+        for (int bucket = range.startRow() / BUCKET_ROWS; bucket <= range.endRow() / BUCKET_ROWS; bucket++) {
+            for (int col = range.startCol(); col <= range.endCol(); col++) {
+                long key = CellRef.pack(bucket, col);
+                List<RangeRef> ranges = rangeIndex.get(key);
+                if (ranges != null && ranges.remove(range) && ranges.isEmpty()) {
+                    rangeIndex.remove(key);
+                }
+            }
+        }
+    }
+
+    // Formula cells that read the given cell directly or through a range
+    public Set<CellRef> dependentsOf(CellRef cell) {
+        Set<CellRef> result = new HashSet<>();
+        forEachDependent(cell.packed(), dependent -> result.add(CellRef.unpack(dependent)));
+        return result;
+    }
+
+    // Visits the formula cells reading the packed cell; one reading it both directly and through a range is visited twice
+    public void forEachDependent(long cell, LongConsumer action) {
+        CellSet direct = cellDependents.get(cell);
+        if (direct != null) {
+            direct.forEach(action);
+        }
+        if (rangeDependents.isEmpty()) {
+            return;
+        }
+        int row = CellRef.rowOf(cell);
+        int col = CellRef.colOf(cell);
+        List<RangeRef> nearby = rangeIndex.get(row / BUCKET_ROWS, col);
+        if (nearby != null) {
+            forEachContaining(nearby, row, col, action);
+        }
+        if (!wideRanges.isEmpty()) {
+            forEachContaining(wideRanges, row, col, action);
+        }
+    }
+
+    private void forEachContaining(List<RangeRef> ranges, int row, int col, LongConsumer action) {
+        for (int i = 0; i < ranges.size(); i++) {
+            RangeRef range = ranges.get(i);
+            if (range.contains(row, col)) {
+                rangeDependents.get(range).forEach(action);
+            }
+        }
+    }
+
+    // Every formula cell whose value depends, directly or transitively, on one of the changed cells
+    public Set<CellRef> dirtyCells(Collection<CellRef> changed) {
+        return dirtyKeys(pack(changed)).toCellRefs();
+    }
+
+    private static long[] pack(Collection<CellRef> cells) {
+        long[] keys = new long[cells.size()];
+        int i = 0;
+        for (CellRef cell : cells) {
+            keys[i++] = cell.packed();
+        }
+        return keys;
+    }
+
+    private CellSet dirtyKeys(long... changed) {
+        CellSet dirty = new CellSet();
+        LongStack stack = new LongStack(changed);
+        LongConsumer visit = dependent -> {
+            if (dirty.add(dependent)) {
+                stack.push(dependent);
+            }
+        };
+        while (!stack.isEmpty()) {
+            forEachDependent(stack.pop(), visit);
+        }
+        return dirty;
+    }
+
+    // Orders the dirty subgraph of the changed cells; see evaluationOrder
+    public List<CellRef> recalculationOrder(Collection<CellRef> changed) {
+        return evaluationOrder(dirtyKeys(pack(changed)));
+    }
+
+    /*
+     * Orders the given cells so every cell comes after those of its inputs that are also in the set
+     * (Kahn's algorithm). Throws if the set contains a cycle.
+     */
+    public List<CellRef> evaluationOrder(Set<CellRef> cells) {
+        CellSet members = new CellSet(cells.size());
+        for (CellRef cell : cells) {
+            members.add(cell.packed());
+        }
+        return evaluationOrder(members);
+    }
+
+    private List<CellRef> evaluationOrder(CellSet members) {
+        // Indexed by the member's slot in the set
+        int[] pendingInputs = new int[members.capacity()];
+        members.forEach(cell -> forEachDependent(cell, dependent -> {
+            int slot = members.slot(dependent);
+            if (slot >= 0) {
+                pendingInputs[slot]++;
+            }
+        }));
+
+        LongStack ready = new LongStack(new long[0]);
+        members.forEach(cell -> {
+            if (pendingInputs[members.slot(cell)] == 0) {
+                ready.push(cell);
+            }
+        });
+        List<CellRef> order = new ArrayList<>(members.size());
+        LongConsumer release = dependent -> {
+            int slot = members.slot(dependent);
+            if (slot >= 0 && --pendingInputs[slot] == 0) {
+                ready.push(dependent);
+            }
+        };
+        while (!ready.isEmpty()) {
+            long cell = ready.pop();
+            order.add(CellRef.unpack(cell));
+            forEachDependent(cell, release);
+        }
+        if (order.size() != members.size()) {
+            throw new CircularReferenceException("Circular reference detected among cells " + describe(members.toCellRefs(), order) + ".");
+        }
+        return order;
+    }
+
+    // Length of the longest dependency chain within an evaluation order, i.e. how many formulas must run one after another
+    public int depthOf(List<CellRef> order) {
+        CellSet members = new CellSet(order.size());
+        for (CellRef cell : order) {
+            members.add(cell.packed());
+        }
+        // Chain length ending at each member, indexed by its slot in the set
+        int[] lengths = new int[members.capacity()];
+        int depth = 0;
+        for (CellRef cell : order) {
+            int length = lengths[members.slot(cell.packed())] + 1;
+            depth = Math.max(depth, length);
+            forEachDependent(cell.packed(), dependent -> {
+                int slot = members.slot(dependent);
+                if (slot >= 0 && lengths[slot] < length) {
+                    lengths[slot] = length;
+                }
+            });
+        }
+        return depth;
+    }
+
+    // Rejects a formula for the dependent cell if any range it reads contains the cell itself or one of its dependents
+    public void checkForCycle(CellRef dependent, List<RangeRef> ranges) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        CellSet downstream = dirtyKeys(dependent.packed());
+        for (RangeRef range : ranges) {
+            if (range.contains(dependent.row(), dependent.col())) {
+                throw new CircularReferenceException("Circular reference: " + dependent + " cannot read " + range + " because " + range + " contains " + dependent + " itself.");
+            }
+            downstream.forEach(cell -> {
+                if (range.contains(CellRef.rowOf(cell), CellRef.colOf(cell))) {
+                    throw new CircularReferenceException("Circular reference: " + dependent + " cannot read " + range + " because " + CellRef.unpack(cell) + " depends on " + dependent + ".");
+                }
+            });
+        }
+    }
+
+    private static String describe(Set<CellRef> cells, List<CellRef> ordered) {
+        Set<CellRef> stuck = new TreeSet<>(Comparator.comparingInt(CellRef::row).thenComparingInt(CellRef::col));
+        stuck.addAll(cells);
+        ordered.forEach(stuck::remove);
+        return stuck.toString();
+    }
+
+    public List<RangeRef> precedentsOf(CellRef dependent) {
+        List<RangeRef> ranges = precedents.get(dependent.packed());
+        return ranges == null ? List.of() : ranges;
+    }
+
+    // Every formula cell that currently reads at least one cell
+    public Set<CellRef> formulaCells() {
+        Set<CellRef> cells = new HashSet<>(precedents.size() * 2);
+        precedents.forEach((row, col, ranges) -> cells.add(new CellRef(row, col)));
+        return cells;
+    }
+
+    public int size() {
+        return precedents.size();
+    }
+
+    public static List<RangeRef> rangesOf(CompiledFormula formula) {
+        List<RangeRef> ranges = new ArrayList<>(formula.getCellRefs().size() + formula.getRangeRefs().size());
+        for (CellRef ref : formula.getCellRefs()) {
+            ranges.add(RangeRef.of(ref, ref));
+        }
+        ranges.addAll(formula.getRangeRefs());
+        return ranges;
+    }
+
+    // Growable stack of packed cells for the graph walks
+    private static final class LongStack {
+        private long[] items;
+        private int size;
+
+        LongStack(long[] initial) {
+            items = Arrays.copyOf(initial, Math.max(initial.length, 16));
+            size = initial.length;
+        }
+
+        void push(long item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        long pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
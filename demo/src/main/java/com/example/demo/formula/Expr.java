@@ -0,0 +1,209 @@
+package com.example.demo.formula;
+
+import com.example.demo.exception.FormulaException;
+
+import java.util.List;
+
+// Nodes of a parsed formula. Trees are immutable so a compiled formula can be shared across threads.
+sealed interface Expr {
+
+    double eval(CellValueSource source);
+
+    record Literal(double value) implements Expr {
+        public double eval(CellValueSource source) {
+            return value;
+        }
+    }
+
+    record Ref(CellRef ref) implements Expr {
+        public double eval(CellValueSource source) {
+            String raw = source.valueAt(ref.row(), ref.col());
+            if (raw == null || raw.isBlank()) {
+                return 0;
+            }
+            double value = toNumber(raw);
+            if (Double.isNaN(value) && !isNumber(raw)) {
+                throw new FormulaException("Cell " + ref + " does not contain a numeric value.");
+            }
+            return value;
+        }
+    }
+
+    record Range(RangeRef range) implements Expr {
+        public double eval(CellValueSource source) {
+            throw new FormulaException("Range " + range + " can only be used as a function argument.");
+        }
+    }
+
+    record Negate(Expr operand) implements Expr {
+        public double eval(CellValueSource source) {
+            return -operand.eval(source);
+        }
+    }
+
+    record Binary(char op, Expr left, Expr right) implements Expr {
+        public double eval(CellValueSource source) {
+            double l = left.eval(source);
+            double r = right.eval(source);
+            switch (op) {
+                case '+': return l + r;
+                case '-': return l - r;
+                case '*': return l * r;
+                // Division by zero has always yielded 0 rather than an error
+                case '/': return r != 0 ? l / r : 0;
+                case '^': return Math.pow(l, r);
+                default: throw new FormulaException("Unsupported operator: " + op);
+            }
+        }
+    }
+
+    record Compare(String op, Expr left, Expr right) implements Expr {
+        public double eval(CellValueSource source) {
+            int cmp = Double.compare(left.eval(source), right.eval(source));
+            boolean result;
+            switch (op) {
+                case "=": result = cmp == 0; break;
+                case "<>": result = cmp != 0; break;
+                case "<": result = cmp < 0; break;
+                case "<=": result = cmp <= 0; break;
+                case ">": result = cmp > 0; break;
+                case ">=": result = cmp >= 0; break;
+                default: throw new FormulaException("Unsupported comparison: " + op);
+            }
+            return result ? 1 : 0;
+        }
+    }
+
+    record If(Expr condition, Expr whenTrue, Expr whenFalse) implements Expr {
+        public double eval(CellValueSource source) {
+            return condition.eval(source) != 0 ? whenTrue.eval(source) : whenFalse.eval(source);
+        }
+    }
+
+    record Aggregate(Function function, List<Expr> args) implements Expr {
+        public double eval(CellValueSource source) {
+            Accumulator acc = new Accumulator();
+            for (Expr arg : args) {
+                if (arg instanceof Range r) {
+                    source.forEachValueInRange(r.range(), raw -> {
+                        double value = toNumber(raw);
+                        if (!Double.isNaN(value) || isNumber(raw)) {
+                            acc.add(value);
+                        }
+                    });
+                } else {
+                    acc.add(arg.eval(source));
+                }
+            }
+            return acc.result(function);
+        }
+    }
+
+    enum Function {
+        SUM, AVG, MIN, MAX, COUNT
+    }
+
+    final class Accumulator {
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long count;
+
+        void add(double value) {
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            count++;
+        }
+
+        double result(Function function) {
+            switch (function) {
+                case SUM: return sum;
+                case AVG: return count == 0 ? 0 : sum / count;
+                case MIN: return count == 0 ? 0 : min;
+                case MAX: return count == 0 ? 0 : max;
+                case COUNT: return count;
+                default: throw new FormulaException("Unsupported function: " + function);
+            }
+        }
+    }
+
+    // Largest mantissa and power of ten that are exact doubles, so their quotient is correctly rounded
+    long MAX_EXACT_MANTISSA = 1L << 53;
+    double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /*
+     * Blank or non-numeric text is skipped by aggregates and rejected by direct references. Returns NaN
+     * for those; a stored "NaN" also comes back as NaN, which isNumber tells apart. Plain decimals such
+     * as "42" or "-3.25" are parsed without allocating; anything else goes through Double.parseDouble.
+     */
+    static double toNumber(String raw) {
+        if (raw == null) {
+            return Double.NaN;
+        }
+        double fast = parsePlainDecimal(raw);
+        if (!Double.isNaN(fast)) {
+            return fast;
+        }
+        if (raw.isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(raw.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Only called when toNumber returned NaN, which is rare
+    static boolean isNumber(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return false;
+        }
+        try {
+            Double.parseDouble(raw.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // [-+]digits[.digits] with an exact mantissa, or NaN if the text needs the general parser
+    private static double parsePlainDecimal(String raw) {
+        int length = raw.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (raw.charAt(0) == '-' || raw.charAt(0) == '+')) {
+            negative = raw.charAt(0) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > MAX_EXACT_MANTISSA) {
+                    return Double.NaN;
+                }
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0 || fractionDigits >= EXACT_POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double value = fractionDigits > 0 ? mantissa / EXACT_POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo.formula;
+
+import com.example.demo.exception.FormulaException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class FormulaCompiler {
+    private final int maxCacheSize;
+
+    // key: formula text without the leading "=", value: its parsed form
+    private final Map<String, CompiledFormula> cache = new ConcurrentHashMap<>();
+
+    public FormulaCompiler(@Value("${formula.cache.max-size:10000}") int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public static boolean isFormula(String text) {
+        return text != null && text.startsWith("=");
+    }
+
+    // Accepts the formula as stored on the cell, e.g. "=SUM(A1:A3) * 2"
+    public CompiledFormula compile(String formula) {
+        if (!isFormula(formula)) {
+            throw new FormulaException("Formula must start with '=': " + formula);
+        }
+        String expression = formula.substring(1).trim();
+        CompiledFormula compiled = cache.get(expression);
+        if (compiled != null) {
+            return compiled;
+        }
+        if (expression.isEmpty()) {
+            throw new FormulaException("Formula is empty.");
+        }
+        compiled = new FormulaParser(expression).parse();
+        if (cache.size() >= maxCacheSize) {
+            // Cheap bound: distinct formulas are usually few, so an occasional full reset is fine
+            cache.clear();
+        }
+        cache.put(expression, compiled);
+        return compiled;
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+}
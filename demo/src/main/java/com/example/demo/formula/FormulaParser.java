@@ -0,0 +1,233 @@
+package com.example.demo.formula;
+
+import com.example.demo.exception.FormulaException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * Recursive-descent parser for formula expressions (without the leading "=").
+ *
+ *   comparison := additive (("=" | "<>" | "<" | "<=" | ">" | ">=") additive)?
+ *   additive   := term (("+" | "-") term)*
+ *   term       := unary (("*" | "/") unary)*
+ *   unary      := ("-" | "+") unary | power
+ *   power      := primary ("^" unary)?
+ *   primary    := NUMBER | REF (":" REF)? | NAME "(" (comparison ("," comparison)*)? ")" | "(" comparison ")"
+ */
+class FormulaParser {
+    private final String input;
+    private int pos;
+
+    private final Set<CellRef> cellRefs = new LinkedHashSet<>();
+    private final Set<RangeRef> rangeRefs = new LinkedHashSet<>();
+
+    FormulaParser(String input) {
+        this.input = input;
+    }
+
+    CompiledFormula parse() {
+        Expr root = comparison();
+        skipWhitespace();
+        if (pos < input.length()) {
+            throw error("Unexpected '" + input.charAt(pos) + "'");
+        }
+        return new CompiledFormula(input, root, Set.copyOf(cellRefs), List.copyOf(rangeRefs));
+    }
+
+    private Expr comparison() {
+        Expr left = additive();
+        String op = comparisonOperator();
+        if (op == null) {
+            return left;
+        }
+        return new Expr.Compare(op, left, additive());
+    }
+
+    private String comparisonOperator() {
+        skipWhitespace();
+        for (String op : new String[] {"<>", "<=", ">=", "=", "<", ">"}) {
+            if (input.startsWith(op, pos)) {
+                pos += op.length();
+                return op;
+            }
+        }
+        return null;
+    }
+
+    private Expr additive() {
+        Expr left = term();
+        while (true) {
+            if (accept('+')) {
+                left = new Expr.Binary('+', left, term());
+            } else if (accept('-')) {
+                left = new Expr.Binary('-', left, term());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expr term() {
+        Expr left = unary();
+        while (true) {
+            if (accept('*')) {
+                left = new Expr.Binary('*', left, unary());
+            } else if (accept('/')) {
+                left = new Expr.Binary('/', left, unary());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expr unary() {
+        if (accept('-')) {
+            return new Expr.Negate(unary());
+        }
+        if (accept('+')) {
+            return unary();
+        }
+        return power();
+    }
+
+    private Expr power() {
+        Expr base = primary();
+        if (accept('^')) {
+            return new Expr.Binary('^', base, unary());
+        }
+        return base;
+    }
+
+    private Expr primary() {
+        skipWhitespace();
+        if (pos >= input.length()) {
+            throw error("Unexpected end of formula");
+        }
+        char c = input.charAt(pos);
+        if (accept('(')) {
+            Expr inner = comparison();
+            expect(')');
+            return inner;
+        }
+        if (Character.isDigit(c) || c == '.') {
+            return number();
+        }
+        if (Character.isLetter(c)) {
+            return referenceOrCall();
+        }
+        throw error("Unexpected '" + c + "'");
+    }
+
+    private Expr number() {
+        int start = pos;
+        while (pos < input.length() && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+            pos++;
+        }
+        try {
+            return new Expr.Literal(Double.parseDouble(input.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + input.substring(start, pos) + "'");
+        }
+    }
+
+    private Expr referenceOrCall() {
+        int start = pos;
+        while (pos < input.length() && Character.isLetter(input.charAt(pos))) {
+            pos++;
+        }
+        String letters = input.substring(start, pos).toUpperCase(Locale.ROOT);
+
+        if (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+            CellRef first = cellRef(letters);
+            if (accept(':')) {
+                skipWhitespace();
+                int refStart = pos;
+                while (pos < input.length() && Character.isLetter(input.charAt(pos))) {
+                    pos++;
+                }
+                CellRef second = cellRef(input.substring(refStart, pos).toUpperCase(Locale.ROOT));
+                RangeRef range = RangeRef.of(first, second);
+                rangeRefs.add(range);
+                return new Expr.Range(range);
+            }
+            cellRefs.add(first);
+            return new Expr.Ref(first);
+        }
+
+        if (!accept('(')) {
+            throw error("Unknown name '" + letters + "'");
+        }
+        List<Expr> args = new ArrayList<>();
+        if (!accept(')')) {
+            do {
+                args.add(comparison());
+            } while (accept(','));
+            expect(')');
+        }
+        return call(letters, args);
+    }
+
+    // Reads the row digits that follow already-consumed column letters
+    private CellRef cellRef(String letters) {
+        int start = pos;
+        while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+            pos++;
+        }
+        if (letters.isEmpty() || start == pos) {
+            throw error("Invalid cell reference");
+        }
+        return CellRef.parse(letters + input.substring(start, pos));
+    }
+
+    private Expr call(String name, List<Expr> args) {
+        if (name.equals("IF")) {
+            if (args.size() != 3) {
+                throw error("IF expects 3 arguments");
+            }
+            return new Expr.If(args.get(0), args.get(1), args.get(2));
+        }
+        Expr.Function function;
+        switch (name) {
+            case "SUM": function = Expr.Function.SUM; break;
+            case "AVG":
+            case "AVERAGE": function = Expr.Function.AVG; break;
+            case "MIN": function = Expr.Function.MIN; break;
+            case "MAX": function = Expr.Function.MAX; break;
+            case "COUNT": function = Expr.Function.COUNT; break;
+            default: throw error("Unknown function '" + name + "'");
+        }
+        if (args.isEmpty()) {
+            throw error(name + " expects at least one argument");
+        }
+        return new Expr.Aggregate(function, List.copyOf(args));
+    }
+
+    private boolean accept(char c) {
+        skipWhitespace();
+        if (pos < input.length() && input.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private FormulaException error(String message) {
+        return new FormulaException(message + " at position " + pos + " in formula: " + input);
+    }
+}
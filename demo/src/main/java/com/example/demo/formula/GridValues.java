@@ -0,0 +1,42 @@
+package com.example.demo.formula;
+
+import java.util.function.Consumer;
+
+// In-memory cell values keyed by packed coordinate, so evaluating against them allocates nothing per read
+public class GridValues implements CellValueSource {
+    private final CellMap<String> values;
+
+    public GridValues() {
+        this(16);
+    }
+
+    public GridValues(int expectedSize) {
+        this.values = new CellMap<>(expectedSize);
+    }
+
+    public void put(int row, int col, String value) {
+        values.put(row, col, value);
+    }
+
+    public boolean contains(int row, int col) {
+        return values.containsKey(row, col);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public String valueAt(int row, int col) {
+        return values.get(row, col);
+    }
+
+    @Override
+    public void forEachValueInRange(RangeRef range, Consumer<String> action) {
+        values.forEachInRange(range, (row, col, value) -> {
+            if (value != null) {
+                action.accept(value);
+            }
+        });
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.formula;
+
+// A rectangular block of cells, always stored with start <= end on both axes
+public record RangeRef(int startRow, int startCol, int endRow, int endCol) {
+
+    public static RangeRef of(CellRef a, CellRef b) {
+        return new RangeRef(
+                Math.min(a.row(), b.row()), Math.min(a.col(), b.col()),
+                Math.max(a.row(), b.row()), Math.max(a.col(), b.col()));
+    }
+
+    // Parses "B2:K500"; a single reference like "C3" is treated as a 1x1 range
+    public static RangeRef parse(String range) {
+        int colon = range.indexOf(':');
+        if (colon < 0) {
+            CellRef ref = CellRef.parse(range.trim());
+            return of(ref, ref);
+        }
+        return of(CellRef.parse(range.substring(0, colon).trim()), CellRef.parse(range.substring(colon + 1).trim()));
+    }
+
+    public boolean contains(int row, int col) {
+        return row >= startRow && row <= endRow && col >= startCol && col <= endCol;
+    }
+
+    public int rows() {
+        return endRow - startRow + 1;
+    }
+
+    public int cols() {
+        return endCol - startCol + 1;
+    }
+
+    public long size() {
+        return (long) rows() * cols();
+    }
+
+    @Override
+    public String toString() {
+        return CellRef.columnName(startCol) + startRow + ":" + CellRef.columnName(endCol) + endRow;
+    }
+}
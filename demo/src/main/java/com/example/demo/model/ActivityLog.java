@@ -1,5 +1,6 @@
 package com.example.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -22,6 +23,9 @@ public class ActivityLog {
     @Column(name = "sheet_id")
     private Integer sheetId;
 
+    @Column(name = "sheet_version")
+    private Long sheetVersion; // The sheet's version after the logged change; null for books
+
     @Column(name = "row_num")
     private Integer rowNum; // Nullable since it's only used for cells
 
@@ -34,6 +38,14 @@ public class ActivityLog {
     @Lob // Ensures the column is TEXT in MySQL
     private String formula;
 
+    // RANGE entries only: the cells the range write changed, in SheetSnapshotCodec.encodeChanges format
+    @Lob
+    @JsonIgnore
+    private byte[] changes;
+
+    @Column(name = "change_count")
+    private Integer changeCount; // RANGE entries only: how many cells changes holds
+
     @Column(name="updated_by", nullable = false, length = 255)
     private String updatedBy;
 
@@ -53,6 +65,6 @@ public class ActivityLog {
     }
 
     public enum EntityType {
-        BOOK, SHEET, CELL
+        BOOK, SHEET, CELL, RANGE
     }
 }
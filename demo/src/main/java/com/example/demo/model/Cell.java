@@ -1,10 +1,14 @@
 package com.example.demo.model;
 
+import com.example.demo.formula.CellRef;
 import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
-@Table(name = "cells")
+@Table(
+    name = "cells",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"sheet_id", "row_num", "col_idx"})
+)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -14,7 +18,7 @@ public class Cell {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sheet_id", nullable = false)
     private Sheet sheet;
 
@@ -24,6 +28,11 @@ public class Cell {
     @Column(name = "col_num", nullable = false, length = 10)
     private String colNum;
 
+    // 1-based index of colNum, kept in step by setColNum; queries sort and filter on it
+    @Setter(AccessLevel.NONE)
+    @Column(name = "col_idx", nullable = false)
+    private Integer colIdx;
+
     @Lob
     private String value;
 
@@ -33,8 +42,13 @@ public class Cell {
     public Cell(Sheet sheet, Integer rowNum, String colNum, String value, String formula) {
         this.sheet = sheet;
         this.rowNum = rowNum;
-        this.colNum = colNum;
+        setColNum(colNum);
         this.value = value;
         this.formula = formula;
     }
+
+    public void setColNum(String colNum) {
+        this.colNum = colNum;
+        this.colIdx = colNum == null ? null : CellRef.columnIndex(colNum);
+    }
 }
@@ -0,0 +1,39 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(name = "cell_dependencies")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CellDependency {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "sheet_id", nullable = false)
+    private Integer sheetId;
+
+    // The formula cell
+    @Column(name = "dependent_row", nullable = false)
+    private Integer dependentRow;
+
+    @Column(name = "dependent_col", nullable = false)
+    private Integer dependentCol;
+
+    // The range it reads (1x1 for a single reference)
+    @Column(name = "start_row", nullable = false)
+    private Integer startRow;
+
+    @Column(name = "start_col", nullable = false)
+    private Integer startCol;
+
+    @Column(name = "end_row", nullable = false)
+    private Integer endRow;
+
+    @Column(name = "end_col", nullable = false)
+    private Integer endCol;
+}
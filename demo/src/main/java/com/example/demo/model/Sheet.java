@@ -19,13 +19,17 @@ public class Sheet {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="book_id", nullable = false)
     private Book book;
 
     @Column(nullable = false)
     private String name;
 
+    // Only ever incremented in the database (SheetRepository.incrementVersion), never written through the entity
+    @Column(nullable = false, insertable = false, updatable = false)
+    private long version;
+
     @OneToMany(mappedBy = "sheet", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Cell> cells;
 }
@@ -0,0 +1,32 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sheet_snapshots")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SheetSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sheet_id", nullable = false)
+    private Integer sheetId;
+
+    // The sheet's version when its cells were copied
+    @Column(nullable = false)
+    private long version;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data; // Name and cells in SheetSnapshotCodec format
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -7,7 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
-public interface ActivityLogRepository extends JpaRepository<ActivityLog, Integer> {
+public interface ActivityLogRepository extends JpaRepository<ActivityLog, Integer>, ActivityLogRepositoryCustom {
 
     List<ActivityLog> findByEntityType(ActivityLog.EntityType entityType);
 
@@ -0,0 +1,53 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ActivityLogFilter;
+import com.example.demo.dto.ActivityLogPartition;
+import com.example.demo.model.ActivityLog;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface ActivityLogRepositoryCustom {
+
+    // Inserts many log rows with JDBC batching; ids are not read back
+    void batchInsert(List<ActivityLog> logs);
+
+    // Coordinates and operations of the sheet's cell changes with versions in (afterVersion, throughVersion],
+    // oldest first; values are not read, except inside the encoded changes of range entries
+    List<ActivityLog> findCellChanges(Integer sheetId, long afterVersion, long throughVersion);
+
+    // Sheet, cell and range entries of the sheet with versions in (afterVersion, throughVersion], oldest first, values included
+    List<ActivityLog> findSheetHistory(Integer sheetId, long afterVersion, long throughVersion);
+
+    // The last version of the sheet logged at or before the time
+    Optional<Long> findVersionAt(Integer sheetId, LocalDateTime time);
+
+    // Entries of the sheet after the version, a range entry counting once per cell it changed
+    long countSheetEntries(Integer sheetId, long afterVersion);
+
+    // Up to limit entries matching the filter, newest first, with ids below beforeId (first page if null)
+    List<ActivityLog> findPage(ActivityLogFilter filter, Integer beforeId, int limit);
+
+    // The highest version of the sheet whose entries were archived, if any were
+    Optional<Long> findArchivedVersion(Integer sheetId);
+
+    // Partitions in bound order, the open-ended one last
+    List<ActivityLogPartition> findPartitions();
+
+    // Splits the open-ended partition so that the given ones come before it
+    void addPartitions(List<ActivityLogPartition> partitions);
+
+    // key: sheet id, value: the highest version the sheet logged in the partition
+    Map<Integer, Long> findLastVersions(String partition);
+
+    // Adds the partition's rows to activity_log_daily; a partition holds whole days, so running it again is harmless
+    void rollUp(String partition);
+
+    // Every row of the partition in id order, as column name to value, read through a streaming cursor
+    void streamPartition(String partition, Consumer<Map<String, Object>> action);
+
+    void dropPartition(String partition);
+}
@@ -0,0 +1,264 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.ActivityLogFilter;
+import com.example.demo.dto.ActivityLogPartition;
+import com.example.demo.model.ActivityLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class ActivityLogRepositoryImpl implements ActivityLogRepositoryCustom {
+    private static final int BATCH_SIZE = 1000;
+    private static final String OPEN_PARTITION = "p_future";
+    // Partition names end up in DDL and PARTITION clauses, which take no parameters
+    private static final Pattern PARTITION_NAME = Pattern.compile("p_start|p_future|p\\d{6}");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ActivityLogRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void batchInsert(List<ActivityLog> logs) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO activity_log (entity_type, operation, book_id, sheet_id, sheet_version, row_num, col_num, value, formula, changes, change_count, updated_by, updated_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                logs, BATCH_SIZE,
+                (ps, log) -> {
+                    ps.setString(1, log.getEntityType().name());
+                    ps.setString(2, log.getOperation().name());
+                    ps.setInt(3, log.getBookId());
+                    ps.setObject(4, log.getSheetId(), Types.INTEGER);
+                    ps.setObject(5, log.getSheetVersion(), Types.BIGINT);
+                    ps.setObject(6, log.getRowNum(), Types.INTEGER);
+                    ps.setString(7, log.getColNum());
+                    ps.setString(8, log.getValue());
+                    ps.setString(9, log.getFormula());
+                    ps.setBytes(10, log.getChanges());
+                    ps.setObject(11, log.getChangeCount(), Types.INTEGER);
+                    ps.setString(12, log.getUpdatedBy());
+                    ps.setTimestamp(13, Timestamp.valueOf(log.getUpdatedAt()));
+                });
+    }
+
+    @Override
+    public List<ActivityLog> findCellChanges(Integer sheetId, long afterVersion, long throughVersion) {
+        // A range scan of idx_activity_sheet_version; its implicit id suffix keeps rows of one version in log order
+        return jdbcTemplate.query(
+                "SELECT sheet_version, entity_type, row_num, col_num, operation, changes FROM activity_log "
+                        + "WHERE sheet_id = ? AND sheet_version > ? AND sheet_version <= ? AND entity_type IN ('CELL', 'RANGE') "
+                        + "ORDER BY sheet_version, id",
+                (rs, i) -> {
+                    ActivityLog log = new ActivityLog();
+                    log.setSheetId(sheetId);
+                    log.setSheetVersion(rs.getLong("sheet_version"));
+                    log.setEntityType(ActivityLog.EntityType.valueOf(rs.getString("entity_type")));
+                    log.setRowNum(rs.getObject("row_num", Integer.class));
+                    log.setColNum(rs.getString("col_num"));
+                    log.setOperation(ActivityLog.OperationType.valueOf(rs.getString("operation")));
+                    log.setChanges(rs.getBytes("changes"));
+                    return log;
+                },
+                sheetId, afterVersion, throughVersion);
+    }
+
+    @Override
+    public List<ActivityLog> findSheetHistory(Integer sheetId, long afterVersion, long throughVersion) {
+        return jdbcTemplate.query(
+                "SELECT sheet_version, entity_type, row_num, col_num, operation, value, formula, changes FROM activity_log "
+                        + "WHERE sheet_id = ? AND sheet_version > ? AND sheet_version <= ? AND entity_type IN ('SHEET', 'CELL', 'RANGE') "
+                        + "ORDER BY sheet_version, id",
+                (rs, i) -> {
+                    ActivityLog log = new ActivityLog();
+                    log.setSheetId(sheetId);
+                    log.setSheetVersion(rs.getLong("sheet_version"));
+                    log.setEntityType(ActivityLog.EntityType.valueOf(rs.getString("entity_type")));
+                    log.setRowNum(rs.getObject("row_num", Integer.class));
+                    log.setColNum(rs.getString("col_num"));
+                    log.setOperation(ActivityLog.OperationType.valueOf(rs.getString("operation")));
+                    log.setValue(rs.getString("value"));
+                    log.setFormula(rs.getString("formula"));
+                    log.setChanges(rs.getBytes("changes"));
+                    return log;
+                },
+                sheetId, afterVersion, throughVersion);
+    }
+
+    @Override
+    public Optional<Long> findVersionAt(Integer sheetId, LocalDateTime time) {
+        // Reads one entry off the end of an idx_activity_sheet_time range
+        return jdbcTemplate.query(
+                "SELECT sheet_version FROM activity_log WHERE sheet_id = ? AND updated_at <= ? AND sheet_version IS NOT NULL "
+                        + "ORDER BY updated_at DESC, sheet_version DESC LIMIT 1",
+                (rs, i) -> rs.getLong(1),
+                sheetId, Timestamp.valueOf(time)).stream().findFirst();
+    }
+
+    @Override
+    public long countSheetEntries(Integer sheetId, long afterVersion) {
+        // A range entry is replayed cell by cell, so it counts as the cells it changed
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(COALESCE(change_count, 1)), 0) FROM activity_log WHERE sheet_id = ? AND sheet_version > ?",
+                Long.class, sheetId, afterVersion);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public List<ActivityLog> findPage(ActivityLogFilter filter, Integer beforeId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        condition(conditions, args, "book_id = ?", filter.bookId());
+        condition(conditions, args, "sheet_id = ?", filter.sheetId());
+        condition(conditions, args, "row_num = ?", filter.rowNum());
+        condition(conditions, args, "col_num = ?", filter.colNum());
+        condition(conditions, args, "updated_by = ?", filter.updatedBy());
+        condition(conditions, args, "operation = ?", filter.operation() == null ? null : filter.operation().name());
+        // Bounds on the partitioning column also prune the partitions outside the window
+        condition(conditions, args, "updated_at >= ?", filter.from() == null ? null : Timestamp.valueOf(filter.from()));
+        condition(conditions, args, "updated_at < ?", filter.to() == null ? null : Timestamp.valueOf(filter.to()));
+        condition(conditions, args, "id < ?", beforeId);
+        args.add(limit);
+        return jdbcTemplate.query(
+                "SELECT id, entity_type, operation, book_id, sheet_id, sheet_version, row_num, col_num, value, formula, change_count, updated_by, updated_at "
+                        + "FROM activity_log" + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                        + " ORDER BY id DESC LIMIT ?",
+                (rs, i) -> {
+                    ActivityLog log = new ActivityLog();
+                    log.setId(rs.getInt("id"));
+                    log.setEntityType(ActivityLog.EntityType.valueOf(rs.getString("entity_type")));
+                    log.setOperation(ActivityLog.OperationType.valueOf(rs.getString("operation")));
+                    log.setBookId(rs.getInt("book_id"));
+                    log.setSheetId(rs.getObject("sheet_id", Integer.class));
+                    log.setSheetVersion(rs.getObject("sheet_version", Long.class));
+                    log.setRowNum(rs.getObject("row_num", Integer.class));
+                    log.setColNum(rs.getString("col_num"));
+                    log.setValue(rs.getString("value"));
+                    log.setFormula(rs.getString("formula"));
+                    log.setChangeCount(rs.getObject("change_count", Integer.class));
+                    log.setUpdatedBy(rs.getString("updated_by"));
+                    log.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+                    return log;
+                },
+                args.toArray());
+    }
+
+    private static void condition(List<String> conditions, List<Object> args, String condition, Object value) {
+        if (value != null) {
+            conditions.add(condition);
+            args.add(value);
+        }
+    }
+
+    @Override
+    public Optional<Long> findArchivedVersion(Integer sheetId) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT MAX(last_version) FROM activity_log_daily WHERE sheet_id = ?", Long.class, sheetId));
+    }
+
+    @Override
+    public List<ActivityLogPartition> findPartitions() {
+        return jdbcTemplate.query(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log' AND PARTITION_NAME IS NOT NULL "
+                        + "ORDER BY PARTITION_ORDINAL_POSITION",
+                (rs, i) -> {
+                    // A quoted date, possibly with a time of midnight, or MAXVALUE
+                    String bound = rs.getString(2).replace("'", "");
+                    return new ActivityLogPartition(rs.getString(1),
+                            bound.equals("MAXVALUE") ? null : LocalDate.parse(bound.substring(0, 10)));
+                });
+    }
+
+    @Override
+    public void addPartitions(List<ActivityLogPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        String split = partitions.stream()
+                .map(partition -> "PARTITION " + checked(partition.name()) + " VALUES LESS THAN ('" + partition.before() + "'), ")
+                .collect(Collectors.joining());
+        // Only rows dated after the last bound are copied, which is none unless the clock was ahead
+        jdbcTemplate.execute("ALTER TABLE activity_log REORGANIZE PARTITION " + OPEN_PARTITION + " INTO ("
+                + split + "PARTITION " + OPEN_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+    }
+
+    @Override
+    public Map<Integer, Long> findLastVersions(String partition) {
+        Map<Integer, Long> versions = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT sheet_id, MAX(sheet_version) FROM activity_log PARTITION (" + checked(partition) + ") "
+                        + "WHERE sheet_id IS NOT NULL AND sheet_version IS NOT NULL GROUP BY sheet_id",
+                (RowCallbackHandler) rs -> versions.put(rs.getInt(1), rs.getLong(2)));
+        return versions;
+    }
+
+    @Override
+    public void rollUp(String partition) {
+        jdbcTemplate.update(
+                // Updates refer to the derived table's columns rather than the deprecated VALUES(col)
+                "INSERT INTO activity_log_daily (sheet_id, day, book_id, entity_type, operation, entries, first_version, last_version) "
+                        + "SELECT * FROM (SELECT COALESCE(sheet_id, 0) AS sheet_id, DATE(updated_at) AS day, book_id, entity_type, operation, "
+                        + "COUNT(*) AS entries, MIN(sheet_version) AS first_version, MAX(sheet_version) AS last_version "
+                        + "FROM activity_log PARTITION (" + checked(partition) + ") "
+                        + "GROUP BY COALESCE(sheet_id, 0), DATE(updated_at), book_id, entity_type, operation) AS rolled "
+                        + "ON DUPLICATE KEY UPDATE entries = rolled.entries, first_version = rolled.first_version, last_version = rolled.last_version");
+    }
+
+    @Override
+    public void streamPartition(String partition, Consumer<Map<String, Object>> action) {
+        String sql = "SELECT id, entity_type, operation, book_id, sheet_id, sheet_version, row_num, col_num, value, formula, changes, change_count, updated_by, updated_at "
+                + "FROM activity_log PARTITION (" + checked(partition) + ") ORDER BY id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Makes MySQL Connector/J stream rows instead of buffering the partition
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", rs.getLong("id"));
+            row.put("entity_type", rs.getString("entity_type"));
+            row.put("operation", rs.getString("operation"));
+            row.put("book_id", rs.getInt("book_id"));
+            row.put("sheet_id", rs.getObject("sheet_id", Integer.class));
+            row.put("sheet_version", rs.getObject("sheet_version", Long.class));
+            row.put("row_num", rs.getObject("row_num", Integer.class));
+            row.put("col_num", rs.getString("col_num"));
+            row.put("value", rs.getString("value"));
+            row.put("formula", rs.getString("formula"));
+            // Range entries' cells stay in their binary form, which JSON carries as base64
+            row.put("changes", rs.getBytes("changes"));
+            row.put("change_count", rs.getObject("change_count", Integer.class));
+            row.put("updated_by", rs.getString("updated_by"));
+            row.put("updated_at", rs.getTimestamp("updated_at").toLocalDateTime());
+            action.accept(row);
+        });
+    }
+
+    @Override
+    public void dropPartition(String partition) {
+        jdbcTemplate.execute("ALTER TABLE activity_log DROP PARTITION " + checked(partition));
+    }
+
+    private static String checked(String partition) {
+        if (!PARTITION_NAME.matcher(partition).matches()) {
+            throw new IllegalArgumentException("Not an activity_log partition: " + partition);
+        }
+        return partition;
+    }
+}
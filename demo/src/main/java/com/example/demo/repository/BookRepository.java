@@ -1,9 +1,23 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.BookDTO;
 import com.example.demo.model.Book;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface BookRepository extends JpaRepository<Book, Integer> {
     Optional<Book> findByName(String name);
+
+    @Query("SELECT new com.example.demo.dto.BookDTO(b.id, b.name) FROM Book b ORDER BY b.id")
+    List<BookDTO> findAllBookDTOs();
+
+    // One statement; the database cascades to the book's sheets, their cells and dependencies
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Book b WHERE b.id = :id")
+    int deleteBookById(@Param("id") Integer id);
 }
@@ -0,0 +1,18 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CellDependency;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface CellDependencyRepository extends JpaRepository<CellDependency, Integer>, CellDependencyRepositoryCustom {
+    List<CellDependency> findBySheetId(Integer sheetId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CellDependency d WHERE d.sheetId = :sheetId AND d.dependentRow = :row AND d.dependentCol = :col")
+    int deleteByDependent(Integer sheetId, Integer row, Integer col);
+}
@@ -0,0 +1,13 @@
+package com.example.demo.repository;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.RangeRef;
+
+import java.util.List;
+import java.util.Map;
+
+public interface CellDependencyRepositoryCustom {
+
+    // Replaces the stored precedents of many formula cells of one sheet in two JDBC batches
+    void replaceAll(Integer sheetId, Map<CellRef, List<RangeRef>> precedentsByDependent);
+}
@@ -0,0 +1,42 @@
+package com.example.demo.repository;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.RangeRef;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CellDependencyRepositoryImpl implements CellDependencyRepositoryCustom {
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CellDependencyRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void replaceAll(Integer sheetId, Map<CellRef, List<RangeRef>> precedentsByDependent) {
+        List<CellRef> dependents = new ArrayList<>(precedentsByDependent.keySet());
+        jdbcTemplate.batchUpdate(
+                "DELETE FROM cell_dependencies WHERE sheet_id = ? AND dependent_row = ? AND dependent_col = ?",
+                dependents, BATCH_SIZE,
+                (ps, dependent) -> {
+                    ps.setInt(1, sheetId);
+                    ps.setInt(2, dependent.row());
+                    ps.setInt(3, dependent.col());
+                });
+
+        List<Object[]> rows = new ArrayList<>();
+        precedentsByDependent.forEach((dependent, ranges) -> {
+            for (RangeRef range : ranges) {
+                rows.add(new Object[] {sheetId, dependent.row(), dependent.col(), range.startRow(), range.startCol(), range.endRow(), range.endCol()});
+            }
+        });
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO cell_dependencies (sheet_id, dependent_row, dependent_col, start_row, start_col, end_row, end_col) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                rows);
+    }
+}
@@ -1,13 +1,70 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.CellDTO;
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.dto.RangeCell;
+import com.example.demo.formula.CellRef;
 import com.example.demo.model.Cell;
 import com.example.demo.model.Sheet;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface CellRepository extends JpaRepository<Cell, Integer> {
+public interface CellRepository extends JpaRepository<Cell, Integer>, CellRepositoryCustom {
     List<Cell> findBySheet(Sheet sheet);
-    Optional<Cell> findBySheetAndRowNumAndColNum(Sheet sheet, int rowNum, String colNum);
+    Optional<Cell> findBySheetAndRowNumAndColIdx(Sheet sheet, int rowNum, int colIdx);
+    long countBySheetId(Integer sheetId);
+
+    default Optional<Cell> findBySheetAndRowNumAndColNum(Sheet sheet, int rowNum, String colNum) {
+        return findBySheetAndRowNumAndColIdx(sheet, rowNum, CellRef.columnIndex(colNum));
+    }
+
+    // Cells inside a rectangle in grid order: one range scan of uk_cells_sheet_row_colidx
+    @Query("SELECT c FROM Cell c WHERE c.sheet.id = :sheetId " +
+           "AND c.rowNum BETWEEN :startRow AND :endRow AND c.colIdx BETWEEN :startCol AND :endCol " +
+           "ORDER BY c.rowNum, c.colIdx")
+    List<Cell> findInRange(@Param("sheetId") Integer sheetId,
+                           @Param("startRow") int startRow, @Param("endRow") int endRow,
+                           @Param("startCol") int startCol, @Param("endCol") int endCol);
+
+    // Contents of the cells inside a rectangle for dense range reads: one range scan of uk_cells_sheet_row_colidx, no entities
+    @Query("SELECT new com.example.demo.dto.RangeCell(c.rowNum, c.colIdx, c.value, c.formula) FROM Cell c WHERE c.sheet.id = :sheetId " +
+           "AND c.rowNum BETWEEN :startRow AND :endRow AND c.colIdx BETWEEN :startCol AND :endCol")
+    List<RangeCell> findRangeCells(@Param("sheetId") Integer sheetId,
+                                   @Param("startRow") int startRow, @Param("endRow") int endRow,
+                                   @Param("startCol") int startCol, @Param("endCol") int endCol);
+
+    // Values only, for formulas reading a range
+    @Query("SELECT c.value FROM Cell c WHERE c.sheet.id = :sheetId " +
+           "AND c.rowNum BETWEEN :startRow AND :endRow AND c.colIdx BETWEEN :startCol AND :endCol " +
+           "AND c.value IS NOT NULL")
+    List<String> findValuesInRange(@Param("sheetId") Integer sheetId,
+                                   @Param("startRow") int startRow, @Param("endRow") int endRow,
+                                   @Param("startCol") int startCol, @Param("endCol") int endCol);
+
+    // One keyset page of the cells inside a rectangle, starting after the cell (afterRow, afterCol); read-only DTOs, no entities
+    @Query("SELECT new com.example.demo.dto.CellDTO(c.id, c.sheet.id, c.rowNum, c.colNum, c.value, c.formula) " +
+           "FROM Cell c WHERE c.sheet.id = :sheetId " +
+           "AND c.rowNum BETWEEN :startRow AND :endRow AND c.colIdx BETWEEN :startCol AND :endCol " +
+           "AND (c.rowNum > :afterRow OR (c.rowNum = :afterRow AND c.colIdx > :afterCol)) " +
+           "ORDER BY c.rowNum, c.colIdx")
+    List<CellDTO> findPage(@Param("sheetId") Integer sheetId,
+                           @Param("startRow") int startRow, @Param("endRow") int endRow,
+                           @Param("startCol") int startCol, @Param("endCol") int endCol,
+                           @Param("afterRow") int afterRow, @Param("afterCol") int afterCol,
+                           Limit limit);
+
+    // Forward-only cursor over a whole sheet; Integer.MIN_VALUE makes MySQL Connector/J stream rows instead of buffering them
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.example.demo.dto.CellExportRow(c.rowNum, c.colNum, c.value, c.formula) " +
+           "FROM Cell c WHERE c.sheet.id = :sheetId ORDER BY c.rowNum, c.colIdx")
+    Stream<CellExportRow> streamBySheetId(@Param("sheetId") Integer sheetId);
 }
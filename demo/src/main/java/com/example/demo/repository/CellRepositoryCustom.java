@@ -0,0 +1,38 @@
+package com.example.demo.repository;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.Cell;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Bulk operations that bypass per-entity persistence and go straight to JDBC batches
+public interface CellRepositoryCustom {
+
+    // Detached cells of the sheet with row numbers in [startRow, endRow]
+    List<Cell> findRowsForBatch(Integer sheetId, int startRow, int endRow);
+
+    // Detached cells of the sheet inside the rectangle
+    List<Cell> findRangeForBatch(Integer sheetId, RangeRef range);
+
+    // Detached cells of the sheet at the given coordinates; coordinates without a cell are left out
+    List<Cell> findCells(Integer sheetId, Collection<CellRef> refs);
+
+    // The sheet of a cell, read with its own pooled connection rather than the request's EntityManager
+    Optional<Integer> findSheetIdByCellId(Integer cellId);
+
+    // Inserts the cell, or overwrites value and formula of the cell already at its coordinates, in one statement.
+    // Sets the cell's id, normalizes its colNum and returns true if it was inserted.
+    boolean upsert(Integer sheetId, Cell cell);
+
+    // Inserts new cells; ids are not read back
+    void batchInsert(Integer sheetId, List<Cell> cells);
+
+    // Updates value and formula of existing cells by id
+    void batchUpdate(List<Cell> cells);
+
+    // Deletes existing cells by id
+    void batchDelete(List<Cell> cells);
+}
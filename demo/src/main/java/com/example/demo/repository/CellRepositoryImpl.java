@@ -0,0 +1,152 @@
+package com.example.demo.repository;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.Cell;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class CellRepositoryImpl implements CellRepositoryCustom {
+    private static final int BATCH_SIZE = 1000;
+    private static final int LOOKUP_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CellRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Cell> findRowsForBatch(Integer sheetId, int startRow, int endRow) {
+        // A non-positive col_idx marks legacy rows whose column does not parse; no request can address them
+        return jdbcTemplate.query(
+                "SELECT id, row_num, col_num, value, formula FROM cells WHERE sheet_id = ? AND row_num BETWEEN ? AND ? AND col_idx > 0",
+                (rs, i) -> {
+                    Cell cell = new Cell(null, rs.getInt("row_num"), rs.getString("col_num"), rs.getString("value"), rs.getString("formula"));
+                    cell.setId(rs.getInt("id"));
+                    return cell;
+                },
+                sheetId, startRow, endRow);
+    }
+
+    @Override
+    public List<Cell> findRangeForBatch(Integer sheetId, RangeRef range) {
+        // One range scan of uk_cells_sheet_row_colidx
+        return jdbcTemplate.query(
+                "SELECT id, row_num, col_num, value, formula FROM cells WHERE sheet_id = ? AND row_num BETWEEN ? AND ? AND col_idx BETWEEN ? AND ?",
+                (rs, i) -> {
+                    Cell cell = new Cell(null, rs.getInt("row_num"), rs.getString("col_num"), rs.getString("value"), rs.getString("formula"));
+                    cell.setId(rs.getInt("id"));
+                    return cell;
+                },
+                sheetId, range.startRow(), range.endRow(), range.startCol(), range.endCol());
+    }
+
+    @Override
+    public List<Cell> findCells(Integer sheetId, Collection<CellRef> refs) {
+        List<CellRef> all = new ArrayList<>(refs);
+        List<Cell> found = new ArrayList<>();
+        // Point lookups on uk_cells_sheet_row_colidx, a bounded number of coordinates per statement
+        for (int from = 0; from < all.size(); from += LOOKUP_SIZE) {
+            List<CellRef> chunk = all.subList(from, Math.min(all.size(), from + LOOKUP_SIZE));
+            Object[] args = new Object[chunk.size() * 3];
+            int i = 0;
+            for (CellRef ref : chunk) {
+                args[i++] = sheetId;
+                args[i++] = ref.row();
+                args[i++] = ref.col();
+            }
+            found.addAll(jdbcTemplate.query(
+                    "SELECT id, row_num, col_num, value, formula FROM cells WHERE (sheet_id, row_num, col_idx) IN ("
+                            + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?)")) + ")",
+                    (rs, n) -> {
+                        Cell cell = new Cell(null, rs.getInt("row_num"), rs.getString("col_num"), rs.getString("value"), rs.getString("formula"));
+                        cell.setId(rs.getInt("id"));
+                        return cell;
+                    },
+                    args));
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<Integer> findSheetIdByCellId(Integer cellId) {
+        return jdbcTemplate.queryForList("SELECT sheet_id FROM cells WHERE id = ?", Integer.class, cellId).stream().findFirst();
+    }
+
+    /*
+     * One statement on uk_cells_sheet_row_colidx. LAST_INSERT_ID(id) hands back the row's id as the generated
+     * key whether it was inserted or overwritten. With useAffectedRows the driver reports 1 for an insert,
+     * 2 for an overwritten row and 0, without a key, for a row that already held these values; only that
+     * last case needs a second statement, to read the id.
+     */
+    @Override
+    public boolean upsert(Integer sheetId, Cell cell) {
+        // Stored in canonical form, so "d" and "D" address and name the same column
+        cell.setColNum(CellRef.columnName(cell.getColIdx()));
+        Integer rows = jdbcTemplate.execute(
+                connection -> connection.prepareStatement(
+                        "INSERT INTO cells (sheet_id, row_num, col_num, col_idx, value, formula) VALUES (?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id), col_num = VALUES(col_num), value = VALUES(value), formula = VALUES(formula)",
+                        Statement.RETURN_GENERATED_KEYS),
+                (PreparedStatementCallback<Integer>) ps -> {
+                    ps.setInt(1, sheetId);
+                    ps.setInt(2, cell.getRowNum());
+                    ps.setString(3, cell.getColNum());
+                    ps.setInt(4, cell.getColIdx());
+                    ps.setString(5, cell.getValue());
+                    ps.setString(6, cell.getFormula());
+                    int affected = ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        // An overwrite reports the row's id followed by a spurious second key
+                        cell.setId(keys.next() ? keys.getInt(1) : null);
+                    }
+                    return affected;
+                });
+        if (cell.getId() == null) {
+            cell.setId(jdbcTemplate.queryForObject("SELECT id FROM cells WHERE sheet_id = ? AND row_num = ? AND col_idx = ?",
+                    Integer.class, sheetId, cell.getRowNum(), cell.getColIdx()));
+        }
+        return rows != null && rows == 1;
+    }
+
+    @Override
+    public void batchInsert(Integer sheetId, List<Cell> cells) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO cells (sheet_id, row_num, col_num, col_idx, value, formula) VALUES (?, ?, ?, ?, ?, ?)",
+                cells, BATCH_SIZE,
+                (ps, cell) -> {
+                    ps.setInt(1, sheetId);
+                    ps.setInt(2, cell.getRowNum());
+                    ps.setString(3, cell.getColNum());
+                    ps.setInt(4, cell.getColIdx());
+                    ps.setString(5, cell.getValue());
+                    ps.setString(6, cell.getFormula());
+                });
+    }
+
+    @Override
+    public void batchUpdate(List<Cell> cells) {
+        jdbcTemplate.batchUpdate(
+                "UPDATE cells SET value = ?, formula = ? WHERE id = ?",
+                cells, BATCH_SIZE,
+                (ps, cell) -> {
+                    ps.setString(1, cell.getValue());
+                    ps.setString(2, cell.getFormula());
+                    ps.setInt(3, cell.getId());
+                });
+    }
+
+    @Override
+    public void batchDelete(List<Cell> cells) {
+        jdbcTemplate.batchUpdate("DELETE FROM cells WHERE id = ?", cells, BATCH_SIZE, (ps, cell) -> ps.setInt(1, cell.getId()));
+    }
+}
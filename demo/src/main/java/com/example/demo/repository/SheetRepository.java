@@ -1,10 +1,32 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.SheetDTO;
 import com.example.demo.model.Sheet;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 import java.util.Optional;
 
-public interface SheetRepository extends JpaRepository<Sheet, Integer> {
+public interface SheetRepository extends JpaRepository<Sheet, Integer>, SheetRepositoryCustom {
     Optional<Sheet> findByName(String name);
     Optional<Sheet> findByBookIdAndName(Integer bookId, String name);
+
+    // s.book.id reads the foreign key column, so books are not joined
+    @Query("SELECT new com.example.demo.dto.SheetDTO(s.id, s.name, s.book.id, s.version) FROM Sheet s ORDER BY s.id")
+    List<SheetDTO> findAllSheetDTOs();
+
+    @Query("SELECT s.id FROM Sheet s WHERE s.book.id = :bookId")
+    List<Integer> findIdsByBookId(@Param("bookId") Integer bookId);
+
+    // A query rather than findById, so a sheet already in the persistence context is not served stale
+    @Query("SELECT s.version FROM Sheet s WHERE s.id = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+
+    // One statement; the database cascades to the sheet's cells and dependencies
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Sheet s WHERE s.id = :id")
+    int deleteSheetById(@Param("id") Integer id);
 }
@@ -0,0 +1,14 @@
+package com.example.demo.repository;
+
+import java.util.Optional;
+
+public interface SheetRepositoryCustom {
+
+    // Called once by every transaction that changes the sheet; the row lock it takes is held until commit.
+    // Returns the new version.
+    long incrementVersion(Integer sheetId);
+
+    // Ids of sheets addressed by name, read with their own pooled connection rather than the request's EntityManager
+    Optional<Integer> findIdByBookIdAndName(Integer bookId, String name);
+    Optional<Integer> findIdByBookNameAndName(String bookName, String name);
+}
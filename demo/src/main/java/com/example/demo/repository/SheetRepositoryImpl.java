@@ -0,0 +1,53 @@
+package com.example.demo.repository;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Optional;
+
+public class SheetRepositoryImpl implements SheetRepositoryCustom {
+    private final JdbcTemplate jdbcTemplate;
+
+    public SheetRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /*
+     * LAST_INSERT_ID(expr) hands the new version back as the statement's generated key, so bumping
+     * and reading it is one round trip.
+     */
+    @Override
+    public long incrementVersion(Integer sheetId) {
+        Long version = jdbcTemplate.execute(
+                connection -> connection.prepareStatement(
+                        "UPDATE sheets SET version = LAST_INSERT_ID(version + 1) WHERE id = ?", Statement.RETURN_GENERATED_KEYS),
+                (PreparedStatementCallback<Long>) ps -> {
+                    ps.setInt(1, sheetId);
+                    if (ps.executeUpdate() == 0) {
+                        return null;
+                    }
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        return keys.next() ? keys.getLong(1) : null;
+                    }
+                });
+        if (version == null) {
+            throw new EmptyResultDataAccessException("Sheet " + sheetId + " does not exist.", 1);
+        }
+        return version;
+    }
+
+    @Override
+    public Optional<Integer> findIdByBookIdAndName(Integer bookId, String name) {
+        return jdbcTemplate.queryForList("SELECT id FROM sheets WHERE book_id = ? AND name = ?", Integer.class, bookId, name)
+                .stream().findFirst();
+    }
+
+    @Override
+    public Optional<Integer> findIdByBookNameAndName(String bookName, String name) {
+        return jdbcTemplate.queryForList("SELECT s.id FROM sheets s JOIN books b ON b.id = s.book_id WHERE b.name = ? AND s.name = ?",
+                Integer.class, bookName, name).stream().findFirst();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.SheetSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface SheetSnapshotRepository extends JpaRepository<SheetSnapshot, Long> {
+
+    // The snapshot a read of the sheet at the version starts from; one probe of uc_snapshot_sheet_version
+    Optional<SheetSnapshot> findFirstBySheetIdAndVersionLessThanEqualOrderByVersionDesc(Integer sheetId, long version);
+
+    // Without loading any snapshot data
+    @Query("SELECT MAX(s.version) FROM SheetSnapshot s WHERE s.sheetId = :sheetId")
+    Optional<Long> findLatestVersion(@Param("sheetId") Integer sheetId);
+}
@@ -0,0 +1,185 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ActivityLogPartition;
+import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.repository.ActivityLogRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Keeps activity_log, which is range-partitioned by month of updated_at (V10), at a constant size. Every
+ * maintenance-interval-ms a background thread splits months up to partitions-ahead in advance off the
+ * open-ended partition, so inserts always land in a small, current partition, and archives each partition
+ * that ends retention-months or more ago:
+ *
+ *  1. each sheet with entries in it is snapshotted at the last version it logged there, so every later
+ *     version can still be rebuilt (SheetHistoryService) without the dropped entries;
+ *  2. the rows are written to <archive-dir>/activity_log-<partition>.ndjson.gz;
+ *  3. they are summed up per sheet and day into activity_log_daily, which also records how far each
+ *     sheet's history is archived;
+ *  4. the partition is dropped, which costs the same however many rows it holds.
+ *
+ * Every step can be repeated, so a run that fails part way is finished by the next one.
+ */
+@Component
+public class ActivityLogArchiver {
+    private static final Logger log = LoggerFactory.getLogger(ActivityLogArchiver.class);
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ActivityLogRepository activityLogRepository;
+    private final SheetHistoryService sheetHistoryService;
+    private final SheetSnapshotService sheetSnapshotService;
+    private final ObjectWriter lineWriter;
+    private final int retentionMonths;
+    private final int partitionsAhead;
+    private final Path archiveDir;
+    private final long intervalMs;
+    private final Counter failures;
+    private ScheduledExecutorService scheduler;
+
+    public ActivityLogArchiver(ActivityLogRepository activityLogRepository, SheetHistoryService sheetHistoryService,
+                               SheetSnapshotService sheetSnapshotService, ObjectMapper objectMapper,
+                               @Value("${activity-log.retention-months:12}") int retentionMonths,
+                               @Value("${activity-log.partitions-ahead:3}") int partitionsAhead,
+                               @Value("${activity-log.archive-dir:activity-log-archive}") String archiveDir,
+                               @Value("${activity-log.maintenance-interval-ms:3600000}") long intervalMs,
+                               MeterRegistry meterRegistry) {
+        if (retentionMonths < 1 || partitionsAhead < 1 || intervalMs < 1) {
+            throw new IllegalArgumentException("activity-log retention-months, partitions-ahead and maintenance-interval-ms must be positive.");
+        }
+        this.activityLogRepository = activityLogRepository;
+        this.sheetHistoryService = sheetHistoryService;
+        this.sheetSnapshotService = sheetSnapshotService;
+        // NDJSON needs one object per line, whatever the application-wide indent setting is
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.retentionMonths = retentionMonths;
+        this.partitionsAhead = partitionsAhead;
+        this.archiveDir = Path.of(archiveDir);
+        this.intervalMs = intervalMs;
+        this.failures = Counter.builder("background.failures")
+                .description("Background task runs that failed")
+                .tag("task", "activity-log-maintenance")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // A scheduled task that throws is never run again
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                LocalDate today = LocalDate.now();
+                addPartitions(today);
+                archivePartitions(today.withDayOfMonth(1).minusMonths(retentionMonths), archiveDir);
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.error("Activity log maintenance failed", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Makes sure there is a partition for every month up to partitions-ahead after today's
+    public void addPartitions(LocalDate today) {
+        LocalDate last = null;
+        for (ActivityLogPartition partition : activityLogRepository.findPartitions()) {
+            if (partition.before() != null) {
+                last = partition.before();
+            }
+        }
+        LocalDate through = today.withDayOfMonth(1).plusMonths(partitionsAhead + 1);
+        LocalDate month = last != null ? last : today.withDayOfMonth(1);
+        List<ActivityLogPartition> added = new ArrayList<>();
+        for (; month.isBefore(through); month = month.plusMonths(1)) {
+            added.add(new ActivityLogPartition(PARTITION_NAME.format(month), month.plusMonths(1)));
+        }
+        activityLogRepository.addPartitions(added);
+    }
+
+    // Archives and drops every partition whose rows are all from before the cutoff; returns their names, oldest first
+    public List<String> archivePartitions(LocalDate cutoff, Path directory) {
+        List<String> archived = new ArrayList<>();
+        for (ActivityLogPartition partition : activityLogRepository.findPartitions()) {
+            if (partition.before() == null || partition.before().isAfter(cutoff)) {
+                break;
+            }
+            archive(partition.name(), directory);
+            archived.add(partition.name());
+        }
+        return archived;
+    }
+
+    private void archive(String partition, Path directory) {
+        for (Map.Entry<Integer, Long> sheet : activityLogRepository.findLastVersions(partition).entrySet()) {
+            try {
+                sheetSnapshotService.saveSnapshot(sheet.getKey(), sheetHistoryService.sheetAt(sheet.getKey(), sheet.getValue()));
+            } catch (SheetNotFoundException e) {
+                // Deleted sheets have no versions left to read
+            }
+        }
+        writeArchive(partition, directory);
+        activityLogRepository.rollUp(partition);
+        activityLogRepository.dropPartition(partition);
+    }
+
+    // Written under a temporary name, so a file with the final name is always complete
+    private void writeArchive(String partition, Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("activity_log-" + partition + ".ndjson.gz");
+            Path partial = directory.resolve(file.getFileName() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(partial), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                activityLogRepository.streamPartition(partition, row -> {
+                    try {
+                        writer.write(lineWriter.writeValueAsString(row));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive activity_log partition " + partition + ".", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -1,47 +1,68 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ActivityLogFilter;
 import com.example.demo.model.ActivityLog;
 import com.example.demo.model.Book;
 import com.example.demo.model.Sheet;
 import com.example.demo.repository.ActivityLogRepository;
-import com.example.demo.repository.SheetRepository;
-import com.example.demo.repository.BookRepository;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class ActivityLogService {
+    private final ActivityLogWriter activityLogWriter;
+    private final SheetSnapshotService sheetSnapshotService;
     private final ActivityLogRepository activityLogRepository;
-    private final SheetRepository sheetRepository;
-    private final BookRepository bookRepository;
 
-    public ActivityLogService(ActivityLogRepository activityLogRepository, SheetRepository sheetRepository, BookRepository bookRepository) {
+    public ActivityLogService(ActivityLogWriter activityLogWriter, SheetSnapshotService sheetSnapshotService,
+                              ActivityLogRepository activityLogRepository) {
+        this.activityLogWriter = activityLogWriter;
+        this.sheetSnapshotService = sheetSnapshotService;
         this.activityLogRepository = activityLogRepository;
-        this.sheetRepository = sheetRepository;
-        this.bookRepository = bookRepository;
+    }
+
+    // One page of entries, newest first; entries still queued by the writer show up once they are written
+    public List<ActivityLog> getActivityPage(ActivityLogFilter filter, Integer beforeId, int limit) {
+        if (filter.rowNum() != null && filter.sheetId() == null) {
+            throw new IllegalArgumentException("cell requires sheetId.");
+        }
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new IllegalArgumentException("from must be before to.");
+        }
+        return activityLogRepository.findPage(filter, beforeId, limit);
     }
 
     // Method for Book operations (no sheet, rowNum, colNum, value, formula)
-    public void logActivityBook(Integer bookId, String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
-        // Fetch Book object before logging
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Book with ID " + bookId + " not found, cannot log activity."));
-        logActivity(bookId, null, null, null, book.getName(), null, updatedBy, operation, entityType);
+    public void logActivityBook(Book book, String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
+        logActivity(book.getId(), null, null, null, null, book.getName(), null, updatedBy, operation, entityType);
     }
 
     // Method for Sheet operations (no rowNum, colNum, value, formula)
-    public void logActivitySheet(Integer sheetId, String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
-        // Fetch Sheet object before logging
-        Sheet sheet = sheetRepository.findById(sheetId)
-                .orElseThrow(() -> new IllegalArgumentException("Sheet with ID " + sheetId + " not found, cannot log activity."));
-
-        logActivity(sheet.getBook().getId(), sheetId, null, null, sheet.getName(), null, updatedBy, operation, entityType);
+    public void logActivitySheet(Sheet sheet, String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
+        logActivity(sheet.getBook().getId(), sheet.getId(), sheet.getVersion(), null, null, sheet.getName(), null, updatedBy, operation, entityType);
     }
 
-    // Full method
-    public void logActivity(Integer bookId, Integer sheetId, Integer rowNum, String colNum, String value, String formula,
+    // Full method; sheetVersion is the version the change moved the sheet to
+    public void logActivity(Integer bookId, Integer sheetId, Long sheetVersion, Integer rowNum, String colNum, String value, String formula,
                             String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
+        activityLogWriter.submit(List.of(buildLog(bookId, sheetId, sheetVersion, rowNum, colNum, value, formula, updatedBy, operation, entityType)));
+        if (sheetId != null) {
+            sheetSnapshotService.entriesLogged(sheetId, 1);
+        }
+    }
+
+    // Bulk variant for batch writes
+    public void logActivities(List<ActivityLog> logs) {
+        activityLogWriter.submit(logs);
+        sheetSnapshotService.entriesLogged(logs);
+    }
+
+    public ActivityLog buildLog(Integer bookId, Integer sheetId, Long sheetVersion, Integer rowNum, String colNum, String value, String formula,
+                                String updatedBy, ActivityLog.OperationType operation, ActivityLog.EntityType entityType) {
         ActivityLog log = new ActivityLog();
         log.setSheetId(sheetId);
+        log.setSheetVersion(sheetVersion);
         log.setBookId(bookId);
         log.setRowNum(rowNum);
         log.setColNum(colNum);
@@ -50,6 +71,6 @@ public class ActivityLogService {
         log.setUpdatedBy(updatedBy);
         log.setOperation(operation);
         log.setEntityType(entityType);
-        activityLogRepository.save(log);
+        return log;
     }
 }
@@ -0,0 +1,355 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ActivityLog;
+import com.example.demo.repository.ActivityLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Writes activity_log rows off the request thread. Entries are queued once the caller's transaction
+ * commits (and dropped if it rolls back), and a single worker thread batch-inserts them whenever
+ * flush-size entries are waiting or flush-interval-ms has passed. When the queue is full the caller
+ * writes its entries itself, so a slow database slows writers down instead of losing audit rows.
+ * Whatever is still queued at shutdown is flushed before the context closes. Until a sheet's entries are
+ * written, firstUnwrittenVersion tells readers of the log which of its versions are not there yet.
+ *
+ * A failed insert is retried retry-attempts times, waiting retry-backoff-ms and twice as long after each
+ * failure; an overflow insert on a request thread is tried once. A batch that still fails is kept, with its
+ * versions still unwritten so readers stop below the gap, and the worker tries it again before each later
+ * batch until it goes in. Kept entries count against queue-capacity together with the queued ones: while
+ * they fill it every caller overflows, and a failed batch that does not fit is dropped, logged and counted
+ * in activity_log.dropped, so an outage never grows the heap past the bound.
+ *
+ * With activity-log.async=false entries are inserted immediately in the caller's transaction.
+ *
+ * activity_log.writes times every insert, tagged with who paid for it: the request thread (inline, or
+ * overflow when the queue was full) or the worker.
+ */
+@Component
+public class ActivityLogWriter {
+    private static final Logger log = LoggerFactory.getLogger(ActivityLogWriter.class);
+
+    private final ActivityLogRepository activityLogRepository;
+    private final TransactionOperations transactionOperations;
+    private final boolean async;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final int retryAttempts;
+    private final long retryBackoffMs;
+    private final BlockingQueue<ActivityLog> queue;
+    private final int queueCapacity;
+    // Batches that failed every attempt, oldest first, and how many entries they hold
+    private final Queue<List<ActivityLog>> failed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final Timer inlineWrites;
+    private final Timer workerWrites;
+    private final Timer overflowWrites;
+    private final Counter failures;
+    private final Counter dropped;
+
+    // sheet id -> versions with entries submitted but not yet written, and how many; guarded by itself
+    private final Map<Integer, TreeMap<Long, Integer>> unwritten = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public ActivityLogWriter(ActivityLogRepository activityLogRepository, PlatformTransactionManager transactionManager,
+                             @Value("${activity-log.async:true}") boolean async,
+                             @Value("${activity-log.queue-capacity:10000}") int queueCapacity,
+                             @Value("${activity-log.flush-size:500}") int flushSize,
+                             @Value("${activity-log.flush-interval-ms:200}") long flushIntervalMs,
+                             @Value("${activity-log.retry-attempts:5}") int retryAttempts,
+                             @Value("${activity-log.retry-backoff-ms:100}") long retryBackoffMs,
+                             MeterRegistry meterRegistry) {
+        this(activityLogRepository, requiresNew(transactionManager), async, queueCapacity, flushSize, flushIntervalMs,
+                retryAttempts, retryBackoffMs, meterRegistry);
+    }
+
+    public ActivityLogWriter(ActivityLogRepository activityLogRepository, TransactionOperations transactionOperations,
+                             boolean async, int queueCapacity, int flushSize, long flushIntervalMs,
+                             int retryAttempts, long retryBackoffMs, MeterRegistry meterRegistry) {
+        if (queueCapacity < 1 || flushSize < 1 || flushIntervalMs < 1 || retryAttempts < 1 || retryBackoffMs < 1) {
+            throw new IllegalArgumentException("activity-log queue-capacity, flush-size, flush-interval-ms, retry-attempts and retry-backoff-ms must be positive.");
+        }
+        this.activityLogRepository = activityLogRepository;
+        this.transactionOperations = transactionOperations;
+        this.async = async;
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.retryAttempts = retryAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inlineWrites = writeTimer(meterRegistry, "inline");
+        this.workerWrites = writeTimer(meterRegistry, "worker");
+        this.overflowWrites = writeTimer(meterRegistry, "overflow");
+        Gauge.builder("activity_log.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        this.failures = Counter.builder("background.failures")
+                .description("Background task runs that failed")
+                .tag("task", "activity-log-writer")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("activity_log.dropped")
+                .description("Activity log entries dropped after failing while the retry backlog was full")
+                .register(meterRegistry);
+    }
+
+    private static Timer writeTimer(MeterRegistry meterRegistry, String writer) {
+        return Timer.builder("activity_log.writes")
+                .description("Activity log batch inserts")
+                .tag("writer", writer)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // Batches are written in their own transaction so they never join, or get lost with, a caller's transaction
+    private static TransactionOperations requiresNew(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!async) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::drainLoop, "activity-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void submit(List<ActivityLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        if (!async) {
+            inlineWrites.record(() -> activityLogRepository.batchInsert(logs));
+            return;
+        }
+        // Tracked before the caller commits, so no reader can see the new version without its entries being tracked
+        track(logs, 1);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(logs);
+                    } else {
+                        track(logs, -1);
+                    }
+                }
+            });
+        } else {
+            enqueue(logs);
+        }
+    }
+
+    private void enqueue(List<ActivityLog> logs) {
+        List<ActivityLog> overflow = null;
+        for (ActivityLog entry : logs) {
+            if (!running || queue.size() + failedCount.get() >= queueCapacity || !queue.offer(entry)) {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(entry);
+            }
+        }
+        // Backpressure: the queue is full (or shutting down), so this caller pays for its own insert, once
+        if (overflow != null && !write(overflow, overflowWrites, 1)) {
+            keepForRetry(overflow);
+        }
+    }
+
+    private void drainLoop() {
+        List<ActivityLog> batch = new ArrayList<>(flushSize);
+        while (running) {
+            if (!retryFailed()) {
+                // Still failing; wait a flush interval before the next round
+                if (!pause(flushIntervalMs)) {
+                    running = false;
+                }
+                continue;
+            }
+            try {
+                ActivityLog first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= flushSize || remaining <= 0) {
+                        break;
+                    }
+                    ActivityLog next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                if (!write(batch, workerWrites, retryAttempts)) {
+                    keepForRetry(batch);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // Returns whether the batch was written; one that was not stays tracked
+    private boolean write(List<ActivityLog> batch, Timer timer, int attempts) {
+        long backoff = retryBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                timer.record(() -> transactionOperations.executeWithoutResult(status -> activityLogRepository.batchInsert(batch)));
+                track(batch, -1);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= attempts || !pause(backoff)) {
+                    failures.increment();
+                    log.error("Failed to write {} activity log entries after {} attempts", batch.size(), attempt, e);
+                    return false;
+                }
+                log.warn("Writing {} activity log entries failed (attempt {} of {}); retrying in {} ms",
+                        batch.size(), attempt, attempts, backoff, e);
+                backoff *= 2;
+            }
+        }
+    }
+
+    // Keeps a failed batch for retryFailed, or drops it once kept and queued entries would pass queue-capacity
+    private void keepForRetry(List<ActivityLog> batch) {
+        synchronized (failed) {
+            if (failedCount.get() + batch.size() <= queueCapacity) {
+                failed.add(new ArrayList<>(batch));
+                failedCount.addAndGet(batch.size());
+                return;
+            }
+        }
+        // Untracked so readers of the log do not wait for versions that will never be written
+        track(batch, -1);
+        dropped.increment(batch.size());
+        log.error("Dropped {} activity log entries: {} failed entries are already waiting for a retry", batch.size(), failedCount.get());
+    }
+
+    // Writes the batches that failed earlier, oldest first; returns false once one fails again and leaves it first
+    private boolean retryFailed() {
+        List<ActivityLog> batch;
+        while ((batch = failed.peek()) != null) {
+            if (!write(batch, workerWrites, retryAttempts)) {
+                return false;
+            }
+            failed.poll();
+            failedCount.addAndGet(-batch.size());
+        }
+        return true;
+    }
+
+    private static boolean pause(long ms) {
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void track(List<ActivityLog> logs, int delta) {
+        synchronized (unwritten) {
+            for (ActivityLog entry : logs) {
+                if (entry.getSheetId() == null || entry.getSheetVersion() == null) {
+                    continue;
+                }
+                TreeMap<Long, Integer> versions = unwritten.computeIfAbsent(entry.getSheetId(), k -> new TreeMap<>());
+                versions.merge(entry.getSheetVersion(), delta, (a, b) -> a + b == 0 ? null : a + b);
+                if (versions.isEmpty()) {
+                    unwritten.remove(entry.getSheetId());
+                }
+            }
+        }
+    }
+
+    /*
+     * The oldest version of the sheet with entries that are not in activity_log yet, or Long.MAX_VALUE.
+     * A reader that holds the sheet's lock and calls this before its first query can trust the log below it:
+     * every earlier version is committed and tracked by then, and its entries were written before untracking.
+     * A reader without the lock reads the sheet's committed version first and trusts the log only up to it.
+     */
+    public long firstUnwrittenVersion(Integer sheetId) {
+        synchronized (unwritten) {
+            TreeMap<Long, Integer> versions = unwritten.get(sheetId);
+            return versions == null ? Long.MAX_VALUE : versions.firstKey();
+        }
+    }
+
+    // Stops the worker and writes everything still queued on the calling thread
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(30));
+        flush();
+        if (!failed.isEmpty()) {
+            log.error("Shutting down with {} activity log entries that could not be written", failedEntries());
+        }
+    }
+
+    // Writes all queued and earlier failed entries now; intended for shutdown and tests
+    public void flush() {
+        retryFailed();
+        List<ActivityLog> batch = new ArrayList<>(flushSize);
+        while (queue.drainTo(batch, flushSize) > 0) {
+            if (!write(batch, workerWrites, retryAttempts)) {
+                keepForRetry(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    // Entries that failed every attempt and wait for a retry
+    public int failedEntries() {
+        return failedCount.get();
+    }
+}
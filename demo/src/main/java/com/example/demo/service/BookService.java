@@ -1,9 +1,12 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.BookDTO;
 import com.example.demo.exception.*;
 import com.example.demo.model.Book;
 import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.SheetRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import com.example.demo.model.ActivityLog;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
@@ -16,14 +19,23 @@ import java.util.Optional;
 public class BookService {
     private final BookRepository bookRepository;
     private final ActivityLogService activityLogService;
+    private final SheetRepository sheetRepository;
+    private final DependencyGraphService dependencyGraphService;
+    private final SheetCellCache sheetCellCache;
+    private final SheetEventHub sheetEventHub;
 
-    public BookService(BookRepository bookRepository, ActivityLogService activityLogService) {
+    public BookService(BookRepository bookRepository, ActivityLogService activityLogService, SheetRepository sheetRepository,
+                       DependencyGraphService dependencyGraphService, SheetCellCache sheetCellCache, SheetEventHub sheetEventHub) {
         this.bookRepository = bookRepository;
         this.activityLogService = activityLogService;
+        this.sheetRepository = sheetRepository;
+        this.dependencyGraphService = dependencyGraphService;
+        this.sheetCellCache = sheetCellCache;
+        this.sheetEventHub = sheetEventHub;
     }
 
-    public List<Book> getAllBooks() {
-        return bookRepository.findAll();
+    public List<BookDTO> getAllBooks() {
+        return bookRepository.findAllBookDTOs();
     }
 
     public Optional<Book> getBookById(int id) {
@@ -40,7 +52,7 @@ public class BookService {
         }
         try {
             Book createdBook = bookRepository.save(book);
-            activityLogService.logActivityBook(createdBook.getId(), "system", ActivityLog.OperationType.ADD, ActivityLog.EntityType.BOOK);
+            activityLogService.logActivityBook(createdBook, "system", ActivityLog.OperationType.ADD, ActivityLog.EntityType.BOOK);
             return createdBook;
         } catch (DataIntegrityViolationException e) {
             e.printStackTrace();
@@ -58,17 +70,24 @@ public class BookService {
                 .map(book -> {
                     book.setName(updatedBook.getName());
                     Book retBook = bookRepository.save(book);
-                    activityLogService.logActivityBook(id, "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.BOOK);
+                    activityLogService.logActivityBook(retBook, "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.BOOK);
                     return retBook;
                 })
                 .orElseThrow(() -> new BookNotFoundException("Book with ID " + id + " not found."));
     }
 
+    // A bulk delete instead of a cascading remove, which would load and delete every sheet and cell of the book one by one
+    @Transactional
     public void deleteBook(int id) {
-        if (!bookRepository.existsById(id)) {
-            throw new BookNotFoundException("Book with ID " + id + " not found.");
+        Book book = bookRepository.findById(id)
+                .orElseThrow(() -> new BookNotFoundException("Book with ID " + id + " not found."));
+        activityLogService.logActivityBook(book, "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.BOOK);
+        List<Integer> sheetIds = sheetRepository.findIdsByBookId(id);
+        bookRepository.deleteBookById(id);
+        for (Integer sheetId : sheetIds) {
+            dependencyGraphService.evictAfterCompletion(sheetId);
+            sheetCellCache.evictAfterCompletion(sheetId);
+            sheetEventHub.sheetDeleted(sheetId);
         }
-        activityLogService.logActivityBook(id, "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.BOOK);
-        bookRepository.deleteById(id);
     }
 }
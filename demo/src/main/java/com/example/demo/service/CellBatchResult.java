@@ -0,0 +1,5 @@
+package com.example.demo.service;
+
+// Outcome of a batch upsert: cells inserted, cells overwritten, and formulas outside the batch that were recalculated
+public record CellBatchResult(int created, int updated, int recalculated) {
+}
@@ -1,133 +1,490 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.CellChange;
+import com.example.demo.dto.CellDTO;
+import com.example.demo.dto.RangeCell;
 import com.example.demo.exception.CellNotFoundException;
+import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CellValueSource;
+import com.example.demo.formula.CompiledFormula;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.GridValues;
+import com.example.demo.formula.RangeRef;
 import com.example.demo.model.Cell;
 import com.example.demo.model.Sheet;
 import com.example.demo.model.ActivityLog;
 import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.regex.*;
+import java.util.function.Consumer;
 
 @Service
 public class CellService {
+    // Dense range reads and writes hold the whole rectangle, filled or not
+    public static final int MAX_RANGE_CELLS = 1_000_000;
+
     private final CellRepository cellRepository;
     private final ActivityLogService activityLogService;
+    private final FormulaCompiler formulaCompiler;
+    private final DependencyGraphService dependencyGraphService;
+    private final EntityManager entityManager;
+    private final SheetCellCache sheetCellCache;
+    private final SheetLocks sheetLocks;
+    private final FormulaMetrics formulaMetrics;
+    private final SheetRepository sheetRepository;
+    private final SheetEventHub sheetEventHub;
 
-    // key: A1, value: set of dependent cells (like A3, A5)
-    private final Map<String, Set<String>> dependencyGraph = new HashMap<>();
-
-    public CellService(CellRepository cellRepository, ActivityLogService activityLogService) {
+    public CellService(CellRepository cellRepository, ActivityLogService activityLogService, FormulaCompiler formulaCompiler,
+                       DependencyGraphService dependencyGraphService, EntityManager entityManager, SheetCellCache sheetCellCache,
+                       SheetLocks sheetLocks, FormulaMetrics formulaMetrics, SheetRepository sheetRepository,
+                       SheetEventHub sheetEventHub) {
         this.cellRepository = cellRepository;
         this.activityLogService = activityLogService;
+        this.formulaCompiler = formulaCompiler;
+        this.dependencyGraphService = dependencyGraphService;
+        this.entityManager = entityManager;
+        this.sheetCellCache = sheetCellCache;
+        this.sheetLocks = sheetLocks;
+        this.formulaMetrics = formulaMetrics;
+        this.sheetRepository = sheetRepository;
+        this.sheetEventHub = sheetEventHub;
+    }
+
+    // Every write transaction starts here: the sheet's lock is held until commit and its version moves on once
+    // Returns the new version, which the transaction's activity log rows and sheet events carry
+    private long beginWrite(Integer sheetId) {
+        sheetLocks.lock(sheetId);
+        long version = sheetRepository.incrementVersion(sheetId);
+        sheetEventHub.openWrite(sheetId, version);
+        return version;
+    }
+
+    @Transactional
+    public CellWriteResult createOrUpdateCell(Cell cell) {
+        // Held until commit: writes and recalculations on one sheet never interleave
+        long version = beginWrite(cell.getSheet().getId());
+        CellRef cellKey = cellKey(cell);
+
+        if (FormulaCompiler.isFormula(cell.getFormula())) {
+            CompiledFormula compiled = formulaCompiler.compile(cell.getFormula());
+            // Rejects circular references before anything is evaluated or saved
+            dependencyGraphService.setPrecedents(cell.getSheet().getId(), cellKey, DependencyGraph.rangesOf(compiled));
+            cell.setValue(evaluateFormula(cell.getSheet(), compiled));
+        } else {
+            dependencyGraphService.setPrecedents(cell.getSheet().getId(), cellKey, List.of());
+        }
+
+        // A native upsert by coordinates, with no entity loaded. Pending JPA changes must reach the database
+        // first, and entities loaded before it may be stale afterwards.
+        entityManager.flush();
+        boolean created = cellRepository.upsert(cell.getSheet().getId(), cell);
+        entityManager.clear();
+
+        ActivityLog.OperationType operation = created ? ActivityLog.OperationType.ADD : ActivityLog.OperationType.UPDATE;
+        activityLogService.logActivity(cell.getSheet().getBook().getId(), cell.getSheet().getId(), version, cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula(), "system", operation, ActivityLog.EntityType.CELL);
+        sheetCellCache.put(cell.getSheet().getId(), cellKey, cell.getValue(), cell.getFormula());
+        sheetEventHub.cellChanged(cell.getSheet().getId(), cellKey, operation, cell.getValue(), cell.getFormula());
+
+        recalculateDependents(cellKey, cell.getSheet());
+        return new CellWriteResult(cell, created);
+    }
+
+    /*
+     * Writes many cells of one sheet in a single transaction: dependencies are registered in one pass,
+     * formulas in the batch and everything downstream of it are evaluated once in topological order,
+     * and cells and activity log rows are written with JDBC batches. Later entries for the same
+     * coordinate win.
+     */
+    @Transactional
+    public CellBatchResult upsertCells(Sheet sheet, List<Cell> cells) {
+        return writeBatch(sheet, cells, false);
     }
 
-    public Cell createOrUpdateCell(Cell cell) {
-        String cellKey = cellKey(cell);
+    /*
+     * One chunk of a sheet import (SheetImportService), as upsertCells in a transaction of its own. Cycles
+     * are only caught by the evaluation order rather than by a walk per formula cell, which would grow with
+     * the sheet, and subscribers get a resync instead of every imported cell.
+     */
+    @Transactional
+    public CellBatchResult importCells(Sheet sheet, List<Cell> cells) {
+        return writeBatch(sheet, cells, true);
+    }
 
-        if (cell.getFormula() != null && cell.getFormula().startsWith("=")) {
-            registerDependencies(cellKey, cell.getFormula());
-            String computedValue = evaluateFormula(cell.getSheet(), cell.getFormula().substring(1));
-            cell.setValue(computedValue);
+    private CellBatchResult writeBatch(Sheet sheet, List<Cell> cells, boolean bulk) {
+        Integer sheetId = sheet.getId();
+        long version = beginWrite(sheetId);
+        if (bulk) {
+            sheetEventHub.cellsReplaced(sheetId);
+        }
+        Map<CellRef, Cell> incoming = new LinkedHashMap<>();
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        for (Cell cell : cells) {
+            CellRef ref = cellKey(cell);
+            cell.setColNum(ref.colNum());
+            cell.setSheet(sheet);
+            incoming.put(ref, cell);
+            minRow = Math.min(minRow, ref.row());
+            maxRow = Math.max(maxRow, ref.row());
+        }
+        if (incoming.isEmpty()) {
+            return new CellBatchResult(0, 0, 0);
         }
 
-        Optional<Cell> existing = getCellBySheetRowCol(cell.getSheet(), cell.getRowNum(), cell.getColNum());
+        // Pending JPA changes must reach the database before it is read and written with plain JDBC
+        entityManager.flush();
 
-        Cell result;
-        if (existing.isPresent()) {
-            Cell toUpdate = existing.get();
-            toUpdate.setValue(cell.getValue());
-            toUpdate.setFormula(cell.getFormula());
-            result = cellRepository.save(toUpdate);
-            activityLogService.logActivity(cell.getSheet().getBook().getId(), cell.getSheet().getId(), cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula(), "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.CELL);
+        Map<CellRef, Cell> existing = new HashMap<>();
+        for (Cell cell : cellRepository.findRowsForBatch(sheetId, minRow, maxRow)) {
+            CellRef ref = cellKey(cell);
+            if (incoming.containsKey(ref)) {
+                existing.put(ref, cell);
+            }
+        }
 
+        // Register dependencies first so circular references are rejected before anything is written
+        Map<CellRef, CompiledFormula> formulas = new HashMap<>();
+        Map<CellRef, List<RangeRef>> precedents = new LinkedHashMap<>();
+        incoming.forEach((ref, cell) -> {
+            if (FormulaCompiler.isFormula(cell.getFormula())) {
+                CompiledFormula compiled = formulaCompiler.compile(cell.getFormula());
+                formulas.put(ref, compiled);
+                precedents.put(ref, DependencyGraph.rangesOf(compiled));
+            } else {
+                precedents.put(ref, List.of());
+            }
+        });
+        if (bulk) {
+            // A cycle through the batch runs through its formulas and everything downstream, so evaluationOrder rejects it
+            dependencyGraphService.replacePrecedents(sheetId, precedents);
         } else {
-            result = cellRepository.save(cell);
-            activityLogService.logActivity(cell.getSheet().getBook().getId(), cell.getSheet().getId(), cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula(), "system", ActivityLog.OperationType.ADD, ActivityLog.EntityType.CELL);
+            dependencyGraphService.setPrecedents(sheetId, precedents);
         }
 
-        recalculateDependents(cellKey, cell.getSheet());
-        return result;
+        // One recalculation pass over the batch's formulas and everything downstream of the batch
+        DependencyGraph graph = dependencyGraphService.graphFor(sheetId);
+        Set<CellRef> toEvaluate = graph.dirtyCells(incoming.keySet());
+        toEvaluate.addAll(formulas.keySet());
+        OverlayValueSource source = new OverlayValueSource(sheet);
+        incoming.forEach((ref, cell) -> {
+            if (!formulas.containsKey(ref)) {
+                source.put(ref, cell.getValue());
+            }
+        });
+        List<Cell> recalculated = new ArrayList<>();
+        for (CellRef ref : graph.evaluationOrder(toEvaluate)) {
+            Cell target = incoming.get(ref);
+            CompiledFormula compiled = formulas.get(ref);
+            if (target == null) {
+                if (!source.isFormulaCell(ref)) {
+                    continue;
+                }
+                target = getCell(sheet, ref);
+                if (target == null || !FormulaCompiler.isFormula(target.getFormula())) {
+                    continue;
+                }
+                compiled = formulaCompiler.compile(target.getFormula());
+                recalculated.add(target);
+            }
+            String value = formulaMetrics.evaluate(compiled, source);
+            target.setValue(value);
+            source.put(ref, value);
+        }
+
+        List<Cell> inserts = new ArrayList<>();
+        List<Cell> updates = new ArrayList<>(recalculated);
+        List<ActivityLog> logs = new ArrayList<>(incoming.size());
+        Integer bookId = sheet.getBook().getId();
+        incoming.forEach((ref, cell) -> {
+            Cell old = existing.get(ref);
+            ActivityLog.OperationType operation;
+            if (old == null) {
+                inserts.add(cell);
+                operation = ActivityLog.OperationType.ADD;
+            } else {
+                old.setValue(cell.getValue());
+                old.setFormula(cell.getFormula());
+                updates.add(old);
+                operation = ActivityLog.OperationType.UPDATE;
+            }
+            logs.add(activityLogService.buildLog(bookId, sheetId, version, ref.row(), ref.colNum(), cell.getValue(), cell.getFormula(), "system", operation, ActivityLog.EntityType.CELL));
+            sheetEventHub.cellChanged(sheetId, ref, operation, cell.getValue(), cell.getFormula());
+        });
+        cellRepository.batchInsert(sheetId, inserts);
+        cellRepository.batchUpdate(updates);
+        activityLogService.logActivities(logs);
+        incoming.forEach((ref, cell) -> sheetCellCache.put(sheetId, ref, cell.getValue(), cell.getFormula()));
+        recalculated.forEach(cell -> sheetCellCache.put(sheetId, cellKey(cell), cell.getValue(), cell.getFormula()));
+        recalculated.forEach(cell -> sheetEventHub.cellChanged(sheetId, cellKey(cell), ActivityLog.OperationType.UPDATE, cell.getValue(), cell.getFormula()));
+
+        // Entities loaded above are now stale; make later reads in this transaction go back to the database
+        entityManager.clear();
+        return new CellBatchResult(inserts.size(), incoming.size() - inserts.size(), recalculated.size());
     }
 
-    private void registerDependencies(String cellKey, String formula) {
-        Set<String> refs = extractCellRefs(formula);
-        for (String ref : refs) {
-            dependencyGraph.computeIfAbsent(ref, k -> new HashSet<>()).add(cellKey);
+    /*
+     * Writes a rectangle of the sheet from dense arrays, contents[row][col] relative to its top left corner:
+     * text starting with = is a formula, other text a value, and null or "" leaves the cell empty. The range
+     * is read in one scan and compared with the contents, so only cells that differ are inserted, updated or
+     * deleted, each with JDBC batches. Formulas in the range and everything downstream of it are evaluated in
+     * one pass, and the write is logged as a single RANGE entry that holds every changed cell. A write that
+     * changes nothing leaves the sheet's version alone.
+     */
+    @Transactional
+    public RangeWriteResult writeRange(Sheet sheet, RangeRef range, String[][] contents) {
+        if (range.size() > MAX_RANGE_CELLS) {
+            throw new IllegalArgumentException("Range " + range + " has " + range.size() + " cells; at most " + MAX_RANGE_CELLS + " can be written at once.");
+        }
+        if (contents.length != range.rows() || Arrays.stream(contents).anyMatch(row -> row == null || row.length != range.cols())) {
+            throw new IllegalArgumentException("Range " + range + " needs " + range.rows() + " rows of " + range.cols() + " cells.");
+        }
+        Integer sheetId = sheet.getId();
+        // Taken before the read, so the comparison holds until commit; the version only moves on if something changed
+        sheetLocks.lock(sheetId);
+        entityManager.flush();
+        Map<CellRef, Cell> existing = new HashMap<>();
+        for (Cell cell : cellRepository.findRangeForBatch(sheetId, range)) {
+            existing.put(cellKey(cell), cell);
+        }
+
+        // Cells whose contents differ, in row/column order; null for cells to delete
+        Map<CellRef, Cell> changed = new LinkedHashMap<>();
+        for (int i = 0; i < contents.length; i++) {
+            for (int j = 0; j < contents[i].length; j++) {
+                CellRef ref = new CellRef(range.startRow() + i, range.startCol() + j);
+                String text = contents[i][j];
+                Cell old = existing.get(ref);
+                if (text == null || text.isEmpty()) {
+                    if (old != null) {
+                        changed.put(ref, null);
+                    }
+                    continue;
+                }
+                boolean formula = FormulaCompiler.isFormula(text);
+                if (old != null && (formula ? text.equals(old.getFormula()) : text.equals(old.getValue()) && old.getFormula() == null)) {
+                    continue;
+                }
+                changed.put(ref, new Cell(sheet, ref.row(), ref.colNum(), formula ? null : text, formula ? text : null));
+            }
+        }
+        int unchanged = (int) range.size() - changed.size();
+        if (changed.isEmpty()) {
+            long version = sheetRepository.findVersionById(sheetId)
+                    .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+            return new RangeWriteResult(version, 0, 0, 0, unchanged, 0);
+        }
+        long version = beginWrite(sheetId);
+
+        // Register dependencies first so circular references are rejected before anything is written
+        Map<CellRef, CompiledFormula> formulas = new HashMap<>();
+        Map<CellRef, List<RangeRef>> precedents = new LinkedHashMap<>();
+        changed.forEach((ref, cell) -> {
+            if (cell != null && cell.getFormula() != null) {
+                CompiledFormula compiled = formulaCompiler.compile(cell.getFormula());
+                formulas.put(ref, compiled);
+                precedents.put(ref, DependencyGraph.rangesOf(compiled));
+            } else {
+                precedents.put(ref, List.of());
+            }
+        });
+        dependencyGraphService.setPrecedents(sheetId, precedents);
+
+        // One recalculation pass over the whole rectangle and everything downstream of it
+        DependencyGraph graph = dependencyGraphService.graphFor(sheetId);
+        Set<CellRef> toEvaluate = graph.dirtyCells(changed.keySet());
+        toEvaluate.addAll(formulas.keySet());
+        OverlayValueSource source = new OverlayValueSource(sheet);
+        changed.forEach((ref, cell) -> {
+            if (!formulas.containsKey(ref)) {
+                source.put(ref, cell == null ? null : cell.getValue());
+            }
+        });
+        List<Cell> recalculated = new ArrayList<>();
+        for (CellRef ref : graph.evaluationOrder(toEvaluate)) {
+            Cell target = changed.get(ref);
+            CompiledFormula compiled = formulas.get(ref);
+            if (compiled == null) {
+                if (changed.containsKey(ref)) {
+                    continue;
+                }
+                // Formulas of the range that were left as they were are already loaded
+                target = range.contains(ref.row(), ref.col()) ? existing.get(ref) : source.isFormulaCell(ref) ? getCell(sheet, ref) : null;
+                if (target == null || !FormulaCompiler.isFormula(target.getFormula())) {
+                    continue;
+                }
+                compiled = formulaCompiler.compile(target.getFormula());
+                recalculated.add(target);
+            }
+            String value = formulaMetrics.evaluate(compiled, source);
+            target.setValue(value);
+            source.put(ref, value);
         }
-    }
 
-    private Set<String> extractCellRefs(String formula) {
-        Set<String> refs = new HashSet<>();
-        Matcher matcher = Pattern.compile("[A-Z]+[0-9]+").matcher(formula);
-        while (matcher.find()) {
-            refs.add(matcher.group());
+        List<Cell> inserts = new ArrayList<>();
+        List<Cell> updates = new ArrayList<>(recalculated);
+        List<Cell> deletes = new ArrayList<>();
+        List<CellChange> changes = new ArrayList<>(changed.size());
+        changed.forEach((ref, cell) -> {
+            Cell old = existing.get(ref);
+            if (cell == null) {
+                deletes.add(old);
+                changes.add(new CellChange(ref.row(), ref.colNum(), ActivityLog.OperationType.DELETE, null, null));
+                return;
+            }
+            if (old == null) {
+                inserts.add(cell);
+            } else {
+                old.setValue(cell.getValue());
+                old.setFormula(cell.getFormula());
+                updates.add(old);
+            }
+            changes.add(new CellChange(ref.row(), ref.colNum(), old == null ? ActivityLog.OperationType.ADD : ActivityLog.OperationType.UPDATE,
+                    cell.getValue(), cell.getFormula()));
+        });
+        cellRepository.batchInsert(sheetId, inserts);
+        cellRepository.batchUpdate(updates);
+        cellRepository.batchDelete(deletes);
+
+        ActivityLog log = activityLogService.buildLog(sheet.getBook().getId(), sheetId, version, null, null, range.toString(), null,
+                "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.RANGE);
+        log.setChanges(SheetSnapshotCodec.encodeChanges(changes));
+        log.setChangeCount(changes.size());
+        activityLogService.logActivities(List.of(log));
+        for (CellChange change : changes) {
+            CellRef ref = CellRef.of(change.rowNum(), change.colNum());
+            if (change.operation() == ActivityLog.OperationType.DELETE) {
+                sheetCellCache.remove(sheetId, ref);
+            } else {
+                sheetCellCache.put(sheetId, ref, change.value(), change.formula());
+            }
+            sheetEventHub.cellChanged(sheetId, ref, change.operation(), change.value(), change.formula());
         }
-        return refs;
+        recalculated.forEach(cell -> sheetCellCache.put(sheetId, cellKey(cell), cell.getValue(), cell.getFormula()));
+        recalculated.forEach(cell -> sheetEventHub.cellChanged(sheetId, cellKey(cell), ActivityLog.OperationType.UPDATE, cell.getValue(), cell.getFormula()));
+
+        entityManager.clear();
+        return new RangeWriteResult(version, inserts.size(), changed.size() - inserts.size() - deletes.size(), deletes.size(),
+                unchanged, recalculated.size());
     }
 
-    private void recalculateDependents(String changedCellKey, Sheet sheet) {
-        Queue<String> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
-        queue.add(changedCellKey);
+    // Serves values written earlier in the same batch, falling back to the cache or database for everything else
+    private class OverlayValueSource implements CellValueSource {
+        private final Sheet sheet;
+        private final SheetCellCache.SheetCells cached;
+        private final GridValues overlay = new GridValues();
+
+        OverlayValueSource(Sheet sheet) {
+            this.sheet = sheet;
+            this.cached = sheetCellCache.sheet(sheet.getId());
+        }
+
+        void put(CellRef ref, String value) {
+            overlay.put(ref.row(), ref.col(), value);
+        }
 
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            Set<String> dependents = dependencyGraph.getOrDefault(current, Set.of());
+        // Without a cached sheet this cannot be answered cheaply, so the caller has to look
+        boolean isFormulaCell(CellRef ref) {
+            if (cached == null) {
+                return true;
+            }
+            SheetCellCache.CachedCell cell = cached.get(ref);
+            return cell != null && FormulaCompiler.isFormula(cell.formula());
+        }
 
-            for (String dep : dependents) {
-                if (!visited.add(dep)) continue;
-                Cell depCell = getCell(sheet, dep);
-                if (depCell != null && depCell.getFormula() != null) {
-                    String newValue = evaluateFormula(sheet, depCell.getFormula().substring(1));
-                    depCell.setValue(newValue);
-                    cellRepository.save(depCell);
+        @Override
+        public String valueAt(int row, int col) {
+            if (overlay.contains(row, col)) {
+                return overlay.valueAt(row, col);
+            }
+            return cached != null ? cached.valueAt(row, col) : databaseValueSource(sheet).valueAt(row, col);
+        }
+
+        @Override
+        public void forEachValueInRange(RangeRef range, Consumer<String> action) {
+            if (cached != null) {
+                cached.forEachCellInRange(range, (row, col, cell) -> {
+                    if (!overlay.contains(row, col) && cell.value() != null) {
+                        action.accept(cell.value());
+                    }
+                });
+            } else {
+                for (Cell cell : cellRepository.findInRange(sheet.getId(), range.startRow(), range.endRow(), range.startCol(), range.endCol())) {
+                    if (!overlay.contains(cell.getRowNum(), cell.getColIdx()) && cell.getValue() != null) {
+                        action.accept(cell.getValue());
+                    }
                 }
-                queue.add(dep);
             }
+            overlay.forEachValueInRange(range, action);
         }
     }
 
-    private Cell getCell(Sheet sheet, String cellKey) {
-        String col = cellKey.replaceAll("\\d", "");
-        int row = Integer.parseInt(cellKey.replaceAll("\\D", ""));
-        return getCellBySheetRowCol(sheet, row, col).orElse(null);
+    // Re-evaluates every formula downstream of the changed cells exactly once, inputs before dependents
+    private void recalculateDependents(CellRef changedCellKey, Sheet sheet) {
+        long start = System.nanoTime();
+        DependencyGraph graph = dependencyGraphService.graphFor(sheet.getId());
+        List<CellRef> order = graph.recalculationOrder(List.of(changedCellKey));
+        if (order.isEmpty()) {
+            return;
+        }
+        int recalculated = 0;
+        SheetCellCache.SheetCells cached = sheetCellCache.sheet(sheet.getId());
+        for (CellRef dep : order) {
+            if (cached != null) {
+                SheetCellCache.CachedCell cachedDep = cached.get(dep);
+                if (cachedDep == null || !FormulaCompiler.isFormula(cachedDep.formula())) {
+                    continue;
+                }
+            }
+            Cell depCell = getCell(sheet, dep);
+            if (depCell != null && FormulaCompiler.isFormula(depCell.getFormula())) {
+                depCell.setValue(evaluateFormula(sheet, formulaCompiler.compile(depCell.getFormula())));
+                cellRepository.save(depCell);
+                sheetCellCache.put(sheet.getId(), dep, depCell.getValue(), depCell.getFormula());
+                sheetEventHub.cellChanged(sheet.getId(), dep, ActivityLog.OperationType.UPDATE, depCell.getValue(), depCell.getFormula());
+                recalculated++;
+            }
+        }
+        formulaMetrics.recordRecalculation(System.nanoTime() - start, recalculated, graph.depthOf(order));
     }
 
-    private String cellKey(Cell cell) {
-        return cell.getColNum() + cell.getRowNum();
+    private Cell getCell(Sheet sheet, CellRef cellKey) {
+        return getCellBySheetRowCol(sheet, cellKey.row(), cellKey.colNum()).orElse(null);
     }
 
-    private String evaluateFormula(Sheet sheet, String expression) {
-        String[] tokens = expression.split("(?=[+\\-*/])|(?<=[+\\-*/])");
-        if (tokens.length != 3) throw new IllegalArgumentException("Only simple formulas like A1+A2 are supported.");
-
-        String ref1 = tokens[0].trim();
-        String operator = tokens[1].trim();
-        String ref2 = tokens[2].trim();
-
-        String col1 = ref1.replaceAll("\\d", "");
-        int row1 = Integer.parseInt(ref1.replaceAll("\\D", ""));
-        String col2 = ref2.replaceAll("\\d", "");
-        int row2 = Integer.parseInt(ref2.replaceAll("\\D", ""));
+    private CellRef cellKey(Cell cell) {
+        return CellRef.of(cell.getRowNum(), cell.getColNum());
+    }
 
-        String val1 = getCellBySheetRowCol(sheet, row1, col1).map(Cell::getValue).orElse("0");
-        String val2 = getCellBySheetRowCol(sheet, row2, col2).map(Cell::getValue).orElse("0");
+    private String evaluateFormula(Sheet sheet, CompiledFormula formula) {
+        return formulaMetrics.evaluate(formula, valueSource(sheet));
+    }
 
-        double num1 = Double.parseDouble(val1);
-        double num2 = Double.parseDouble(val2);
-        double result;
+    // Hot sheets are served from the cache; sheets too large to cache are read from the database
+    private CellValueSource valueSource(Sheet sheet) {
+        SheetCellCache.SheetCells cached = sheetCellCache.sheet(sheet.getId());
+        return cached != null ? cached : databaseValueSource(sheet);
+    }
 
-        switch (operator) {
-            case "+": result = num1 + num2; break;
-            case "-": result = num1 - num2; break;
-            case "*": result = num1 * num2; break;
-            case "/": result = (num2 != 0) ? num1 / num2 : 0; break;
-            default: throw new IllegalArgumentException("Unsupported operator: " + operator);
-        }
+    private CellValueSource databaseValueSource(Sheet sheet) {
+        return new CellValueSource() {
+            @Override
+            public String valueAt(int row, int col) {
+                return cellRepository.findBySheetAndRowNumAndColIdx(sheet, row, col).map(Cell::getValue).orElse(null);
+            }
 
-        return String.valueOf(result);
+            @Override
+            public void forEachValueInRange(RangeRef range, Consumer<String> action) {
+                cellRepository.findValuesInRange(sheet.getId(), range.startRow(), range.endRow(), range.startCol(), range.endCol())
+                        .forEach(action);
+            }
+        };
     }
 
     // Existing method you already have
@@ -139,26 +496,73 @@ public class CellService {
         return cellRepository.findBySheet(sheet);
     }
 
+    // Up to limit cells inside the range (whole sheet if null), starting after the given cell (first page if null)
+    public List<CellDTO> getCellsPage(Sheet sheet, RangeRef range, CellRef after, int limit) {
+        if (range == null) {
+            range = new RangeRef(1, 1, Integer.MAX_VALUE, CellRef.MAX_COLUMN);
+        }
+        int afterRow = after == null ? 0 : after.row();
+        int afterCol = after == null ? 0 : after.col();
+        return cellRepository.findPage(sheet.getId(), range.startRow(), range.endRow(), range.startCol(), range.endCol(),
+                afterRow, afterCol, Limit.of(limit));
+    }
+
+    // The rectangle as dense arrays (see SheetRange); version and cells come from one consistent read
+    @Transactional(readOnly = true)
+    public SheetRange getRange(Integer sheetId, RangeRef range, boolean withFormulas, boolean columnar) {
+        if (range.size() > MAX_RANGE_CELLS) {
+            throw new IllegalArgumentException("Range " + range + " has " + range.size() + " cells; at most " + MAX_RANGE_CELLS + " can be read at once.");
+        }
+        long version = sheetRepository.findVersionById(sheetId)
+                .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+        int height = columnar ? range.cols() : range.rows();
+        int width = columnar ? range.rows() : range.cols();
+        String[][] values = new String[height][width];
+        String[][] formulas = withFormulas ? new String[height][width] : null;
+        for (RangeCell cell : cellRepository.findRangeCells(sheetId, range.startRow(), range.endRow(), range.startCol(), range.endCol())) {
+            int row = cell.rowNum() - range.startRow();
+            int col = cell.colIdx() - range.startCol();
+            int i = columnar ? col : row;
+            int j = columnar ? row : col;
+            values[i][j] = cell.value();
+            if (formulas != null) {
+                formulas[i][j] = cell.formula();
+            }
+        }
+        return new SheetRange(version, range, columnar, values, formulas);
+    }
+
+    @Transactional
     public void deleteCellByCoordinates(Sheet sheet, Integer rowNum, String colNum) {
+        long version = beginWrite(sheet.getId());
         Cell cell = cellRepository.findBySheetAndRowNumAndColNum(sheet, rowNum, colNum)
             .orElseThrow(() -> new CellNotFoundException("Cell not found for deletion."));
-        deleteCell(cell,sheet);
+        deleteCell(cell, sheet, version);
+    }
+
+    // Which sheet to lock before deleting a cell by id
+    public Optional<Integer> getSheetIdOfCell(Integer cellId) {
+        return cellRepository.findSheetIdByCellId(cellId);
     }
 
-    // might be a better way to handle this
+    @Transactional
     public void deleteCellById(Integer cellId) {
+        Integer sheetId = cellRepository.findSheetIdByCellId(cellId)
+            .orElseThrow(() -> new CellNotFoundException("Cell with ID " + cellId + " not found."));
+        long version = beginWrite(sheetId);
+        // Read once the lock is held, so the DELETE entry and event carry what a concurrent writer left behind
         Cell cell = cellRepository.findById(cellId)
             .orElseThrow(() -> new CellNotFoundException("Cell with ID " + cellId + " not found."));
-        deleteCell(cell,null);
+        deleteCell(cell, cell.getSheet(), version);
     }
 
-    private void deleteCell(Cell cell, Sheet sheet) {
-        if (sheet == null) {
-            sheet = cell.getSheet();
-        }
-        String cellKey = cellKey(cell);
-        activityLogService.logActivity(sheet.getBook().getId(), sheet.getId(), cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula(), "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.CELL);
+    private void deleteCell(Cell cell, Sheet sheet, long version) {
+        CellRef cellKey = cellKey(cell);
+        dependencyGraphService.setPrecedents(sheet.getId(), cellKey, List.of());
+        activityLogService.logActivity(sheet.getBook().getId(), sheet.getId(), version, cell.getRowNum(), cell.getColNum(), cell.getValue(), cell.getFormula(), "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.CELL);
         cellRepository.delete(cell);
+        sheetCellCache.remove(sheet.getId(), cellKey);
+        sheetEventHub.cellChanged(sheet.getId(), cellKey, ActivityLog.OperationType.DELETE, null, null);
         recalculateDependents(cellKey, sheet);
     }
 }
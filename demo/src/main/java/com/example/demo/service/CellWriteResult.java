@@ -0,0 +1,7 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Cell;
+
+// Outcome of a single cell write: the stored cell and whether it was inserted rather than overwritten
+public record CellWriteResult(Cell cell, boolean created) {
+}
@@ -0,0 +1,221 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.CellDependency;
+import com.example.demo.repository.CellDependencyRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-sheet dependency graphs, persisted in cell_dependencies and loaded lazily on first use.
+// A graph is only read and changed by the transaction holding its sheet's lock (see SheetLocks).
+// Graphs are evicted least-recently-used once they hold more than dependency-graphs.max-formulas formula
+// cells together, checked on load and whenever a write adds formulas; a graph whose sheet is locked is
+// skipped, since its writer may still be using it. An evicted graph is loaded again on its next use.
+@Service
+public class DependencyGraphService {
+    private final CellDependencyRepository cellDependencyRepository;
+    private final SheetLocks sheetLocks;
+    private final long maxFormulas;
+
+    // key: sheet id; access-ordered, so iteration starts at the least recently used graph; guarded by this
+    private final LinkedHashMap<Integer, DependencyGraph> graphs = new LinkedHashMap<>(16, 0.75f, true);
+    // Formula cells in all loaded graphs; exact after every overflow check, counted up and down by writes in between
+    private final AtomicLong loadedFormulas = new AtomicLong();
+
+    public DependencyGraphService(CellDependencyRepository cellDependencyRepository, SheetLocks sheetLocks,
+                                  @Value("${dependency-graphs.max-formulas:1000000}") long maxFormulas) {
+        this.cellDependencyRepository = cellDependencyRepository;
+        this.sheetLocks = sheetLocks;
+        this.maxFormulas = maxFormulas;
+    }
+
+    public DependencyGraph graphFor(Integer sheetId) {
+        synchronized (this) {
+            DependencyGraph cached = graphs.get(sheetId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        DependencyGraph loaded = load(sheetId);
+        synchronized (this) {
+            DependencyGraph raced = graphs.putIfAbsent(sheetId, loaded);
+            if (raced != null) {
+                return raced;
+            }
+            if (loadedFormulas.addAndGet(loaded.size()) > maxFormulas) {
+                evictOverflow(sheetId);
+            }
+        }
+        return loaded;
+    }
+
+    // Called holding this; sheets that are locked, and keep, stay even if that leaves the graphs over max-formulas
+    private void evictOverflow(Integer keep) {
+        long total = 0;
+        for (DependencyGraph graph : graphs.values()) {
+            total += graph.size();
+        }
+        Iterator<Map.Entry<Integer, DependencyGraph>> it = graphs.entrySet().iterator();
+        while (total > maxFormulas && it.hasNext()) {
+            Map.Entry<Integer, DependencyGraph> eldest = it.next();
+            if (!eldest.getKey().equals(keep) && !sheetLocks.isLocked(eldest.getKey())) {
+                total -= eldest.getValue().size();
+                it.remove();
+            }
+        }
+        loadedFormulas.set(total);
+    }
+
+    // Counts formulas a write added to (or removed from) a loaded graph and evicts others once there are too many
+    private void resized(Integer sheetId, int delta) {
+        if (delta != 0 && loadedFormulas.addAndGet(delta) > maxFormulas) {
+            synchronized (this) {
+                evictOverflow(sheetId);
+            }
+        }
+    }
+
+    // A fresh graph from cell_dependencies as the caller's transaction sees it, for readers without the sheet's lock
+    public DependencyGraph loadCommitted(Integer sheetId) {
+        return load(sheetId);
+    }
+
+    private DependencyGraph load(Integer sheetId) {
+        DependencyGraph graph = new DependencyGraph();
+        Map<CellRef, List<RangeRef>> bySheet = new HashMap<>();
+        for (CellDependency dep : cellDependencyRepository.findBySheetId(sheetId)) {
+            bySheet.computeIfAbsent(new CellRef(dep.getDependentRow(), dep.getDependentCol()), k -> new ArrayList<>())
+                    .add(new RangeRef(dep.getStartRow(), dep.getStartCol(), dep.getEndRow(), dep.getEndCol()));
+        }
+        bySheet.forEach(graph::setPrecedents);
+        return graph;
+    }
+
+    public Set<CellRef> dependentsOf(Integer sheetId, CellRef cell) {
+        return graphFor(sheetId).dependentsOf(cell);
+    }
+
+    // Replaces the stored precedents of a formula cell; an empty list clears them.
+    // Throws CircularReferenceException if the new precedents would close a cycle.
+    public void setPrecedents(Integer sheetId, CellRef dependent, List<RangeRef> ranges) {
+        DependencyGraph graph = graphFor(sheetId);
+        graph.checkForCycle(dependent, ranges);
+        if (ranges.isEmpty() && graph.precedentsOf(dependent).isEmpty()) {
+            return;
+        }
+        int before = graph.size();
+        cellDependencyRepository.deleteByDependent(sheetId, dependent.row(), dependent.col());
+        List<CellDependency> rows = new ArrayList<>(ranges.size());
+        for (RangeRef range : ranges) {
+            rows.add(new CellDependency(null, sheetId, dependent.row(), dependent.col(),
+                    range.startRow(), range.startCol(), range.endRow(), range.endCol()));
+        }
+        cellDependencyRepository.saveAll(rows);
+        graph.setPrecedents(dependent, ranges);
+        evictOnRollback(sheetId);
+        resized(sheetId, graph.size() - before);
+    }
+
+    // Batch form of setPrecedents for many formula cells of one sheet. Cycles are checked cell by cell,
+    // so a batch that closes a loop among its own formulas is rejected too.
+    public void setPrecedents(Integer sheetId, Map<CellRef, List<RangeRef>> precedentsByDependent) {
+        DependencyGraph graph = graphFor(sheetId);
+        evictOnRollback(sheetId);
+        int before = graph.size();
+        Map<CellRef, List<RangeRef>> changed = new HashMap<>();
+        precedentsByDependent.forEach((dependent, ranges) -> {
+            if (ranges.isEmpty() && graph.precedentsOf(dependent).isEmpty()) {
+                return;
+            }
+            graph.checkForCycle(dependent, ranges);
+            graph.setPrecedents(dependent, ranges);
+            changed.put(dependent, ranges);
+        });
+        if (!changed.isEmpty()) {
+            cellDependencyRepository.replaceAll(sheetId, changed);
+        }
+        resized(sheetId, graph.size() - before);
+    }
+
+    // Bulk form for import chunks: replaces precedents without the per-cell cycle check, which would be quadratic
+    // for large imports. Callers must order the affected cells with evaluationOrder, which rejects cycles.
+    public void replacePrecedents(Integer sheetId, Map<CellRef, List<RangeRef>> precedentsByDependent) {
+        DependencyGraph graph = graphFor(sheetId);
+        evictOnRollback(sheetId);
+        int before = graph.size();
+        Map<CellRef, List<RangeRef>> changed = new HashMap<>();
+        precedentsByDependent.forEach((dependent, ranges) -> {
+            if (ranges.isEmpty() && graph.precedentsOf(dependent).isEmpty()) {
+                return;
+            }
+            graph.setPrecedents(dependent, ranges);
+            changed.put(dependent, ranges);
+        });
+        if (!changed.isEmpty()) {
+            cellDependencyRepository.replaceAll(sheetId, changed);
+        }
+        resized(sheetId, graph.size() - before);
+    }
+
+    public synchronized void evict(Integer sheetId) {
+        DependencyGraph removed = graphs.remove(sheetId);
+        if (removed != null) {
+            loadedFormulas.addAndGet(-removed.size());
+        }
+    }
+
+    public synchronized int getLoadedGraphs() {
+        return graphs.size();
+    }
+
+    // For a sheet being deleted: a writer that reloads the graph before the delete commits would otherwise leave it behind
+    public void evictAfterCompletion(Integer sheetId) {
+        evict(sheetId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SheetLocks.EVICTION_ORDER;
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    evict(sheetId);
+                }
+            });
+        }
+    }
+
+    // The in-memory graph is updated eagerly; if the surrounding transaction rolls back, drop it and reload next time
+    private void evictOnRollback(Integer sheetId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return SheetLocks.EVICTION_ORDER;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    evict(sheetId);
+                }
+            }
+        });
+    }
+}
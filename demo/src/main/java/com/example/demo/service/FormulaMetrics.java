@@ -0,0 +1,62 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.CellValueSource;
+import com.example.demo.formula.CompiledFormula;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Meters for formula evaluation and recalculation, published with the rest of the actuator metrics.
+ * Recalculations are only recorded when a write has dependents. Sheet ids are deliberately not tags:
+ * one time series per sheet would grow without bound.
+ */
+@Component
+public class FormulaMetrics {
+    private final Timer evaluations;
+    private final Timer recalculations;
+    private final DistributionSummary recalculatedCells;
+    private final DistributionSummary recalculationDepth;
+
+    public FormulaMetrics(MeterRegistry registry) {
+        this.evaluations = Timer.builder("formula.evaluations")
+                .description("Formula evaluations, on write and during recalculation")
+                .register(registry);
+        this.recalculations = Timer.builder("recalculation.duration")
+                .description("Time to re-evaluate and save everything downstream of a changed cell")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.recalculatedCells = DistributionSummary.builder("recalculation.cells")
+                .description("Formulas re-evaluated per recalculation (fan-out)")
+                .baseUnit("cells")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1_000_000.0)
+                .register(registry);
+        this.recalculationDepth = DistributionSummary.builder("recalculation.depth")
+                .description("Longest chain of dependent formulas per recalculation")
+                .baseUnit("cells")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(100_000.0)
+                .register(registry);
+    }
+
+    public String evaluate(CompiledFormula formula, CellValueSource source) {
+        long start = System.nanoTime();
+        try {
+            return String.valueOf(formula.evaluate(source));
+        } finally {
+            evaluations.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordRecalculation(long elapsedNanos, int cells, int depth) {
+        recalculations.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        recalculatedCells.record(cells);
+        recalculationDepth.record(depth);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.demo.service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of one sheet import; polled by clients through GET /sheets/{id}/import/{jobId}
+public class ImportJob {
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Integer sheetId;
+    private final SheetDataFormat format;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final AtomicLong rowsRead = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long created;
+    private volatile long updated;
+    private volatile long recalculated;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+
+    ImportJob(Integer sheetId, SheetDataFormat format) {
+        this.sheetId = sheetId;
+        this.format = format;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void addRowsRead(long rows) {
+        rowsRead.addAndGet(rows);
+    }
+
+    void complete(long created, long updated, long recalculated) {
+        this.created = created;
+        this.updated = updated;
+        this.recalculated = recalculated;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.COMPLETED;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.FAILED;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getId() { return id; }
+    public Integer getSheetId() { return sheetId; }
+    public SheetDataFormat getFormat() { return format; }
+    public Status getStatus() { return status; }
+    public long getRowsRead() { return rowsRead.get(); }
+    public long getCreated() { return created; }
+    public long getUpdated() { return updated; }
+    public long getRecalculated() { return recalculated; }
+    public String getError() { return error; }
+    public LocalDateTime getSubmittedAt() { return submittedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+}
@@ -0,0 +1,6 @@
+package com.example.demo.service;
+
+// Outcome of a range write: cells inserted, overwritten, deleted and left as they were inside the range, formulas
+// outside the written cells that were recalculated, and the sheet's version afterwards
+public record RangeWriteResult(long version, int created, int updated, int deleted, int unchanged, int recalculated) {
+}
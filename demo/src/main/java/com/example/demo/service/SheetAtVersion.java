@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellExportRow;
+
+import java.util.List;
+
+// A sheet's name and cells as they were at version, cells in row/column order
+public record SheetAtVersion(long version, String name, List<CellExportRow> cells) {
+}
@@ -0,0 +1,298 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.CellMap;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CellValueSource;
+import com.example.demo.formula.RangeRef;
+import com.example.demo.model.Cell;
+import com.example.demo.repository.CellRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+ * Write-through cache of whole sheets' cells, so formula evaluation on hot sheets never reads MySQL.
+ * A sheet is loaded completely on first use; a coordinate missing from a cached sheet is an empty cell.
+ * Sheets are evicted least-recently-used once the cached sheets together exceed cell-cache.max-cells,
+ * checked on load and again whenever a write adds a cell; a single sheet larger than that is never
+ * cached, and one that outgrows it is dropped once its writer's transaction ends. Writers update entries
+ * as they write and the sheet is dropped if their transaction rolls back.
+ */
+@Component
+public class SheetCellCache implements MeterBinder {
+    private final CellRepository cellRepository;
+    private final long maxCells;
+
+    // Access-ordered, so iteration starts at the least recently used sheet; guarded by this
+    private final LinkedHashMap<Integer, SheetCells> sheets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> oversized = ConcurrentHashMap.newKeySet();
+    // Cached sheets that grew past max-cells on their own and go when their writer's transaction ends
+    private final Set<Integer> outgrown = ConcurrentHashMap.newKeySet();
+    // Cells in all cached sheets; exact after every load, counted up and down by writes in between
+    private final AtomicLong cachedCells = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SheetCellCache(CellRepository cellRepository, @Value("${cell-cache.max-cells:1000000}") long maxCells) {
+        this.cellRepository = cellRepository;
+        this.maxCells = maxCells;
+    }
+
+    public record CachedCell(String value, String formula) {
+    }
+
+    /*
+     * Cells of one sheet keyed by packed coordinate. Only the holder of the sheet's lock (see SheetLocks)
+     * changes a SheetCells or evaluates formulas against it, so those reads go unsynchronized; get and
+     * size are synchronized because other threads may call them while a writer is changing the sheet.
+     */
+    public static class SheetCells implements CellValueSource {
+        private final CellMap<CachedCell> cells = new CellMap<>();
+
+        public synchronized CachedCell get(CellRef ref) {
+            return cells.get(ref.row(), ref.col());
+        }
+
+        // Whether the cell is new to the sheet
+        synchronized boolean put(CellRef ref, CachedCell cell) {
+            return cells.put(ref.row(), ref.col(), cell) == null;
+        }
+
+        // Whether there was a cell to remove
+        synchronized boolean remove(CellRef ref) {
+            return cells.remove(ref.row(), ref.col()) != null;
+        }
+
+        public synchronized int size() {
+            return cells.size();
+        }
+
+        @Override
+        public String valueAt(int row, int col) {
+            CachedCell cell = cells.get(row, col);
+            return cell == null ? null : cell.value();
+        }
+
+        @Override
+        public void forEachValueInRange(RangeRef range, Consumer<String> action) {
+            cells.forEachInRange(range, (row, col, cell) -> {
+                if (cell.value() != null) {
+                    action.accept(cell.value());
+                }
+            });
+        }
+
+        public void forEachCellInRange(RangeRef range, CellMap.EntryConsumer<CachedCell> action) {
+            cells.forEachInRange(range, action);
+        }
+    }
+
+    // The cached sheet, loading it on a miss; null if the sheet is too large to cache
+    public SheetCells sheet(Integer sheetId) {
+        SheetCells cached = peek(sheetId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        if (oversized.contains(sheetId)) {
+            return null;
+        }
+        if (cellRepository.countBySheetId(sheetId) > maxCells) {
+            oversized.add(sheetId);
+            return null;
+        }
+
+        SheetCells loaded = new SheetCells();
+        for (Cell cell : cellRepository.findRowsForBatch(sheetId, 1, Integer.MAX_VALUE)) {
+            loaded.put(CellRef.of(cell.getRowNum(), cell.getColNum()), new CachedCell(cell.getValue(), cell.getFormula()));
+        }
+        // The load may include this transaction's uncommitted writes
+        evictOnRollback(sheetId);
+        synchronized (this) {
+            SheetCells raced = sheets.putIfAbsent(sheetId, loaded);
+            if (raced != null) {
+                return raced;
+            }
+            evictOverflow(sheetId);
+        }
+        return loaded;
+    }
+
+    // The cached sheet without loading it
+    public synchronized SheetCells peek(Integer sheetId) {
+        return sheets.get(sheetId);
+    }
+
+    // Returns the cells left cached, which only exceed max-cells if keep alone does; called holding this
+    private long evictOverflow(Integer keep) {
+        long total = 0;
+        for (SheetCells cells : sheets.values()) {
+            total += cells.size();
+        }
+        Iterator<Map.Entry<Integer, SheetCells>> it = sheets.entrySet().iterator();
+        while (total > maxCells && it.hasNext()) {
+            Map.Entry<Integer, SheetCells> eldest = it.next();
+            if (!eldest.getKey().equals(keep)) {
+                total -= eldest.getValue().size();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        cachedCells.set(total);
+        return total;
+    }
+
+    // Write-through: keeps an already cached sheet in step with a write; uncached sheets are left alone
+    public void put(Integer sheetId, CellRef ref, String value, String formula) {
+        SheetCells cells = peek(sheetId);
+        if (cells != null) {
+            if (cells.put(ref, new CachedCell(value, formula)) && cachedCells.incrementAndGet() > maxCells && !outgrown.contains(sheetId)) {
+                makeRoom(sheetId);
+            }
+            evictOnRollback(sheetId);
+        }
+    }
+
+    public void remove(Integer sheetId, CellRef ref) {
+        SheetCells cells = peek(sheetId);
+        if (cells != null) {
+            if (cells.remove(ref)) {
+                cachedCells.decrementAndGet();
+            }
+            evictOnRollback(sheetId);
+        } else {
+            // The sheet may have shrunk below max-cells; its next load counts it again
+            oversized.remove(sheetId);
+        }
+    }
+
+    // Evicts other sheets for the one being written; if it is over max-cells on its own, it goes once the
+    // transaction ends, since its writer may still be evaluating formulas against it
+    private void makeRoom(Integer sheetId) {
+        synchronized (this) {
+            if (evictOverflow(sheetId) <= maxCells) {
+                return;
+            }
+        }
+        outgrown.add(sheetId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(sheetId);
+            evictions.incrementAndGet();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return SheetLocks.EVICTION_ORDER;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                evict(sheetId);
+                evictions.incrementAndGet();
+            }
+        });
+    }
+
+    // Also forgets that the sheet was too large, so its next load counts it again
+    public synchronized void evict(Integer sheetId) {
+        SheetCells removed = sheets.remove(sheetId);
+        if (removed != null) {
+            cachedCells.addAndGet(-removed.size());
+        }
+        oversized.remove(sheetId);
+        outgrown.remove(sheetId);
+    }
+
+    // For bulk writes that bypass the cache: drop the sheet now and again once the transaction ends,
+    // so nothing loaded in between survives
+    public void evictAfterCompletion(Integer sheetId) {
+        evict(sheetId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SheetLocks.EVICTION_ORDER;
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    evict(sheetId);
+                }
+            });
+        }
+    }
+
+    // Registers one synchronization per transaction, however many cells it writes
+    private void evictOnRollback(Integer sheetId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<Integer> touched = (Set<Integer>) TransactionSynchronizationManager.getResource(this);
+        if (touched == null) {
+            Set<Integer> registered = new HashSet<>();
+            touched = registered;
+            TransactionSynchronizationManager.bindResource(this, registered);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SheetLocks.EVICTION_ORDER;
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SheetCellCache.this);
+                    if (status != STATUS_COMMITTED) {
+                        registered.forEach(SheetCellCache.this::evict);
+                    }
+                }
+            });
+        }
+        touched.add(sheetId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cell_cache.gets", this, SheetCellCache::getHits).tag("result", "hit")
+                .description("Sheet lookups served from the cache").register(registry);
+        FunctionCounter.builder("cell_cache.gets", this, SheetCellCache::getMisses).tag("result", "miss")
+                .description("Sheet lookups that had to load or skip the sheet").register(registry);
+        FunctionCounter.builder("cell_cache.evictions", this, SheetCellCache::getEvictions).register(registry);
+        Gauge.builder("cell_cache.sheets", this, SheetCellCache::getCachedSheets).register(registry);
+        Gauge.builder("cell_cache.cells", this, SheetCellCache::getCachedCells).register(registry);
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    public synchronized int getCachedSheets() {
+        return sheets.size();
+    }
+
+    public synchronized long getCachedCells() {
+        long total = 0;
+        for (SheetCells cells : sheets.values()) {
+            total += cells.size();
+        }
+        return total;
+    }
+}
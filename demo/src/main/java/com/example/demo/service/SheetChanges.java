@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellChange;
+
+import java.util.List;
+
+// The net cell changes of a sheet up to version; a client that applies them is at that version
+public record SheetChanges(long version, List<CellChange> changes) {
+}
@@ -0,0 +1,141 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellChange;
+import com.example.demo.exception.FormulaException;
+import com.example.demo.exception.HistoryArchivedException;
+import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.ActivityLog;
+import com.example.demo.model.Cell;
+import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Delta sync for clients that keep a copy of a sheet. The activity log says which cells changed after a
+ * version; the cells table says what they hold now. Formulas downstream of those cells are recalculated
+ * without being logged, so they are found through the stored dependencies and sent along too. Everything
+ * is read inside one repeatable-read transaction, which sees a single committed version of the sheet
+ * without taking its lock, so a delta read never waits for a writer or makes one wait.
+ */
+@Service
+public class SheetChangesService {
+    private final SheetRepository sheetRepository;
+    private final ActivityLogRepository activityLogRepository;
+    private final CellRepository cellRepository;
+    private final ActivityLogWriter activityLogWriter;
+    private final DependencyGraphService dependencyGraphService;
+    private final TransactionOperations consistentRead;
+
+    public SheetChangesService(SheetRepository sheetRepository, ActivityLogRepository activityLogRepository, CellRepository cellRepository,
+                               ActivityLogWriter activityLogWriter, DependencyGraphService dependencyGraphService,
+                               PlatformTransactionManager transactionManager) {
+        this.sheetRepository = sheetRepository;
+        this.activityLogRepository = activityLogRepository;
+        this.cellRepository = cellRepository;
+        this.activityLogWriter = activityLogWriter;
+        this.dependencyGraphService = dependencyGraphService;
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.consistentRead = template;
+    }
+
+    /*
+     * One change per cell, however often it changed: ADD for cells created since the version, DELETE for
+     * cells gone since, UPDATE otherwise, and nothing for cells created and deleted again. The returned
+     * version stops short of versions whose log entries are still queued (see ActivityLogWriter), so the
+     * client asks for those next time instead of missing them.
+     */
+    public SheetChanges changesSince(Integer sheetId, long since) {
+        if (since < 0) {
+            throw new IllegalArgumentException("since must be a non-negative sheet version.");
+        }
+        // Read in this order, before the snapshot starts: every version up to committed was tracked before it
+        // committed, so one below firstUnwritten had its entries written, and visible to the snapshot, by now
+        long committed = sheetRepository.findVersionById(sheetId)
+                .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+        if (since > committed) {
+            throw new IllegalArgumentException("Version " + since + " is ahead of the sheet, which is at version " + committed + ".");
+        }
+        long through = Math.max(since, Math.min(committed, activityLogWriter.firstUnwrittenVersion(sheetId) - 1));
+        if (through == since) {
+            return new SheetChanges(since, List.of());
+        }
+        return consistentRead.execute(status -> read(sheetId, since, through));
+    }
+
+    private SheetChanges read(Integer sheetId, long since, long through) {
+        // Some of the entries after the client's version were archived; only a full read can catch it up
+        activityLogRepository.findArchivedVersion(sheetId).filter(archived -> since < archived).ifPresent(archived -> {
+            throw new HistoryArchivedException("Changes to sheet " + sheetId + " through version " + archived
+                    + " have been archived; read the whole sheet again.");
+        });
+
+        // Oldest entry first: its operation tells whether the cell existed at the client's version
+        Map<CellRef, Boolean> existedBefore = new HashMap<>();
+        for (ActivityLog log : activityLogRepository.findCellChanges(sheetId, since, through)) {
+            if (log.getEntityType() == ActivityLog.EntityType.RANGE) {
+                // A range write's cells, each with the operation it applied
+                for (CellChange change : SheetSnapshotCodec.decodeChanges(log.getChanges())) {
+                    existedBefore.putIfAbsent(CellRef.of(change.rowNum(), change.colNum()), change.operation() != ActivityLog.OperationType.ADD);
+                }
+                continue;
+            }
+            CellRef ref;
+            try {
+                ref = CellRef.of(log.getRowNum(), log.getColNum());
+            } catch (FormulaException e) {
+                // Legacy entries for coordinates that no request can address any more
+                continue;
+            }
+            existedBefore.putIfAbsent(ref, log.getOperation() != ActivityLog.OperationType.ADD);
+        }
+        // The cached graph and cells belong to the sheet's lock holder and may hold uncommitted writes, so
+        // both are read from the snapshot instead
+        Set<CellRef> recalculated = dependencyGraphService.loadCommitted(sheetId).dirtyCells(existedBefore.keySet());
+        recalculated.removeAll(existedBefore.keySet());
+
+        Map<CellRef, Cell> now = currentCells(sheetId, existedBefore.keySet(), recalculated);
+        List<CellChange> changes = new ArrayList<>(existedBefore.size() + recalculated.size());
+        existedBefore.forEach((ref, existed) -> {
+            Cell cell = now.get(ref);
+            if (cell != null) {
+                changes.add(new CellChange(ref.row(), ref.colNum(), existed ? ActivityLog.OperationType.UPDATE : ActivityLog.OperationType.ADD,
+                        cell.getValue(), cell.getFormula()));
+            } else if (existed) {
+                changes.add(new CellChange(ref.row(), ref.colNum(), ActivityLog.OperationType.DELETE, null, null));
+            }
+        });
+        for (CellRef ref : recalculated) {
+            Cell cell = now.get(ref);
+            if (cell != null) {
+                changes.add(new CellChange(ref.row(), ref.colNum(), ActivityLog.OperationType.UPDATE, cell.getValue(), cell.getFormula()));
+            }
+        }
+        changes.sort(Comparator.comparingInt(CellChange::rowNum).thenComparingInt(change -> CellRef.columnIndex(change.colNum())));
+        return new SheetChanges(through, changes);
+    }
+
+    private Map<CellRef, Cell> currentCells(Integer sheetId, Set<CellRef> changed, Set<CellRef> recalculated) {
+        List<CellRef> refs = new ArrayList<>(changed);
+        refs.addAll(recalculated);
+        Map<CellRef, Cell> cells = new HashMap<>();
+        for (Cell cell : cellRepository.findCells(sheetId, refs)) {
+            cells.put(CellRef.of(cell.getRowNum(), cell.getColNum()), cell);
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo.service;
+
+import java.util.Locale;
+
+// Wire formats for sheet export and import. Both carry the columns rowNum, colNum, value, formula.
+public enum SheetDataFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    SheetDataFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() { return contentType; }
+    public String getExtension() { return extension; }
+
+    public static SheetDataFormat parse(String format) {
+        try {
+            return valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported format '" + format + "'. Use csv or ndjson.");
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellChange;
+import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.ActivityLog;
+import com.example.demo.repository.SheetRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pushes cell changes to subscribers of a sheet as Server-Sent Events. A write transaction collects the
+ * cells it changes, recalculated formulas included, and publishes them to the sheet's channel once it
+ * commits. The channel merges everything published within sheet-events.window-ms into one net change per
+ * cell; at the end of the window that batch is serialized once and a small pool of sender threads writes
+ * it to every subscriber. Subscriptions are servlet async requests, so an idle subscriber holds a
+ * connection but no thread.
+ *
+ * A subscriber still busy with an earlier event merges later batches into its own buffer, bounded by
+ * sheet-events.max-pending-cells. Past that, or for writes whose cells are not collected (imports), it
+ * gets a resync event instead and catches up with GET /sheets/{id}/changes. Sheets without subscribers
+ * cost nothing.
+ */
+@Component
+public class SheetEventHub {
+    private static final Logger log = LoggerFactory.getLogger(SheetEventHub.class);
+
+    private final SheetRepository sheetRepository;
+    // Events are written as single-line JSON; SSE ends a data field at the first newline
+    private final ObjectWriter json;
+    private final long windowMs;
+    private final int maxPendingCells;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    private final int senderThreads;
+
+    // key: sheet id; a channel exists while its sheet has subscribers
+    private final Map<Integer, Channel> channels = new ConcurrentHashMap<>();
+    // Channels with changes published since the last window
+    private final Set<Channel> dirty = ConcurrentHashMap.newKeySet();
+
+    private final Counter failures;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService senders;
+
+    public SheetEventHub(SheetRepository sheetRepository, ObjectMapper objectMapper,
+                         @Value("${sheet-events.window-ms:100}") long windowMs,
+                         @Value("${sheet-events.max-pending-cells:10000}") int maxPendingCells,
+                         @Value("${sheet-events.heartbeat-ms:15000}") long heartbeatMs,
+                         @Value("${sheet-events.timeout-ms:1800000}") long timeoutMs,
+                         @Value("${sheet-events.senders:4}") int senderThreads,
+                         MeterRegistry meterRegistry) {
+        if (windowMs < 1 || maxPendingCells < 1 || heartbeatMs < 1 || timeoutMs < 1 || senderThreads < 1) {
+            throw new IllegalArgumentException("sheet-events window-ms, max-pending-cells, heartbeat-ms, timeout-ms and senders must be positive.");
+        }
+        this.sheetRepository = sheetRepository;
+        this.json = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.windowMs = windowMs;
+        this.maxPendingCells = maxPendingCells;
+        this.heartbeatMs = heartbeatMs;
+        this.timeoutMs = timeoutMs;
+        this.senderThreads = senderThreads;
+        this.failures = Counter.builder("background.failures")
+                .description("Background task runs that failed")
+                .tag("task", "sheet-events")
+                .register(meterRegistry);
+        Gauge.builder("sheet_events.subscribers", channels, map -> map.values().stream().mapToInt(channel -> channel.members.size()).sum())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "sheet-events"));
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> daemon(runnable, "sheet-events-sender"));
+        scheduler.scheduleWithFixedDelay(() -> runSafely(this::flush), windowMs, windowMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> runSafely(this::heartbeat), heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    // A scheduled task that throws is never run again
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("Sheet event delivery failed", e);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /*
+     * The first event tells the subscriber the version it starts from. Every later event carries since and
+     * version: it brings any copy at a version from since onwards to version, and a copy older than since
+     * has missed changes and should catch up with GET /sheets/{id}/changes.
+     *
+     * Writers are not stopped: the subscriber joins first and reads the version after, so every write that
+     * commits past that version either opened after the join and is published, or shows up as a gap before
+     * the since of the next event. Events published meanwhile wait in its backlog until subscribed is sent.
+     */
+    public SseEmitter subscribe(Integer sheetId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(sheetId, emitter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove(subscriber));
+        // Joined inside compute, so a channel that is losing its last subscriber is never joined after removal
+        channels.compute(sheetId, (id, current) -> {
+            Channel channel = current == null ? new Channel(id) : current;
+            channel.members.add(subscriber);
+            return channel;
+        });
+        Optional<Long> version = sheetRepository.findVersionById(sheetId);
+        if (version.isEmpty()) {
+            remove(subscriber);
+            throw new SheetNotFoundException("Sheet with ID " + sheetId + " not found.");
+        }
+        if (subscriber.send("subscribed", version.get(), serialize(Map.of("sheetId", sheetId, "version", version.get())))) {
+            subscriber.sendNext();
+        }
+        return emitter;
+    }
+
+    private void remove(Subscriber subscriber) {
+        channels.computeIfPresent(subscriber.sheetId, (id, current) -> {
+            current.members.remove(subscriber);
+            return current.members.isEmpty() ? null : current;
+        });
+    }
+
+    private record PendingKey(Integer sheetId) {
+    }
+
+    /*
+     * Called by a writer that holds the sheet's lock, right after moving its version on. From here until
+     * commit, cellChanged collects what the transaction writes; the changes are published once it commits,
+     * still under the lock, so channels receive them in version order. A sheet that gained its first
+     * subscriber while a write was in flight misses that write; publish turns the gap into a resync.
+     */
+    public void openWrite(Integer sheetId, long version) {
+        if (!channels.containsKey(sheetId) || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        PendingKey key = new PendingKey(sheetId);
+        if (TransactionSynchronizationManager.hasResource(key)) {
+            return;
+        }
+        ChangeSet changes = new ChangeSet(version - 1, version);
+        TransactionSynchronizationManager.bindResource(key, changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(sheetId, changes);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+        });
+    }
+
+    public void cellChanged(Integer sheetId, CellRef ref, ActivityLog.OperationType operation, String value, String formula) {
+        ChangeSet changes = (ChangeSet) TransactionSynchronizationManager.getResource(new PendingKey(sheetId));
+        if (changes != null) {
+            boolean deleted = operation == ActivityLog.OperationType.DELETE;
+            changes.merge(ref, new CellChange(ref.row(), ref.colNum(), operation, deleted ? null : value, deleted ? null : formula),
+                    maxPendingCells);
+        }
+    }
+
+    // For writes that change too many cells to collect one by one: subscribers are sent a resync instead
+    public void cellsReplaced(Integer sheetId) {
+        ChangeSet changes = (ChangeSet) TransactionSynchronizationManager.getResource(new PendingKey(sheetId));
+        if (changes != null) {
+            changes.overflow();
+        }
+    }
+
+    // Ends the sheet's subscriptions with a deleted event once the deleting transaction commits
+    public void sheetDeleted(Integer sheetId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            close(sheetId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                close(sheetId);
+            }
+        });
+    }
+
+    private void close(Integer sheetId) {
+        Channel channel = channels.remove(sheetId);
+        if (channel == null) {
+            return;
+        }
+        dirty.remove(channel);
+        String payload = serialize(Map.of("sheetId", sheetId));
+        for (Subscriber subscriber : channel.members) {
+            senders.execute(() -> {
+                if (subscriber.send("deleted", null, payload)) {
+                    subscriber.emitter.complete();
+                }
+            });
+        }
+    }
+
+    private void publish(Integer sheetId, ChangeSet changes) {
+        Channel channel = channels.get(sheetId);
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            if (channel.pending == null) {
+                channel.pending = new ChangeSet(changes.since, changes.since);
+            }
+            channel.pending.mergeAll(changes, maxPendingCells);
+        }
+        dirty.add(channel);
+    }
+
+    // Ends the current window: each channel's batch goes to all of its subscribers; runs every window-ms
+    public void flush() {
+        for (Channel channel : dirty) {
+            dirty.remove(channel);
+            ChangeSet batch;
+            synchronized (channel) {
+                batch = channel.pending;
+                channel.pending = null;
+            }
+            if (batch == null) {
+                continue;
+            }
+            String payload = serialize(batch.event(channel.sheetId));
+            for (Subscriber subscriber : channel.members) {
+                subscriber.offer(batch, payload);
+            }
+        }
+    }
+
+    // Comment lines keep idle connections open through proxies and find clients that went away
+    private void heartbeat() {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+        for (Channel channel : channels.values()) {
+            for (Subscriber subscriber : channel.members) {
+                if (subscriber.lastSentNanos < idleSince) {
+                    subscriber.keepAlive();
+                }
+            }
+        }
+    }
+
+    private String serialize(Map<String, Object> data) {
+        try {
+            return json.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdownNow();
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+        channels.values().forEach(channel -> channel.members.forEach(subscriber -> subscriber.emitter.complete()));
+        channels.clear();
+    }
+
+    private static class Channel {
+        private final Integer sheetId;
+        private final Set<Subscriber> members = ConcurrentHashMap.newKeySet();
+        // What was published since the last window; guarded by this
+        private ChangeSet pending;
+
+        Channel(Integer sheetId) {
+            this.sheetId = sheetId;
+        }
+    }
+
+    // Net change per cell that brings a copy of the sheet from version since to version
+    private static class ChangeSet {
+        private final Map<CellRef, CellChange> changes = new HashMap<>();
+        private final long since;
+        private long version;
+        private boolean overflowed;
+
+        ChangeSet(long since, long version) {
+            this.since = since;
+            this.version = version;
+        }
+
+        void merge(CellRef ref, CellChange later, int maxCells) {
+            if (overflowed) {
+                return;
+            }
+            CellChange earlier = changes.get(ref);
+            CellChange merged = later;
+            if (earlier != null && earlier.operation() == ActivityLog.OperationType.ADD) {
+                // Still new to the subscriber, or never there at all
+                merged = later.operation() == ActivityLog.OperationType.DELETE ? null : withOperation(later, ActivityLog.OperationType.ADD);
+            } else if (earlier != null && later.operation() == ActivityLog.OperationType.ADD) {
+                // Deleted and created again
+                merged = withOperation(later, ActivityLog.OperationType.UPDATE);
+            }
+            if (merged == null) {
+                changes.remove(ref);
+            } else {
+                changes.put(ref, merged);
+            }
+            if (changes.size() > maxCells) {
+                overflow();
+            }
+        }
+
+        void mergeAll(ChangeSet later, int maxCells) {
+            // A write in between was not collected (see openWrite), so only a resync covers both
+            boolean gap = later.since != version;
+            version = later.version;
+            if (later.overflowed || gap) {
+                overflow();
+            }
+            later.changes.forEach((ref, change) -> merge(ref, change, maxCells));
+        }
+
+        void overflow() {
+            overflowed = true;
+            changes.clear();
+        }
+
+        Map<String, Object> event(Integer sheetId) {
+            if (overflowed) {
+                return Map.of("sheetId", sheetId, "since", since, "version", version);
+            }
+            List<Map.Entry<CellRef, CellChange>> entries = new ArrayList<>(changes.entrySet());
+            entries.sort(Map.Entry.comparingByKey(Comparator.comparingInt(CellRef::row).thenComparingInt(CellRef::col)));
+            List<CellChange> sorted = new ArrayList<>(entries.size());
+            entries.forEach(entry -> sorted.add(entry.getValue()));
+            return Map.of("sheetId", sheetId, "since", since, "version", version, "changes", sorted);
+        }
+
+        String name() {
+            return overflowed ? "resync" : "cells";
+        }
+
+        private static CellChange withOperation(CellChange change, ActivityLog.OperationType operation) {
+            return new CellChange(change.rowNum(), change.colNum(), operation, change.value(), change.formula());
+        }
+    }
+
+    /*
+     * At most one send per subscriber is in progress. Batches that arrive meanwhile are merged into its
+     * backlog, so a slow client receives fewer, larger events instead of an ever longer queue.
+     */
+    private class Subscriber {
+        private final Integer sheetId;
+        private final SseEmitter emitter;
+        // guarded by this; starts out sending until subscribed has gone out
+        private boolean sending = true;
+        private ChangeSet backlog;
+        private volatile long lastSentNanos = System.nanoTime();
+
+        Subscriber(Integer sheetId, SseEmitter emitter) {
+            this.sheetId = sheetId;
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(ChangeSet batch, String payload) {
+            if (!sending) {
+                sending = true;
+                senders.execute(() -> deliver(batch.name(), batch.version, payload));
+                return;
+            }
+            if (backlog == null) {
+                backlog = new ChangeSet(batch.since, batch.since);
+            }
+            backlog.mergeAll(batch, maxPendingCells);
+        }
+
+        void keepAlive() {
+            synchronized (this) {
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            senders.execute(() -> {
+                try {
+                    emitter.send(SseEmitter.event().comment("keep-alive"));
+                    lastSentNanos = System.nanoTime();
+                } catch (IOException | IllegalStateException e) {
+                    drop(e);
+                } finally {
+                    sendNext();
+                }
+            });
+        }
+
+        private void deliver(String name, long version, String payload) {
+            try {
+                send(name, version, payload);
+            } finally {
+                sendNext();
+            }
+        }
+
+        // Sends the backlog, if any, once the previous send is done
+        private void sendNext() {
+            ChangeSet next;
+            synchronized (this) {
+                next = backlog;
+                backlog = null;
+                sending = next != null;
+            }
+            if (next != null) {
+                String payload = serialize(next.event(sheetId));
+                senders.execute(() -> deliver(next.name(), next.version, payload));
+            }
+        }
+
+        boolean send(String name, Long id, String payload) {
+            try {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().name(name).data(payload);
+                emitter.send(id == null ? event : event.id(id.toString()));
+                lastSentNanos = System.nanoTime();
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                drop(e);
+                return false;
+            }
+        }
+
+        // The client went away or the connection broke; it has to subscribe again
+        private void drop(Exception e) {
+            remove(this);
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.repository.CellRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Writes a sheet's cells to an output stream in row/column order. Rows come from a forward-only
+ * database cursor as unmanaged projections and are written as they arrive, so memory use does not
+ * grow with the size of the sheet.
+ */
+@Service
+public class SheetExportService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CellRepository cellRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectWriter lineWriter;
+
+    public SheetExportService(CellRepository cellRepository, PlatformTransactionManager transactionManager, ObjectMapper objectMapper) {
+        this.cellRepository = cellRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // NDJSON needs one object per line, whatever the application-wide indent setting is
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    // Runs on the response thread; the cursor only stays open inside its own read-only transaction
+    public void export(Integer sheetId, SheetDataFormat format, boolean gzip, OutputStream out) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<CellExportRow> rows = cellRepository.streamBySheetId(sheetId)) {
+                    if (format == SheetDataFormat.CSV) {
+                        writer.write("rowNum,colNum,value,formula\n");
+                    }
+                    Iterator<CellExportRow> it = rows.iterator();
+                    while (it.hasNext()) {
+                        writeRow(writer, format, it.next());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        if (gzip) {
+            ((GZIPOutputStream) target).finish();
+        }
+    }
+
+    private void writeRow(Writer writer, SheetDataFormat format, CellExportRow row) throws IOException {
+        if (format == SheetDataFormat.NDJSON) {
+            writer.write(lineWriter.writeValueAsString(row));
+        } else {
+            writer.write(String.valueOf(row.rowNum()));
+            writer.write(',');
+            writeCsvField(writer, row.colNum());
+            writer.write(',');
+            writeCsvField(writer, row.value());
+            writer.write(',');
+            writeCsvField(writer, row.formula());
+        }
+        writer.write('\n');
+    }
+
+    // RFC 4180 quoting; null is written as an empty field
+    static void writeCsvField(Writer writer, String field) throws IOException {
+        if (field == null || field.isEmpty()) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellChange;
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.exception.FormulaException;
+import com.example.demo.exception.HistoryArchivedException;
+import com.example.demo.exception.SheetNotFoundException;
+import com.example.demo.formula.CellMap;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CompiledFormula;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.GridValues;
+import com.example.demo.model.ActivityLog;
+import com.example.demo.model.Sheet;
+import com.example.demo.model.SheetSnapshot;
+import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.SheetRepository;
+import com.example.demo.repository.SheetSnapshotRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/*
+ * Reads of a sheet as it was at an earlier version or time. The sheet is rebuilt from the nearest
+ * snapshot at or before the version (SheetSnapshotService) plus the activity log entries after it, so
+ * the work is bounded by the snapshot interval rather than the length of the history. Formulas
+ * downstream of the replayed cells were recalculated without being logged; they are evaluated again
+ * on the rebuilt sheet. Once old entries are archived (ActivityLogArchiver) the versions they lead up to can
+ * no longer be rebuilt, except where a snapshot was taken.
+ */
+@Service
+public class SheetHistoryService {
+    private final SheetRepository sheetRepository;
+    private final SheetSnapshotRepository sheetSnapshotRepository;
+    private final ActivityLogRepository activityLogRepository;
+    private final ActivityLogWriter activityLogWriter;
+    private final FormulaCompiler formulaCompiler;
+
+    public SheetHistoryService(SheetRepository sheetRepository, SheetSnapshotRepository sheetSnapshotRepository,
+                               ActivityLogRepository activityLogRepository, ActivityLogWriter activityLogWriter,
+                               FormulaCompiler formulaCompiler) {
+        this.sheetRepository = sheetRepository;
+        this.sheetSnapshotRepository = sheetSnapshotRepository;
+        this.activityLogRepository = activityLogRepository;
+        this.activityLogWriter = activityLogWriter;
+        this.formulaCompiler = formulaCompiler;
+    }
+
+    // ISO-8601, with or without an offset; without one the time is in the server's zone, like activity_log.updated_at
+    public static LocalDateTime parseTimestamp(String parameter, String text) {
+        try {
+            return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text);
+            } catch (DateTimeParseException e2) {
+                throw new IllegalArgumentException(parameter + " must be an ISO-8601 timestamp such as 2025-01-31T17:30:00 or 2025-01-31T17:30:00Z.");
+            }
+        }
+    }
+
+    // The sheet at the last version logged at or before the time; entries still queued for the log are not seen yet
+    @Transactional(readOnly = true)
+    public SheetAtVersion sheetAsOf(Integer sheetId, LocalDateTime asOf) {
+        long written = lastLoggedVersion(sheetId);
+        Optional<Long> found = activityLogRepository.findVersionAt(sheetId, asOf);
+        if (found.isEmpty()) {
+            activityLogRepository.findArchivedVersion(sheetId).ifPresent(archived -> {
+                throw archived(sheetId, archived);
+            });
+            throw new SheetNotFoundException("Sheet with ID " + sheetId + " has no history at or before " + asOf + ".");
+        }
+        long version = found.get();
+        return rebuild(sheetId, Math.min(version, written));
+    }
+
+    @Transactional(readOnly = true)
+    public SheetAtVersion sheetAt(Integer sheetId, long version) {
+        checkVersion("version", version, lastLoggedVersion(sheetId));
+        return rebuild(sheetId, version);
+    }
+
+    // Net change per cell from one version to another, in the format of GET /sheets/{id}/changes
+    @Transactional(readOnly = true)
+    public SheetChanges diff(Integer sheetId, long from, long to) {
+        long written = lastLoggedVersion(sheetId);
+        checkVersion("from", from, written);
+        checkVersion("to", to, written);
+        if (from > to) {
+            throw new IllegalArgumentException("from must not be after to.");
+        }
+        CellMap<SheetCellCache.CachedCell> before = state(sheetId, from).cells();
+        CellMap<SheetCellCache.CachedCell> after = from == to ? before : state(sheetId, to).cells();
+
+        Map<Long, CellChange> changes = new HashMap<>();
+        after.forEach((row, col, cell) -> {
+            SheetCellCache.CachedCell old = before.get(row, col);
+            if (old == null || !Objects.equals(old.value(), cell.value()) || !Objects.equals(old.formula(), cell.formula())) {
+                changes.put(CellRef.pack(row, col), new CellChange(row, CellRef.columnName(col),
+                        old == null ? ActivityLog.OperationType.ADD : ActivityLog.OperationType.UPDATE, cell.value(), cell.formula()));
+            }
+        });
+        before.forEach((row, col, cell) -> {
+            if (!after.containsKey(row, col)) {
+                changes.put(CellRef.pack(row, col), new CellChange(row, CellRef.columnName(col), ActivityLog.OperationType.DELETE, null, null));
+            }
+        });
+        long[] keys = changes.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        List<CellChange> sorted = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            sorted.add(changes.get(key));
+        }
+        return new SheetChanges(to, sorted);
+    }
+
+    // The sheet's version, short of any versions whose entries are still queued (see ActivityLogWriter)
+    private long lastLoggedVersion(Integer sheetId) {
+        long current = sheetRepository.findVersionById(sheetId)
+                .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + sheetId + " not found."));
+        return Math.min(current, activityLogWriter.firstUnwrittenVersion(sheetId) - 1);
+    }
+
+    private static HistoryArchivedException archived(Integer sheetId, long archived) {
+        return new HistoryArchivedException("The history of sheet " + sheetId + " through version " + archived
+                + " has been archived; versions from " + archived + " on can still be read.");
+    }
+
+    private static void checkVersion(String name, long version, long written) {
+        if (version < 0) {
+            throw new IllegalArgumentException(name + " must be a non-negative sheet version.");
+        }
+        if (version > written) {
+            throw new IllegalArgumentException("Version " + version + " is ahead of the sheet's history, which is at version " + written + ".");
+        }
+    }
+
+    private SheetAtVersion rebuild(Integer sheetId, long version) {
+        SheetSnapshotCodec.Contents state = state(sheetId, version);
+        // Sheets logged before their creation was recorded have no name in their history
+        String name = state.name() != null ? state.name() : sheetRepository.findById(sheetId).map(Sheet::getName).orElse(null);
+        return new SheetAtVersion(version, name, rows(state.cells()));
+    }
+
+    private SheetSnapshotCodec.Contents state(Integer sheetId, long version) {
+        Optional<SheetSnapshot> snapshot = sheetSnapshotRepository.findFirstBySheetIdAndVersionLessThanEqualOrderByVersionDesc(sheetId, version);
+        SheetSnapshotCodec.Contents base = snapshot.map(found -> SheetSnapshotCodec.decode(found.getData()))
+                .orElseGet(() -> new SheetSnapshotCodec.Contents(null, new CellMap<>()));
+        String name = base.name();
+        CellMap<SheetCellCache.CachedCell> cells = base.cells();
+        long from = snapshot.map(SheetSnapshot::getVersion).orElse(-1L);
+        // Entries in (from, version] that were archived are gone from the log
+        Optional<Long> archived = activityLogRepository.findArchivedVersion(sheetId);
+        if (archived.isPresent() && from < Math.min(version, archived.get())) {
+            throw archived(sheetId, archived.get());
+        }
+
+        List<CellRef> replayed = new ArrayList<>();
+        for (ActivityLog log : activityLogRepository.findSheetHistory(sheetId, from, version)) {
+            if (log.getEntityType() == ActivityLog.EntityType.SHEET) {
+                if (log.getOperation() != ActivityLog.OperationType.DELETE) {
+                    name = log.getValue();
+                }
+                continue;
+            }
+            if (log.getEntityType() == ActivityLog.EntityType.RANGE) {
+                for (CellChange change : SheetSnapshotCodec.decodeChanges(log.getChanges())) {
+                    replay(cells, replayed, CellRef.of(change.rowNum(), change.colNum()), change.operation(), change.value(), change.formula());
+                }
+                continue;
+            }
+            CellRef ref;
+            try {
+                ref = CellRef.of(log.getRowNum(), log.getColNum());
+            } catch (FormulaException e) {
+                // Legacy entries for coordinates that no request can address any more
+                continue;
+            }
+            replay(cells, replayed, ref, log.getOperation(), log.getValue(), log.getFormula());
+        }
+        recalculate(cells, replayed);
+        return new SheetSnapshotCodec.Contents(name, cells);
+    }
+
+    private static void replay(CellMap<SheetCellCache.CachedCell> cells, List<CellRef> replayed, CellRef ref,
+                               ActivityLog.OperationType operation, String value, String formula) {
+        if (operation == ActivityLog.OperationType.DELETE) {
+            cells.remove(ref.packed());
+        } else {
+            cells.put(ref.packed(), new SheetCellCache.CachedCell(value, formula));
+        }
+        replayed.add(ref);
+    }
+
+    // Re-evaluates every formula downstream of the replayed cells once, inputs before dependents
+    private void recalculate(CellMap<SheetCellCache.CachedCell> cells, List<CellRef> replayed) {
+        if (replayed.isEmpty()) {
+            return;
+        }
+        DependencyGraph graph = new DependencyGraph();
+        Map<CellRef, CompiledFormula> formulas = new HashMap<>();
+        GridValues values = new GridValues(cells.size());
+        cells.forEach((row, col, cell) -> {
+            values.put(row, col, cell.value());
+            if (FormulaCompiler.isFormula(cell.formula())) {
+                try {
+                    CompiledFormula compiled = formulaCompiler.compile(cell.formula());
+                    CellRef ref = new CellRef(row, col);
+                    formulas.put(ref, compiled);
+                    graph.setPrecedents(ref, DependencyGraph.rangesOf(compiled));
+                } catch (FormulaException e) {
+                    // Stored before the current grammar; its logged value stands
+                }
+            }
+        });
+        for (CellRef ref : graph.recalculationOrder(replayed)) {
+            String value = String.valueOf(formulas.get(ref).evaluate(values));
+            values.put(ref.row(), ref.col(), value);
+            cells.put(ref.packed(), new SheetCellCache.CachedCell(value, cells.get(ref.packed()).formula()));
+        }
+    }
+
+    private static List<CellExportRow> rows(CellMap<SheetCellCache.CachedCell> cells) {
+        long[] keys = new long[cells.size()];
+        int[] count = new int[1];
+        cells.forEach((row, col, cell) -> keys[count[0]++] = CellRef.pack(row, col));
+        // Packed keys sort in row-major order
+        Arrays.sort(keys);
+        List<CellExportRow> rows = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            SheetCellCache.CachedCell cell = cells.get(key);
+            rows.add(new CellExportRow(CellRef.rowOf(key), CellRef.columnName(CellRef.colOf(key)), cell.value(), cell.formula()));
+        }
+        return rows;
+    }
+}
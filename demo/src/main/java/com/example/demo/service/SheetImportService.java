@@ -0,0 +1,252 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.Cell;
+import com.example.demo.model.Sheet;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Bulk-loads CSV or NDJSON (the export format) into a sheet as a background job. The upload is
+ * spooled to a temp file and the request returns at once. A worker then reads the file in chunks and
+ * hands each chunk to CellService.importCells, which writes it with JDBC batches in a transaction of its
+ * own: the sheet is locked for one chunk at a time, and the chunk's formulas are evaluated together with
+ * whatever depends on the chunk's cells, not every formula of the sheet. A failed import keeps the chunks
+ * committed before the failing one; rowsRead tells how far it got. Later rows for the same coordinate win.
+ */
+@Service
+public class SheetImportService {
+    private static final Logger log = LoggerFactory.getLogger(SheetImportService.class);
+    // Finished jobs stay queryable for this long
+    private static final long RETAIN_FINISHED_HOURS = 1;
+
+    private final CellService cellService;
+    private final SheetLocks sheetLocks;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final Counter failures;
+
+    // key: job id
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public SheetImportService(CellService cellService, SheetLocks sheetLocks, ObjectMapper objectMapper,
+                              @Value("${sheet-import.chunk-size:5000}") int chunkSize,
+                              @Value("${sheet-import.threads:2}") int threads,
+                              MeterRegistry meterRegistry) {
+        this.cellService = cellService;
+        this.sheetLocks = sheetLocks;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sheet-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.failures = Counter.builder("background.failures")
+                .description("Background task runs that failed")
+                .tag("task", "sheet-import")
+                .register(meterRegistry);
+    }
+
+    // Copies the upload to a temp file and queues the import; the returned job reports progress
+    public ImportJob submit(Sheet sheet, SheetDataFormat format, boolean gzip, InputStream body) throws IOException {
+        Path file = Files.createTempFile("sheet-import-", "." + format.getExtension() + (gzip ? ".gz" : ""));
+        try {
+            Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        removeExpiredJobs();
+        ImportJob job = new ImportJob(sheet.getId(), format);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job, sheet, file, gzip));
+        return job;
+    }
+
+    public Optional<ImportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(RETAIN_FINISHED_HOURS);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private void run(ImportJob job, Sheet sheet, Path file, boolean gzip) {
+        job.start();
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = gzip ? new GZIPInputStream(raw, 64 * 1024) : raw;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            ImportRun importRun = new ImportRun(job, sheet);
+            importRun.execute(reader);
+            job.complete(importRun.created, importRun.updated, importRun.recalculated);
+        } catch (IllegalArgumentException e) {
+            // Bad input: the message names the line, and the job reports it
+            job.fail(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Import job {} into sheet {} failed after {} rows", job.getId(), job.getSheetId(), job.getRowsRead(), e);
+            job.fail(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete import spool file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // State of a single import while its chunks are written
+    private class ImportRun {
+        private final ImportJob job;
+        private final Sheet sheet;
+
+        private long created;
+        private long updated;
+        private long recalculated;
+
+        ImportRun(ImportJob job, Sheet sheet) {
+            this.job = job;
+            this.sheet = sheet;
+        }
+
+        void execute(BufferedReader reader) {
+            try {
+                if (job.getFormat() == SheetDataFormat.CSV) {
+                    readCsv(reader);
+                } else {
+                    readNdjson(reader);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read import data: " + e.getMessage(), e);
+            }
+        }
+
+        private void readCsv(BufferedReader reader) throws IOException {
+            CsvRecordReader csv = new CsvRecordReader(reader);
+            Map<CellRef, Cell> chunk = new LinkedHashMap<>();
+            boolean first = true;
+            while (true) {
+                int line = csv.getLineNumber();
+                List<String> record = csv.next();
+                if (record == null) {
+                    break;
+                }
+                if (first && !record.isEmpty() && "rowNum".equalsIgnoreCase(record.get(0))) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (record.size() == 1 && record.get(0) == null) {
+                    continue;
+                }
+                if (record.size() < 2 || record.size() > 4) {
+                    throw new IllegalArgumentException("Expected rowNum,colNum,value,formula at line " + line + ".");
+                }
+                addRow(chunk, line, parseRow(record.get(0), line), record.get(1),
+                        record.size() > 2 ? record.get(2) : null, record.size() > 3 ? record.get(3) : null);
+            }
+            flushChunk(chunk);
+        }
+
+        private void readNdjson(BufferedReader reader) throws IOException {
+            Map<CellRef, Cell> chunk = new LinkedHashMap<>();
+            int line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(text);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Invalid JSON at line " + line + ".");
+                }
+                JsonNode rowNode = node.path("rowNum");
+                if (!rowNode.canConvertToInt() && !rowNode.isTextual()) {
+                    throw new IllegalArgumentException("Missing rowNum at line " + line + ".");
+                }
+                addRow(chunk, line, parseRow(rowNode.asText(), line), textOrNull(node, "colNum"),
+                        textOrNull(node, "value"), textOrNull(node, "formula"));
+            }
+            flushChunk(chunk);
+        }
+
+        private String textOrNull(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+
+        private int parseRow(String rowNum, int line) {
+            try {
+                return Integer.parseInt(rowNum == null ? "" : rowNum.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rowNum '" + rowNum + "' at line " + line + ".");
+            }
+        }
+
+        private void addRow(Map<CellRef, Cell> chunk, int line, int rowNum, String colNum, String value, String formula) {
+            if (colNum == null) {
+                throw new IllegalArgumentException("Missing colNum at line " + line + ".");
+            }
+            CellRef ref;
+            try {
+                ref = CellRef.of(rowNum, colNum.trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(e.getMessage() + " (line " + line + ")");
+            }
+            chunk.put(ref, new Cell(null, ref.row(), ref.colNum(), value, formula));
+            if (chunk.size() >= chunkSize) {
+                flushChunk(chunk);
+            }
+        }
+
+        private void flushChunk(Map<CellRef, Cell> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            // Commits the chunk; other writers to the sheet wait for this chunk only
+            List<Cell> cells = new ArrayList<>(chunk.values());
+            CellBatchResult result = sheetLocks.callLocked(sheet.getId(), () -> cellService.importCells(sheet, cells));
+            created += result.created();
+            updated += result.updated();
+            recalculated += result.recalculated();
+            job.addRowsRead(chunk.size());
+            chunk.clear();
+        }
+    }
+}
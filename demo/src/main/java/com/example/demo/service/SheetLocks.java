@@ -0,0 +1,123 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.SheetBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+ * Serializes writers per sheet. A transaction that changes a sheet's cells, dependency graph or cached
+ * copy locks the sheet first and holds the lock until it commits or rolls back, so writes to one sheet
+ * are linearized while different sheets proceed in parallel. Sheets share a fixed set of lock stripes;
+ * two sheets on the same stripe wait for each other, which costs throughput but never correctness.
+ *
+ * Request handlers and import chunks take the lock with callLocked before their transaction starts and
+ * before the request reads anything through its EntityManager, which keeps its JDBC connection from the
+ * first read on. A writer waiting for a busy sheet so holds no pooled connection, and a hot sheet cannot
+ * drain the pool that writes to every other sheet need.
+ */
+@Component
+public class SheetLocks {
+    // Runs after the cache and graph rollback evictions, so the next writer never sees state that was undone
+    public static final int RELEASE_ORDER = Ordered.LOWEST_PRECEDENCE;
+    public static final int EVICTION_ORDER = 0;
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutMs;
+
+    public SheetLocks(@Value("${sheet-locks.stripes:64}") int stripes,
+                      @Value("${sheet-locks.timeout-ms:30000}") long timeoutMs) {
+        if (stripes < 1 || timeoutMs < 0) {
+            throw new IllegalArgumentException("sheet-locks.stripes must be positive and sheet-locks.timeout-ms non-negative.");
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.timeoutMs = timeoutMs;
+    }
+
+    // Locks the sheet until the current transaction completes; reentrant within the same transaction and under callLocked
+    public void lock(Integer sheetId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Sheet " + sheetId + " can only be locked inside a transaction.");
+        }
+        ReentrantLock lock = stripeFor(sheetId);
+        if (lock.isHeldByCurrentThread()) {
+            return;
+        }
+        acquire(lock, sheetId);
+        heldLocks().add(lock);
+    }
+
+    /*
+     * Runs a write, usually a call into a @Transactional service method, with the sheet locked for all of it.
+     * Outside a transaction the lock is taken first and released once the write's transaction has completed;
+     * inside one it is taken with lock and held until that transaction completes.
+     */
+    public <T> T callLocked(Integer sheetId, Supplier<T> write) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            lock(sheetId);
+            return write.get();
+        }
+        ReentrantLock lock = stripeFor(sheetId);
+        acquire(lock, sheetId);
+        try {
+            return write.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(ReentrantLock lock, Integer sheetId) {
+        try {
+            if (!lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SheetBusyException("Sheet " + sheetId + " is busy with another write; try again later.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SheetBusyException("Interrupted while waiting to write sheet " + sheetId + ".");
+        }
+    }
+
+    // Whether a writer may be using the sheet's in-memory state; also true while another sheet on its stripe is written
+    public boolean isLocked(Integer sheetId) {
+        return stripeFor(sheetId).isLocked();
+    }
+
+    private ReentrantLock stripeFor(Integer sheetId) {
+        return stripes[Math.floorMod(sheetId.hashCode(), stripes.length)];
+    }
+
+    // One synchronization per transaction releases every stripe it took
+    private List<ReentrantLock> heldLocks() {
+        @SuppressWarnings("unchecked")
+        List<ReentrantLock> held = (List<ReentrantLock>) TransactionSynchronizationManager.getResource(this);
+        if (held != null) {
+            return held;
+        }
+        List<ReentrantLock> registered = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, registered);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return RELEASE_ORDER;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(SheetLocks.this);
+                registered.forEach(ReentrantLock::unlock);
+            }
+        });
+        return registered;
+    }
+}
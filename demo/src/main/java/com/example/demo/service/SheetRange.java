@@ -0,0 +1,11 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.RangeRef;
+
+/*
+ * A rectangle of a sheet as dense arrays, null where there is no cell: values[row][col] in row-major
+ * layout, values[col][row] in columnar layout, with offsets relative to the range's top left corner.
+ * formulas has the same shape, or is null when it was not asked for.
+ */
+public record SheetRange(long version, RangeRef range, boolean columnar, String[][] values, String[][] formulas) {
+}
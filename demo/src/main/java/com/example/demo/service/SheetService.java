@@ -1,5 +1,6 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.SheetDTO;
 import com.example.demo.exception.SheetNotFoundException;
 import com.example.demo.model.ActivityLog;
 import com.example.demo.model.Sheet;
@@ -7,6 +8,7 @@ import com.example.demo.model.Book;
 import com.example.demo.repository.SheetRepository;
 import com.example.demo.repository.BookRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
@@ -19,15 +21,25 @@ public class SheetService {
     private final SheetRepository sheetRepository;
     private final ActivityLogService activityLogService;
     private final BookRepository bookRepository;
-
-    public SheetService(SheetRepository sheetRepository, ActivityLogService activityLogService, BookRepository bookRepository) {
+    private final DependencyGraphService dependencyGraphService;
+    private final SheetCellCache sheetCellCache;
+    private final SheetEventHub sheetEventHub;
+    private final SheetLocks sheetLocks;
+
+    public SheetService(SheetRepository sheetRepository, ActivityLogService activityLogService, BookRepository bookRepository,
+                        DependencyGraphService dependencyGraphService, SheetCellCache sheetCellCache, SheetEventHub sheetEventHub,
+                        SheetLocks sheetLocks) {
         this.sheetRepository = sheetRepository;
         this.activityLogService = activityLogService;
         this.bookRepository = bookRepository;
+        this.dependencyGraphService = dependencyGraphService;
+        this.sheetCellCache = sheetCellCache;
+        this.sheetEventHub = sheetEventHub;
+        this.sheetLocks = sheetLocks;
     }
 
-    public List<Sheet> getAllSheets() {
-        return sheetRepository.findAll();
+    public List<SheetDTO> getAllSheets() {
+        return sheetRepository.findAllSheetDTOs();
     }
 
     public Optional<Sheet> getSheetById(int id) {
@@ -65,7 +77,7 @@ public class SheetService {
 
         try {
             Sheet createdSheet = sheetRepository.save(sheet);
-            activityLogService.logActivitySheet(createdSheet.getId(), "system", ActivityLog.OperationType.ADD, ActivityLog.EntityType.SHEET);
+            activityLogService.logActivitySheet(createdSheet, "system", ActivityLog.OperationType.ADD, ActivityLog.EntityType.SHEET);
             return createdSheet;
         } catch (DataIntegrityViolationException e) {
             e.printStackTrace(); 
@@ -78,29 +90,45 @@ public class SheetService {
 
     }
 
+    @Transactional
     public Sheet updateSheet(int id, Sheet newSheet) {
         if (newSheet.getName() == null || newSheet.getName().trim().isEmpty()) {
             throw new IllegalArgumentException("Sheet name is required and cannot be empty.");
         }
+        // A new version like any cell write, so it is taken in the same order: lock, version, openWrite
+        sheetLocks.lock(id);
     
         return sheetRepository.findById(id).map(sheet -> {
             sheet.setName(newSheet.getName());
             Sheet updatedSheet = sheetRepository.save(sheet);
-            activityLogService.logActivitySheet(updatedSheet.getId(), "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.SHEET);
+            // The name is part of GET /sheets/{id}, so a rename is a new version too
+            updatedSheet.setVersion(sheetRepository.incrementVersion(id));
+            // Subscribers get an event without cell changes, which keeps their version in step
+            sheetEventHub.openWrite(id, updatedSheet.getVersion());
+            activityLogService.logActivitySheet(updatedSheet, "system", ActivityLog.OperationType.UPDATE, ActivityLog.EntityType.SHEET);
             return updatedSheet;
         }).orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found, cannot UPDATE."));
     }
         
+    @Transactional
     public void deleteSheet(int id) {
         Sheet sheet = sheetRepository.findById(id)
             .orElseThrow(() -> new SheetNotFoundException("Sheet with ID " + id + " not found, cannot DELETE."));
 
         // Log the deletion with entityType = SHEET
-        activityLogService.logActivitySheet(sheet.getId(), "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.SHEET);
+        activityLogService.logActivitySheet(sheet, "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.SHEET);
+        delete(id);
+    }
 
-        sheetRepository.deleteById(id);
+    // A bulk delete instead of a cascading remove, which would load and delete the sheet's cells one by one
+    private void delete(Integer sheetId) {
+        sheetRepository.deleteSheetById(sheetId);
+        dependencyGraphService.evictAfterCompletion(sheetId);
+        sheetCellCache.evictAfterCompletion(sheetId);
+        sheetEventHub.sheetDeleted(sheetId);
     }
 
+    @Transactional
     public void deleteSheetByNameAndBook(String sheetName, Book inputBook) {
         if (sheetName == null || sheetName.trim().isEmpty()) {
             throw new IllegalArgumentException("Sheet name is required.");
@@ -122,8 +150,8 @@ public class SheetService {
         Sheet sheet = sheetRepository.findByBookIdAndName(book.getId(), sheetName)
                 .orElseThrow(() -> new SheetNotFoundException("Sheet with name '" + sheetName + "' not found under Book '" + book.getName() + "'"));
     
-        activityLogService.logActivitySheet(sheet.getId(), "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.SHEET);
-        sheetRepository.delete(sheet);
+        activityLogService.logActivitySheet(sheet, "system", ActivityLog.OperationType.DELETE, ActivityLog.EntityType.SHEET);
+        delete(sheet.getId());
     }
 
     public Optional<Sheet> getSheetByBookIdAndName(Integer bookId, String sheetName) {
@@ -133,6 +161,22 @@ public class SheetService {
         return sheetRepository.findByBookIdAndName(bookId, sheetName);
     }
     
+    // Resolve a sheet addressed by name to its id without loading it, so writers can take the sheet's lock before
+    // the request's EntityManager holds a connection (SheetLocks.callLocked)
+    public Optional<Integer> getSheetIdByBookIdAndName(Integer bookId, String sheetName) {
+        if (bookId == null || sheetName == null || sheetName.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        return sheetRepository.findIdByBookIdAndName(bookId, sheetName);
+    }
+
+    public Optional<Integer> getSheetIdByBookNameAndSheetName(String bookName, String sheetName) {
+        if (bookName == null || sheetName == null || sheetName.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        return sheetRepository.findIdByBookNameAndName(bookName, sheetName);
+    }
+
     public Optional<Sheet> getSheetByBookNameAndSheetName(String bookName, String sheetName) {
         if (bookName == null || sheetName == null || sheetName.trim().isEmpty()) {
             return Optional.empty();
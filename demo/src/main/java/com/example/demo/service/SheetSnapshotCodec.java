@@ -0,0 +1,249 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellChange;
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.exception.FormulaException;
+import com.example.demo.formula.CellMap;
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.ActivityLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Binary form of a sheet snapshot: a header with the sheet's name and cell count, then the cells one
+ * field at a time (rows, columns, values, formulas), gzipped. Rows are stored as the difference to the
+ * previous cell's row and numbers as variable-length ints, so a sheet written in row/column order costs
+ * about a byte per coordinate; keeping each field's data together gives the compressor long runs of
+ * similar bytes.
+ *
+ * The cells changed by a range write, which the activity log keeps as one entry, use the same layout
+ * with an operation per cell and no name.
+ */
+public final class SheetSnapshotCodec {
+    private static final int FORMAT = 1;
+    private static final int CHANGES_FORMAT = 2;
+    private static final ActivityLog.OperationType[] OPERATIONS = ActivityLog.OperationType.values();
+
+    // A decoded snapshot; cells are keyed by packed coordinate and may be changed by the caller
+    public record Contents(String name, CellMap<SheetCellCache.CachedCell> cells) {
+    }
+
+    private SheetSnapshotCodec() {
+    }
+
+    // Cells should come in row/column order, as CellRepository.streamBySheetId returns them
+    public static byte[] encode(String name, Iterator<CellExportRow> cells) {
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        ByteArrayOutputStream cols = new ByteArrayOutputStream();
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        ByteArrayOutputStream formulas = new ByteArrayOutputStream();
+        try {
+            DataOutputStream rowsOut = new DataOutputStream(rows);
+            DataOutputStream colsOut = new DataOutputStream(cols);
+            DataOutputStream valuesOut = new DataOutputStream(values);
+            DataOutputStream formulasOut = new DataOutputStream(formulas);
+            int count = 0;
+            int previousRow = 0;
+            while (cells.hasNext()) {
+                CellExportRow cell = cells.next();
+                int col;
+                try {
+                    col = CellRef.columnIndex(cell.colNum());
+                } catch (FormulaException e) {
+                    // Legacy cells at coordinates that no request can address any more
+                    continue;
+                }
+                writeVarInt(rowsOut, zigZag(cell.rowNum() - previousRow));
+                writeVarInt(colsOut, col);
+                writeString(valuesOut, cell.value());
+                writeString(formulasOut, cell.formula());
+                previousRow = cell.rowNum();
+                count++;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows.size() / 4);
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 64 * 1024))) {
+                out.writeInt(FORMAT);
+                writeString(out, name);
+                out.writeInt(count);
+                rows.writeTo(out);
+                cols.writeTo(out);
+                values.writeTo(out);
+                formulas.writeTo(out);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Only in-memory streams are involved
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Contents decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024))) {
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IllegalStateException("Unknown sheet snapshot format " + format + ".");
+            }
+            String name = readString(in);
+            int count = in.readInt();
+            int[] rows = new int[count];
+            int row = 0;
+            for (int i = 0; i < count; i++) {
+                row += unZigZag(readVarInt(in));
+                rows[i] = row;
+            }
+            int[] cols = new int[count];
+            for (int i = 0; i < count; i++) {
+                cols[i] = readVarInt(in);
+            }
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readString(in);
+            }
+            CellMap<SheetCellCache.CachedCell> cells = new CellMap<>(count);
+            for (int i = 0; i < count; i++) {
+                cells.put(rows[i], cols[i], new SheetCellCache.CachedCell(values[i], readString(in)));
+            }
+            return new Contents(name, cells);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt sheet snapshot.", e);
+        }
+    }
+
+    // Changes should come in row/column order; a deleted cell's value and formula are not stored
+    public static byte[] encodeChanges(List<CellChange> changes) {
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        ByteArrayOutputStream cols = new ByteArrayOutputStream();
+        ByteArrayOutputStream operations = new ByteArrayOutputStream(changes.size());
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        ByteArrayOutputStream formulas = new ByteArrayOutputStream();
+        try {
+            DataOutputStream rowsOut = new DataOutputStream(rows);
+            DataOutputStream colsOut = new DataOutputStream(cols);
+            DataOutputStream valuesOut = new DataOutputStream(values);
+            DataOutputStream formulasOut = new DataOutputStream(formulas);
+            int previousRow = 0;
+            for (CellChange change : changes) {
+                boolean deleted = change.operation() == ActivityLog.OperationType.DELETE;
+                writeVarInt(rowsOut, zigZag(change.rowNum() - previousRow));
+                writeVarInt(colsOut, CellRef.columnIndex(change.colNum()));
+                operations.write(change.operation().ordinal());
+                writeString(valuesOut, deleted ? null : change.value());
+                writeString(formulasOut, deleted ? null : change.formula());
+                previousRow = change.rowNum();
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows.size() / 4);
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 64 * 1024))) {
+                out.writeInt(CHANGES_FORMAT);
+                out.writeInt(changes.size());
+                rows.writeTo(out);
+                cols.writeTo(out);
+                operations.writeTo(out);
+                values.writeTo(out);
+                formulas.writeTo(out);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<CellChange> decodeChanges(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024))) {
+            int format = in.readInt();
+            if (format != CHANGES_FORMAT) {
+                throw new IllegalStateException("Unknown cell changes format " + format + ".");
+            }
+            int count = in.readInt();
+            int[] rows = new int[count];
+            int row = 0;
+            for (int i = 0; i < count; i++) {
+                row += unZigZag(readVarInt(in));
+                rows[i] = row;
+            }
+            int[] cols = new int[count];
+            for (int i = 0; i < count; i++) {
+                cols[i] = readVarInt(in);
+            }
+            ActivityLog.OperationType[] operations = new ActivityLog.OperationType[count];
+            for (int i = 0; i < count; i++) {
+                operations[i] = OPERATIONS[in.readUnsignedByte()];
+            }
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readString(in);
+            }
+            List<CellChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                changes.add(new CellChange(rows[i], CellRef.columnName(cols[i]), operations[i], values[i], readString(in)));
+            }
+            return changes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt cell changes.", e);
+        }
+    }
+
+    // Rows only ever grow in row/column order, but a negative step must still round-trip
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length int.");
+    }
+
+    // Length + 1 as a variable-length int, 0 for null, then UTF-8; unlike writeUTF this has no 64 KB limit
+    private static void writeString(DataOutput out, String text) throws IOException {
+        if (text == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
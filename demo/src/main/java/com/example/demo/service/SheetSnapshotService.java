@@ -0,0 +1,201 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.model.ActivityLog;
+import com.example.demo.model.Sheet;
+import com.example.demo.model.SheetSnapshot;
+import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetRepository;
+import com.example.demo.repository.SheetSnapshotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Keeps a snapshot of each sheet at least every sheet-snapshots.interval activity log entries, so a read
+ * of the sheet at an earlier version (SheetHistoryService) replays at most about that many entries.
+ * Entries are counted as they are logged; when a sheet reaches the interval, or logs its first entries
+ * since startup, a background thread checks it once the writing transaction has committed. The cells are
+ * copied inside one repeatable-read transaction, which sees a single committed version of the sheet
+ * without taking its lock, so writers are never blocked by a snapshot.
+ */
+@Service
+public class SheetSnapshotService {
+    private static final Logger log = LoggerFactory.getLogger(SheetSnapshotService.class);
+
+    private final SheetSnapshotRepository sheetSnapshotRepository;
+    private final SheetRepository sheetRepository;
+    private final CellRepository cellRepository;
+    private final ActivityLogRepository activityLogRepository;
+    private final TransactionOperations consistentRead;
+    private final int interval;
+    private final ExecutorService executor;
+    private final Counter failures;
+
+    // key: sheet id, value: entries logged since the sheet was last checked
+    private final Map<Integer, Integer> logged = new ConcurrentHashMap<>();
+    // Sheets with a check waiting for the executor
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public SheetSnapshotService(SheetSnapshotRepository sheetSnapshotRepository, SheetRepository sheetRepository, CellRepository cellRepository,
+                                ActivityLogRepository activityLogRepository, PlatformTransactionManager transactionManager,
+                                @Value("${sheet-snapshots.interval:10000}") int interval, MeterRegistry meterRegistry) {
+        this(sheetSnapshotRepository, sheetRepository, cellRepository, activityLogRepository, consistentRead(transactionManager), interval, meterRegistry);
+    }
+
+    public SheetSnapshotService(SheetSnapshotRepository sheetSnapshotRepository, SheetRepository sheetRepository, CellRepository cellRepository,
+                                ActivityLogRepository activityLogRepository, TransactionOperations consistentRead, int interval,
+                                MeterRegistry meterRegistry) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("sheet-snapshots.interval must be positive.");
+        }
+        this.sheetSnapshotRepository = sheetSnapshotRepository;
+        this.sheetRepository = sheetRepository;
+        this.cellRepository = cellRepository;
+        this.activityLogRepository = activityLogRepository;
+        this.consistentRead = consistentRead;
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sheet-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.failures = Counter.builder("background.failures")
+                .description("Background task runs that failed")
+                .tag("task", "sheet-snapshots")
+                .register(meterRegistry);
+    }
+
+    private static TransactionOperations consistentRead(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return template;
+    }
+
+    // A range entry counts once per cell it changed, as a read replays it (see countSheetEntries)
+    public void entriesLogged(List<ActivityLog> logs) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (ActivityLog log : logs) {
+            if (log.getSheetId() != null) {
+                counts.merge(log.getSheetId(), log.getChangeCount() != null ? log.getChangeCount() : 1, Integer::sum);
+            }
+        }
+        counts.forEach(this::entriesLogged);
+    }
+
+    public void entriesLogged(Integer sheetId, int count) {
+        boolean[] due = new boolean[1];
+        logged.compute(sheetId, (id, total) -> {
+            // The first entries since startup are checked too, which picks up history logged before a restart
+            due[0] = total == null || total + count >= interval;
+            return due[0] ? 0 : total + count;
+        });
+        if (!due[0]) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            queue(sheetId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                queue(sheetId);
+            }
+        });
+    }
+
+    private void queue(Integer sheetId) {
+        if (!queued.add(sheetId)) {
+            return;
+        }
+        executor.execute(() -> {
+            queued.remove(sheetId);
+            try {
+                snapshotIfDue(sheetId);
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.error("Snapshot of sheet {} failed", sheetId, e);
+            }
+        });
+    }
+
+    // The in-memory count is only a trigger; the log says how many entries a read would really replay
+    private void snapshotIfDue(Integer sheetId) {
+        if (sheetRepository.findVersionById(sheetId).isEmpty()) {
+            logged.remove(sheetId);
+            return;
+        }
+        long tail = activityLogRepository.countSheetEntries(sheetId, sheetSnapshotRepository.findLatestVersion(sheetId).orElse(-1L));
+        if (tail >= interval) {
+            takeSnapshot(sheetId);
+        } else {
+            logged.computeIfPresent(sheetId, (id, total) -> (int) Math.min(Integer.MAX_VALUE, total + tail));
+        }
+    }
+
+    // Snapshots the sheet at its current version, unless it is already snapshotted there or gone
+    public void takeSnapshot(Integer sheetId) {
+        SheetSnapshot snapshot = consistentRead.execute(status -> {
+            Optional<Sheet> sheet = sheetRepository.findById(sheetId);
+            if (sheet.isEmpty() || sheetSnapshotRepository.findLatestVersion(sheetId).orElse(-1L) >= sheet.get().getVersion()) {
+                return null;
+            }
+            SheetSnapshot copy = new SheetSnapshot();
+            copy.setSheetId(sheetId);
+            copy.setVersion(sheet.get().getVersion());
+            try (Stream<CellExportRow> rows = cellRepository.streamBySheetId(sheetId)) {
+                copy.setData(SheetSnapshotCodec.encode(sheet.get().getName(), rows.iterator()));
+            }
+            return copy;
+        });
+        // Written outside the read-only transaction
+        if (snapshot != null) {
+            sheetSnapshotRepository.save(snapshot);
+        }
+    }
+
+    // Stores a sheet rebuilt at an earlier version (SheetHistoryService), unless there is a snapshot at that version already
+    public void saveSnapshot(Integer sheetId, SheetAtVersion sheet) {
+        Optional<SheetSnapshot> existing = sheetSnapshotRepository.findFirstBySheetIdAndVersionLessThanEqualOrderByVersionDesc(sheetId, sheet.version());
+        if (existing.isPresent() && existing.get().getVersion() == sheet.version()) {
+            return;
+        }
+        SheetSnapshot snapshot = new SheetSnapshot();
+        snapshot.setSheetId(sheetId);
+        snapshot.setVersion(sheet.version());
+        snapshot.setData(SheetSnapshotCodec.encode(sheet.name(), sheet.cells().iterator()));
+        sheetSnapshotRepository.save(snapshot);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
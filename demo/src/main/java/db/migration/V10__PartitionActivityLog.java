@@ -0,0 +1,45 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/*
+ * Range-partitions activity_log by month of updated_at, so old months are archived and dropped whole
+ * (ActivityLogArchiver) instead of deleted row by row, and inserts only ever touch the newest partition.
+ * Existing rows get a partition per month from the oldest one on; p_start holds anything older, and
+ * p_future is split by the archiver as months come due. The month list depends on the data and today's
+ * date, which a SQL migration cannot compute.
+ */
+public class V10__PartitionActivityLog extends BaseJavaMigration {
+    private static final int MONTHS_AHEAD = 3;
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            LocalDate first = LocalDate.now().withDayOfMonth(1);
+            try (ResultSet rs = statement.executeQuery("SELECT MIN(updated_at) FROM activity_log")) {
+                Timestamp oldest = rs.next() ? rs.getTimestamp(1) : null;
+                if (oldest != null && oldest.toLocalDateTime().toLocalDate().isBefore(first)) {
+                    first = oldest.toLocalDateTime().toLocalDate().withDayOfMonth(1);
+                }
+            }
+
+            StringBuilder sql = new StringBuilder("ALTER TABLE activity_log PARTITION BY RANGE COLUMNS(updated_at) (")
+                    .append("PARTITION p_start VALUES LESS THAN ('").append(first).append("')");
+            LocalDate last = LocalDate.now().withDayOfMonth(1).plusMonths(MONTHS_AHEAD);
+            for (LocalDate month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                sql.append(", PARTITION ").append(NAME.format(month))
+                        .append(" VALUES LESS THAN ('").append(month.plusMonths(1)).append("')");
+            }
+            sql.append(", PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+            statement.execute(sql.toString());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Lets one activity_log row stand for a whole range write (PUT /sheets/{id}/range/{range}): entity_type
+ * RANGE, the range in value, and the cells it changed in changes (SheetSnapshotCodec.encodeChanges) with
+ * their number in change_count. The entity_type check is replaced: MariaDB keeps a column's check with
+ * the column, so redefining it drops the check, while MySQL keeps it as a table constraint named
+ * activity_log_chk_N, which is looked up and dropped.
+ */
+public class V12__ActivityLogRangeEntries extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("ALTER TABLE activity_log MODIFY entity_type VARCHAR(10) NOT NULL");
+            List<String> checks = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT tc.CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS tc "
+                            + "JOIN information_schema.CHECK_CONSTRAINTS cc "
+                            + "ON cc.CONSTRAINT_SCHEMA = tc.CONSTRAINT_SCHEMA AND cc.CONSTRAINT_NAME = tc.CONSTRAINT_NAME "
+                            + "WHERE tc.TABLE_SCHEMA = DATABASE() AND tc.TABLE_NAME = 'activity_log' AND tc.CONSTRAINT_TYPE = 'CHECK' "
+                            + "AND cc.CHECK_CLAUSE LIKE '%entity_type%'")) {
+                while (rs.next()) {
+                    checks.add(rs.getString(1));
+                }
+            }
+            for (String check : checks) {
+                statement.execute("ALTER TABLE activity_log DROP CONSTRAINT `" + check + "`");
+            }
+            statement.execute("ALTER TABLE activity_log "
+                    + "ADD COLUMN changes LONGBLOB NULL, "
+                    + "ADD COLUMN change_count INT NULL, "
+                    + "ADD CONSTRAINT chk_activity_entity_type CHECK (entity_type IN ('BOOK', 'SHEET', 'CELL', 'RANGE'))");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package db.migration;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CompiledFormula;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.RangeRef;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+// Formulas written before V2 only had their dependencies in memory; rebuild them from the stored formulas
+public class V3__BackfillCellDependencies extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        FormulaCompiler compiler = new FormulaCompiler(10_000);
+        String insert = "INSERT INTO cell_dependencies (sheet_id, dependent_row, dependent_col, start_row, start_col, end_row, end_col) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        try (Statement select = context.getConnection().createStatement();
+             ResultSet rs = select.executeQuery("SELECT sheet_id, row_num, col_num, formula FROM cells WHERE formula LIKE '=%'");
+             PreparedStatement ps = context.getConnection().prepareStatement(insert)) {
+            while (rs.next()) {
+                CellRef dependent;
+                CompiledFormula formula;
+                try {
+                    dependent = CellRef.of(rs.getInt("row_num"), rs.getString("col_num"));
+                    formula = compiler.compile(rs.getString("formula"));
+                } catch (IllegalArgumentException e) {
+                    // Unparseable legacy formula: nothing can depend on it reliably, skip it
+                    continue;
+                }
+                for (CellRef ref : formula.getCellRefs()) {
+                    addRow(ps, rs.getInt("sheet_id"), dependent, RangeRef.of(ref, ref));
+                }
+                for (RangeRef range : formula.getRangeRefs()) {
+                    addRow(ps, rs.getInt("sheet_id"), dependent, range);
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void addRow(PreparedStatement ps, int sheetId, CellRef dependent, RangeRef range) throws Exception {
+        ps.setInt(1, sheetId);
+        ps.setInt(2, dependent.row());
+        ps.setInt(3, dependent.col());
+        ps.setInt(4, range.startRow());
+        ps.setInt(5, range.startCol());
+        ps.setInt(6, range.endRow());
+        ps.setInt(7, range.endCol());
+        ps.addBatch();
+    }
+}
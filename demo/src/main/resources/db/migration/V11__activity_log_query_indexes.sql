@@ -0,0 +1,9 @@
+-- V11__activity_log_query_indexes.sql
+-- Indexes for GET /activity, which pages through entries newest first by id. With the filter's columns
+-- fixed each index is in id order, so a page is the next few entries of one index however long the history
+-- is, and the id suffix also seeks straight to the cursor. id is spelled out because a partitioned table
+-- does not sort by the implicit primary key suffix. A time window is pruned to its partitions.
+CREATE INDEX idx_activity_book ON activity_log(book_id, id);
+CREATE INDEX idx_activity_sheet ON activity_log(sheet_id, id);
+CREATE INDEX idx_activity_cell ON activity_log(sheet_id, row_num, col_num, id);
+CREATE INDEX idx_activity_user ON activity_log(updated_by, id);
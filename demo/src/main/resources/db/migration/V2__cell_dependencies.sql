@@ -0,0 +1,16 @@
+-- V2__cell_dependencies.sql
+-- One row per (formula cell, referenced range); single-cell references are stored as 1x1 ranges.
+-- Columns are stored as 1-based indexes (A = 1) so range containment is a plain numeric comparison.
+CREATE TABLE cell_dependencies (
+	`id` INT AUTO_INCREMENT PRIMARY KEY,
+	`sheet_id` INT NOT NULL,
+	`dependent_row` INT NOT NULL,
+	`dependent_col` INT NOT NULL,
+	`start_row` INT NOT NULL,
+	`start_col` INT NOT NULL,
+	`end_row` INT NOT NULL,
+	`end_col` INT NOT NULL,
+	CONSTRAINT fk_dependency_sheet FOREIGN KEY (sheet_id) REFERENCES sheets(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_dependencies_sheet_dependent ON cell_dependencies(sheet_id, dependent_row, dependent_col);
@@ -0,0 +1,14 @@
+-- V5__unique_cell_coordinates.sql
+-- One row per cell coordinate, so single-cell writes can be a native upsert (INSERT ... ON DUPLICATE KEY UPDATE)
+-- and concurrent writers cannot create duplicates.
+
+-- Duplicates written before the constraint existed: the newest row wins
+DELETE older FROM cells older
+JOIN cells newer ON newer.sheet_id = older.sheet_id AND newer.row_num = older.row_num AND newer.col_idx = older.col_idx AND newer.id > older.id
+WHERE older.col_idx > 0;
+
+-- Legacy rows whose column does not parse all share col_idx 0; a negative index keeps them distinct and outside every range
+UPDATE cells SET col_idx = -id WHERE col_idx = 0;
+
+CREATE UNIQUE INDEX uk_cells_sheet_row_colidx ON cells(sheet_id, row_num, col_idx);
+DROP INDEX idx_cells_sheet_row_colidx ON cells;
@@ -0,0 +1,3 @@
+-- V6__sheet_version.sql
+-- Incremented by every transaction that changes the sheet; read endpoints expose it as their ETag.
+ALTER TABLE sheets ADD COLUMN `version` BIGINT NOT NULL DEFAULT 0;
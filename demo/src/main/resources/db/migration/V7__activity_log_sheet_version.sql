@@ -0,0 +1,12 @@
+-- V7__activity_log_sheet_version.sql
+-- Stamps each log row with the sheet version its transaction produced, so GET /sheets/{id}/changes?since=N
+-- reads only the rows after N. Rows written before this column existed are stamped 0, the version every sheet
+-- starts at (V6): they come before any version a client can hold, yet are still replayed when a sheet is rebuilt.
+ALTER TABLE activity_log ADD COLUMN `sheet_version` BIGINT NULL;
+
+-- updated_at is declared ON UPDATE CURRENT_TIMESTAMP (V1); assigning it to itself keeps the original times
+UPDATE activity_log SET sheet_version = 0, updated_at = updated_at WHERE sheet_id IS NOT NULL;
+
+CREATE INDEX idx_activity_sheet_version ON activity_log(sheet_id, sheet_version);
+-- Covered by the new index's leading column
+DROP INDEX idx_activity_sheet ON activity_log;
@@ -0,0 +1,15 @@
+-- V8__sheet_snapshots.sql
+-- Periodic copies of a sheet's cells (SheetSnapshotCodec format), so a read of the sheet at an earlier
+-- version replays only the activity log entries after the nearest snapshot.
+CREATE TABLE sheet_snapshots (
+	`id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+	`sheet_id` INT NOT NULL,
+	`version` BIGINT NOT NULL,
+	`data` LONGBLOB NOT NULL,
+	`created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	CONSTRAINT uc_snapshot_sheet_version UNIQUE (sheet_id, version),
+	CONSTRAINT fk_snapshot_sheet FOREIGN KEY (sheet_id) REFERENCES sheets(id) ON DELETE CASCADE
+);
+
+-- Resolves GET /sheets/{id}?asOf= to the last version logged at or before the time
+CREATE INDEX idx_activity_sheet_time ON activity_log(sheet_id, updated_at, sheet_version);
@@ -0,0 +1,150 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "activity-log.async=false")
+@AutoConfigureMockMvc
+@Transactional
+@Import(SqlStatementCounter.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ActivityIntegrationTests {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private EntityManager entityManager;
+    @Autowired private SqlStatementCounter counter;
+
+    private int bookId;
+    private int sheetId;
+
+    // A book with one sheet whose cell A1 is written twice and B1 once: six entries in all
+    @BeforeEach
+    void setup() throws Exception {
+        String book = mockMvc.perform(post("/books").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"activity-book-" + System.nanoTime() + "\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        bookId = objectMapper.readTree(book).get("data").get("id").asInt();
+        String sheet = mockMvc.perform(post("/sheets").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"activity\", \"book\": {\"id\": " + bookId + "}}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        sheetId = objectMapper.readTree(sheet).get("data").get("id").asInt();
+        writeCell("A", "1");
+        writeCell("B", "2");
+        writeCell("A", "3");
+        mockMvc.perform(put("/sheets/" + sheetId).contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"renamed\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testPagesWalkTheHistoryNewestFirst() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        Integer cursor = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/activity").param("bookId", String.valueOf(bookId)).param("limit", "4");
+            if (cursor != null) {
+                request.param("after", String.valueOf(cursor));
+            }
+            JsonNode page = objectMapper.readTree(mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            page.get("data").forEach(entry -> {
+                ids.add(entry.get("id").asInt());
+                types.add(entry.get("entityType").asText() + " " + entry.get("operation").asText());
+            });
+            cursor = page.has("nextCursor") ? page.get("nextCursor").asInt() : null;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(List.of("SHEET UPDATE", "CELL UPDATE", "CELL ADD", "CELL ADD", "SHEET ADD", "BOOK ADD"), types);
+        assertEquals(ids.stream().sorted((a, b) -> b - a).toList(), ids);
+    }
+
+    @Test
+    void testFilters() throws Exception {
+        mockMvc.perform(get("/activity").param("sheetId", String.valueOf(sheetId)).param("cell", "a1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[*].value", contains("3", "1")))
+                .andExpect(jsonPath("$.data[*].operation", contains("UPDATE", "ADD")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        mockMvc.perform(get("/activity").param("sheetId", String.valueOf(sheetId)).param("operation", "update"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[*].entityType", contains("SHEET", "CELL")));
+        mockMvc.perform(get("/activity").param("bookId", String.valueOf(bookId)).param("user", "system"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(6)));
+        mockMvc.perform(get("/activity").param("bookId", String.valueOf(bookId)).param("user", "someone-else"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(0)));
+        mockMvc.perform(get("/activity").param("bookId", String.valueOf(bookId))
+                        .param("from", "2000-01-01T00:00:00").param("to", "2999-01-01T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(6)));
+        mockMvc.perform(get("/activity").param("bookId", String.valueOf(bookId)).param("to", "2000-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(0)));
+    }
+
+    @Test
+    void testPageIsOneStatement() throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        counter.reset();
+        mockMvc.perform(get("/activity").param("sheetId", String.valueOf(sheetId)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(2)))
+                .andExpect(jsonPath("$.nextCursor").exists());
+        assertEquals(1, counter.count(), counter.statements()::toString);
+    }
+
+    @Test
+    void testInvalidParameters() throws Exception {
+        mockMvc.perform(get("/activity").param("cell", "A1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("cell requires sheetId."));
+        mockMvc.perform(get("/activity").param("operation", "RENAME"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/activity").param("from", "last week"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/activity").param("from", "2025-02-01T00:00:00").param("to", "2025-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/activity").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.path").value("/activity"));
+    }
+
+    private void writeCell(String colNum, String value) throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        body.put("sheet", Map.of("id", sheetId));
+        body.put("rowNum", 1);
+        body.put("colNum", colNum);
+        body.put("value", value);
+        mockMvc.perform(put("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(body)))
+                .andExpect(status().is2xxSuccessful());
+    }
+}
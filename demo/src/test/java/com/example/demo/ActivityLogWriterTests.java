@@ -0,0 +1,240 @@
+package com.example.demo;
+
+import com.example.demo.model.ActivityLog;
+import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.service.ActivityLogWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class ActivityLogWriterTests {
+
+    private final List<List<ActivityLog>> written = Collections.synchronizedList(new ArrayList<>());
+
+    private ActivityLogRepository recordingRepository() {
+        ActivityLogRepository repository = mock(ActivityLogRepository.class);
+        doAnswer(invocation -> {
+            written.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(repository).batchInsert(anyList());
+        return repository;
+    }
+
+    private static List<ActivityLog> logs(int count) {
+        List<ActivityLog> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ActivityLog log = new ActivityLog();
+            log.setBookId(1);
+            log.setValue(String.valueOf(i));
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    private int writtenCount() {
+        synchronized (written) {
+            return written.stream().mapToInt(List::size).sum();
+        }
+    }
+
+    @Test
+    void testSynchronousModeWritesImmediately() {
+        ActivityLogWriter writer = new ActivityLogWriter(recordingRepository(), TransactionOperations.withoutTransaction(), false, 10, 5, 1000, 1, 1, new SimpleMeterRegistry());
+        writer.start();
+
+        writer.submit(logs(3));
+
+        assertEquals(1, written.size());
+        assertEquals(3, written.get(0).size());
+    }
+
+    @Test
+    void testEntriesAreBatchedByFlushSize() throws Exception {
+        ActivityLogWriter writer = new ActivityLogWriter(recordingRepository(), TransactionOperations.withoutTransaction(), true, 100, 4, 1000, 1, 1, new SimpleMeterRegistry());
+        writer.start();
+
+        writer.submit(logs(8));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writtenCount() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(8, writtenCount());
+        written.forEach(batch -> assertTrue(batch.size() <= 4));
+        writer.shutdown();
+    }
+
+    @Test
+    void testFullQueueFallsBackToCallerAndShutdownFlushes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ActivityLogRepository repository = recordingRepository();
+        // Hold the worker inside its first write so the queue fills up behind it
+        doAnswer(invocation -> {
+            if (!Thread.currentThread().getName().equals("activity-log-writer") || release.getCount() == 0) {
+                written.add(new ArrayList<>(invocation.getArgument(0)));
+                return null;
+            }
+            release.await(5, TimeUnit.SECONDS);
+            written.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(repository).batchInsert(anyList());
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityLogWriter writer = new ActivityLogWriter(repository, TransactionOperations.withoutTransaction(), true, 2, 1, 10, 1, 1, meterRegistry);
+        writer.start();
+
+        writer.submit(logs(1));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.pending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        // Two fit in the queue, the third is written by the caller
+        writer.submit(logs(3));
+        assertEquals(1, writtenCount());
+        assertEquals(2, writer.pending());
+        assertEquals(1, meterRegistry.get("activity_log.writes").tag("writer", "overflow").timer().count());
+        assertEquals(2.0, meterRegistry.get("activity_log.queue.size").gauge().value());
+
+        release.countDown();
+        writer.shutdown();
+        assertEquals(4, writtenCount());
+        assertEquals(0, writer.pending());
+    }
+
+    @Test
+    void testVersionsStayUnwrittenUntilTheirEntriesAreWritten() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ActivityLogRepository repository = recordingRepository();
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            written.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(repository).batchInsert(anyList());
+        ActivityLogWriter writer = new ActivityLogWriter(repository, TransactionOperations.withoutTransaction(), true, 100, 10, 10, 1, 1, new SimpleMeterRegistry());
+        writer.start();
+
+        List<ActivityLog> logs = logs(3);
+        for (int i = 0; i < logs.size(); i++) {
+            logs.get(i).setSheetId(7);
+            logs.get(i).setSheetVersion(3L + i);
+        }
+        writer.submit(logs);
+        assertEquals(3, writer.firstUnwrittenVersion(7));
+        assertEquals(Long.MAX_VALUE, writer.firstUnwrittenVersion(8));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.firstUnwrittenVersion(7) != Long.MAX_VALUE && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, writtenCount());
+        assertEquals(Long.MAX_VALUE, writer.firstUnwrittenVersion(7));
+        writer.shutdown();
+    }
+
+    private static List<ActivityLog> sheetLogs(int sheetId, long firstVersion, int count) {
+        List<ActivityLog> logs = logs(count);
+        for (int i = 0; i < count; i++) {
+            logs.get(i).setSheetId(sheetId);
+            logs.get(i).setSheetVersion(firstVersion + i);
+        }
+        return logs;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testFailedInsertIsRetriedWithBackoff() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ActivityLogRepository repository = recordingRepository();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new IllegalStateException("database unavailable");
+            }
+            written.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(repository).batchInsert(anyList());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityLogWriter writer = new ActivityLogWriter(repository, TransactionOperations.withoutTransaction(), true, 100, 10, 10, 3, 1, meterRegistry);
+        writer.start();
+
+        writer.submit(sheetLogs(7, 3, 2));
+        await(() -> writer.firstUnwrittenVersion(7) == Long.MAX_VALUE);
+
+        assertEquals(3, calls.get());
+        assertEquals(2, writtenCount());
+        assertEquals(0, meterRegistry.get("background.failures").tag("task", "activity-log-writer").counter().count());
+        writer.shutdown();
+    }
+
+    @Test
+    void testBatchThatKeepsFailingStaysUnwrittenUntilARetrySucceeds() throws Exception {
+        AtomicBoolean down = new AtomicBoolean(true);
+        ActivityLogRepository repository = recordingRepository();
+        doAnswer(invocation -> {
+            if (down.get()) {
+                throw new IllegalStateException("database unavailable");
+            }
+            written.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(repository).batchInsert(anyList());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityLogWriter writer = new ActivityLogWriter(repository, TransactionOperations.withoutTransaction(), true, 100, 10, 10, 2, 1, meterRegistry);
+        writer.start();
+
+        writer.submit(sheetLogs(7, 3, 2));
+        await(() -> writer.failedEntries() == 2);
+
+        // Readers of the log must stop below the versions that are not in it
+        assertEquals(2, writer.failedEntries());
+        assertEquals(0, writtenCount());
+        assertEquals(3, writer.firstUnwrittenVersion(7));
+        assertTrue(meterRegistry.get("background.failures").tag("task", "activity-log-writer").counter().count() >= 1);
+
+        down.set(false);
+        await(() -> writer.firstUnwrittenVersion(7) == Long.MAX_VALUE);
+        assertEquals(2, writtenCount());
+        assertEquals(0, writer.failedEntries());
+        writer.shutdown();
+    }
+
+    @Test
+    void testFailedEntriesAreBoundedByQueueCapacityAndOverflowIsTriedOnce() throws Exception {
+        ActivityLogRepository repository = mock(ActivityLogRepository.class);
+        doThrow(new IllegalStateException("database unavailable")).when(repository).batchInsert(anyList());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityLogWriter writer = new ActivityLogWriter(repository, TransactionOperations.withoutTransaction(), true, 2, 10, 10, 2, 1, meterRegistry);
+        writer.start();
+
+        writer.submit(sheetLogs(7, 3, 2));
+        await(() -> writer.failedEntries() == 2);
+
+        // The kept batch fills the capacity, so the caller writes its own entries once and, failing, drops them
+        writer.submit(sheetLogs(7, 5, 3));
+        assertEquals(1, meterRegistry.get("activity_log.writes").tag("writer", "overflow").timer().count());
+        assertEquals(3, meterRegistry.get("activity_log.dropped").counter().count());
+        assertEquals(2, writer.failedEntries());
+        assertEquals(0, writer.pending());
+        assertEquals(3, writer.firstUnwrittenVersion(7));
+        writer.shutdown();
+    }
+}
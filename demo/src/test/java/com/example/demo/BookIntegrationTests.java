@@ -2,17 +2,25 @@ package com.example.demo;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.example.demo.model.Book;
+import com.example.demo.model.Cell;
+import com.example.demo.model.Sheet;
 import com.example.demo.model.ActivityLog;
 import com.example.demo.model.ActivityLog.EntityType;
 import com.example.demo.model.ActivityLog.OperationType;
 import com.example.demo.repository.BookRepository;
 import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultMatcher;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -21,9 +29,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "activity-log.async=false")
 @AutoConfigureMockMvc
 @Transactional
+@Import(SqlStatementCounter.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class BookIntegrationTests {
 
@@ -39,6 +48,18 @@ public class BookIntegrationTests {
     @Autowired
     private ActivityLogRepository activityLogRepository;
 
+    @Autowired
+    private SheetRepository sheetRepository;
+
+    @Autowired
+    private CellRepository cellRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private SqlStatementCounter counter;
+
     private Book testBook;
 
     @BeforeAll
@@ -90,6 +111,56 @@ public class BookIntegrationTests {
         assertTrue(logs.stream().anyMatch(log -> "Updated Book".equals(log.getValue()) || "Initial Book".equals(log.getValue())));
     }
 
+    @Test
+    void testReadingBooksIsOneQuery() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Book book = new Book();
+            book.setName("Listed Book " + i);
+            bookRepository.save(book);
+        }
+
+        assertEquals(1, statementsFor(get("/books"), status().isOk()), counter.statements()::toString);
+        assertEquals(1, statementsFor(get("/books/" + testBook.getId()), status().isOk()), counter.statements()::toString);
+    }
+
+    @Test
+    void testDeletingBookDoesNotLoadItsSheetsOrCells() throws Exception {
+        Book small = bookWithSheets("Small Book", 1, 1);
+        Book large = bookWithSheets("Large Book", 4, 25);
+
+        int smallStatements = statementsFor(delete("/books/" + small.getId()), status().isOk());
+        int largeStatements = statementsFor(delete("/books/" + large.getId()), status().isOk());
+        assertEquals(smallStatements, largeStatements, counter.statements()::toString);
+        assertEquals(4, largeStatements, counter.statements()::toString);
+        assertTrue(sheetRepository.findIdsByBookId(large.getId()).isEmpty());
+    }
+
+    private Book bookWithSheets(String name, int sheets, int cellsPerSheet) {
+        Book book = new Book();
+        book.setName(name);
+        book = bookRepository.save(book);
+        for (int i = 0; i < sheets; i++) {
+            Sheet sheet = new Sheet();
+            sheet.setName("Sheet " + i);
+            sheet.setBook(book);
+            sheet = sheetRepository.save(sheet);
+            for (int row = 1; row <= cellsPerSheet; row++) {
+                cellRepository.save(new Cell(sheet, row, "A", String.valueOf(row), null));
+            }
+        }
+        return book;
+    }
+
+    // Statements one request issues, starting from an empty persistence context and including its flushed writes
+    private int statementsFor(RequestBuilder request, ResultMatcher expected) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        counter.reset();
+        mockMvc.perform(request).andExpect(expected);
+        entityManager.flush();
+        return counter.count();
+    }
+
     @Test
     void testCreateBookMissingName() throws Exception {
         Book newBook = new Book();
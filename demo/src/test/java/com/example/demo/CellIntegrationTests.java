@@ -10,26 +10,58 @@ import com.example.demo.repository.BookRepository;
 import com.example.demo.repository.SheetRepository;
 import com.example.demo.repository.CellRepository;
 import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellDependencyRepository;
+import com.example.demo.formula.CellRef;
+import com.example.demo.service.CellService;
+import com.example.demo.service.DependencyGraphService;
+import com.example.demo.service.SheetCellCache;
+import com.example.demo.service.SheetEventHub;
+import com.example.demo.service.SheetLocks;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.Map;
 import java.util.List;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "activity-log.async=false")
 @AutoConfigureMockMvc
 @Transactional
+@Import(SqlStatementCounter.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class CellIntegrationTests {
 
@@ -39,6 +71,16 @@ public class CellIntegrationTests {
     @Autowired private SheetRepository sheetRepository;
     @Autowired private CellRepository cellRepository;
     @Autowired private ActivityLogRepository activityLogRepository;
+    @Autowired private CellDependencyRepository cellDependencyRepository;
+    @Autowired private DependencyGraphService dependencyGraphService;
+    @Autowired private SheetCellCache sheetCellCache;
+    @Autowired private CellService cellService;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private SheetLocks sheetLocks;
+    @Autowired private SheetEventHub sheetEventHub;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private EntityManager entityManager;
+    @Autowired private SqlStatementCounter counter;
 
     private Book book;
     private Sheet sheet;
@@ -98,6 +140,61 @@ public class CellIntegrationTests {
         assertEquals("updated", logs.get(0).getValue());
     }
 
+    @Test
+    void testSingleWriteIsOneStatement() throws Exception {
+        Sheet upsertSheet = new Sheet();
+        upsertSheet.setName("Upsert Sheet");
+        upsertSheet.setBook(book);
+        upsertSheet = sheetRepository.save(upsertSheet);
+        Map<String, Object> requestBody = new HashMap<>(Map.of("sheet", Map.of("id", upsertSheet.getId()), "rowNum", 4, "colNum", "D", "value", "1"));
+
+        statementsFor(post("/cells").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requestBody)), status().isCreated());
+        assertSingleUpsert();
+        Integer id = cellRepository.findBySheetAndRowNumAndColNum(upsertSheet, 4, "D").orElseThrow().getId();
+
+        // Overwriting, rewriting the same value and a lower-case column all address the same row
+        requestBody.put("value", "2");
+        statementsFor(put("/cells").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requestBody)), jsonPath("$.data.id").value(id));
+        assertSingleUpsert();
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(requestBody)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.id").value(id));
+        requestBody.put("colNum", "d");
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(requestBody)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.id").value(id))
+            .andExpect(jsonPath("$.data.colNum").value("D"));
+        entityManager.clear();
+        assertEquals("D", cellRepository.findById(id).orElseThrow().getColNum());
+
+        requestBody.put("colNum", "E");
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(requestBody)))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.data.id").value(not(id)));
+
+        assertEquals(2, cellRepository.countBySheetId(upsertSheet.getId()));
+        Integer upsertSheetId = upsertSheet.getId();
+        List<ActivityLog> logs = activityLogRepository.findByEntityType(EntityType.CELL).stream()
+                .filter(log -> upsertSheetId.equals(log.getSheetId())).toList();
+        assertEquals(2, logs.stream().filter(log -> log.getOperation() == OperationType.ADD).count());
+        assertEquals(3, logs.stream().filter(log -> log.getOperation() == OperationType.UPDATE).count());
+    }
+
+    private void assertSingleUpsert() {
+        List<String> cellStatements = counter.statements().stream().filter(sql -> sql.matches("(?is).*\\bcells\\b.*")).toList();
+        assertEquals(1, cellStatements.size(), counter.statements()::toString);
+        assertTrue(cellStatements.get(0).contains("ON DUPLICATE KEY UPDATE"), cellStatements::toString);
+    }
+
+    @Test
+    void testCellCoordinatesAreUnique() {
+        cellRepository.batchInsert(sheet.getId(), List.of(new Cell(sheet, 90, "A", "1", null)));
+        assertThrows(DuplicateKeyException.class,
+                () -> cellRepository.batchInsert(sheet.getId(), List.of(new Cell(sheet, 90, "a", "2", null))));
+    }
+
     @Test
     void testDeleteCellByCoordinates() throws Exception {
         Cell cell = new Cell(sheet, 3, "C", "toDelete", null);
@@ -162,6 +259,601 @@ public class CellIntegrationTests {
         assertEquals(0, logs.size());
     }
 
+    @Test
+    void testFormulaWithRangeAndRecalculation() throws Exception {
+        cellRepository.save(new Cell(sheet, 20, "A", "4", null));
+        cellRepository.save(new Cell(sheet, 21, "A", "6", null));
+
+        Map<String, Object> formulaBody = Map.of(
+            "sheet", Map.of("id", sheet.getId()),
+            "rowNum", 22,
+            "colNum", "A",
+            "formula", "=SUM(A20:A21) * 2 + 1"
+        );
+
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(formulaBody)))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.data.value").value("21.0"));
+
+        Map<String, Object> updateBody = Map.of(
+            "sheet", Map.of("id", sheet.getId()),
+            "rowNum", 21,
+            "colNum", "A",
+            "value", "16"
+        );
+
+        mockMvc.perform(put("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateBody)))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/22/A"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.value").value("41.0"));
+    }
+
+    @Test
+    void testDependenciesArePersistedAndScopedToSheet() throws Exception {
+        Sheet otherSheet = new Sheet();
+        otherSheet.setName("Other Sheet");
+        otherSheet.setBook(book);
+        otherSheet = sheetRepository.save(otherSheet);
+
+        cellRepository.save(new Cell(sheet, 30, "B", "5", null));
+        cellRepository.save(new Cell(otherSheet, 30, "B", "100", null));
+
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 31, "colNum", "B", "formula", "=B30*2"))))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.data.value").value("10.0"));
+
+        assertEquals(1, cellDependencyRepository.findBySheetId(sheet.getId()).size());
+        assertTrue(cellDependencyRepository.findBySheetId(otherSheet.getId()).isEmpty());
+
+        // Writing B30 on another sheet must not touch this sheet's dependents
+        mockMvc.perform(put("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", otherSheet.getId()), "rowNum", 30, "colNum", "B", "value", "7"))))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/31/B"))
+            .andExpect(jsonPath("$.data.value").value("10.0"));
+
+        // Simulate a restart: the graph is reloaded from cell_dependencies
+        dependencyGraphService.evict(sheet.getId());
+
+        mockMvc.perform(put("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 30, "colNum", "B", "value", "8"))))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/31/B"))
+            .andExpect(jsonPath("$.data.value").value("16.0"));
+
+        // Replacing the formula with a plain value drops its dependencies
+        mockMvc.perform(put("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 31, "colNum", "B", "value", "1"))))
+            .andExpect(status().isOk());
+
+        assertTrue(cellDependencyRepository.findBySheetId(sheet.getId()).isEmpty());
+    }
+
+    @Test
+    void testCircularReferenceIsRejected() throws Exception {
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 40, "colNum", "C", "formula", "=C41+1"))))
+            .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 41, "colNum", "C", "formula", "=SUM(C39:C40)"))))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message", containsString("Circular reference")));
+
+        assertTrue(cellRepository.findBySheetAndRowNumAndColNum(sheet, 41, "C").isEmpty());
+    }
+
+    @Test
+    void testBatchUpsertRecalculatesOnce() throws Exception {
+        cellRepository.save(new Cell(sheet, 50, "A", "1", null));
+
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                    "sheet", Map.of("id", sheet.getId()), "rowNum", 52, "colNum", "A", "formula", "=A50+A51"))))
+            .andExpect(status().isCreated());
+
+        Map<String, Object> batchBody = Map.of(
+            "sheet", Map.of("id", sheet.getId()),
+            "cells", List.of(
+                Map.of("rowNum", 50, "colNum", "A", "value", "2"),
+                Map.of("rowNum", 51, "colNum", "a", "value", "99"),
+                Map.of("rowNum", 51, "colNum", "A", "value", "3"),
+                Map.of("rowNum", 53, "colNum", "A", "formula", "=SUM(A50:A51)")
+            )
+        );
+
+        mockMvc.perform(post("/cells/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(batchBody)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.created").value(2))
+            .andExpect(jsonPath("$.data.updated").value(1))
+            .andExpect(jsonPath("$.data.recalculated").value(1));
+
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/52/A"))
+            .andExpect(jsonPath("$.data.value").value("5.0"));
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/53/A"))
+            .andExpect(jsonPath("$.data.value").value("5.0"));
+
+        assertEquals(3, activityLogRepository.findByEntityTypeAndOperation(EntityType.CELL, OperationType.ADD).size());
+        assertEquals(1, activityLogRepository.findByEntityTypeAndOperation(EntityType.CELL, OperationType.UPDATE).size());
+        assertEquals(3, cellDependencyRepository.findBySheetId(sheet.getId()).size());
+    }
+
+    @Test
+    void testBatchUpsertRejectsCycleWithinBatch() throws Exception {
+        Map<String, Object> batchBody = Map.of(
+            "sheet", Map.of("id", sheet.getId()),
+            "cells", List.of(
+                Map.of("rowNum", 60, "colNum", "D", "formula", "=D61+1"),
+                Map.of("rowNum", 61, "colNum", "D", "formula", "=D60+1")
+            )
+        );
+
+        mockMvc.perform(post("/cells/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(batchBody)))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message", containsString("Circular reference")));
+
+        assertTrue(cellRepository.findBySheetAndRowNumAndColNum(sheet, 60, "D").isEmpty());
+    }
+
+    @Test
+    void testKeysetPaginationAndRangeFilter() throws Exception {
+        Sheet gridSheet = new Sheet();
+        gridSheet.setName("Grid Sheet");
+        gridSheet.setBook(book);
+        gridSheet = sheetRepository.save(gridSheet);
+        for (int row = 1; row <= 3; row++) {
+            for (String col : List.of("A", "B", "C")) {
+                cellRepository.save(new Cell(gridSheet, row, col, col + row, null));
+            }
+        }
+
+        mockMvc.perform(get("/cells").param("sheetId", gridSheet.getId().toString()).param("limit", "4"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.length()").value(4))
+            .andExpect(jsonPath("$.data[3].value").value("A2"))
+            .andExpect(jsonPath("$.nextCursor").value("A2"));
+
+        mockMvc.perform(get("/cells").param("sheetId", gridSheet.getId().toString()).param("limit", "4").param("after", "A2"))
+            .andExpect(jsonPath("$.data.length()").value(4))
+            .andExpect(jsonPath("$.data[0].value").value("B2"))
+            .andExpect(jsonPath("$.nextCursor").value("B3"));
+
+        mockMvc.perform(get("/cells").param("sheetId", gridSheet.getId().toString()).param("limit", "4").param("after", "B3"))
+            .andExpect(jsonPath("$.data.length()").value(1))
+            .andExpect(jsonPath("$.data[0].value").value("C3"))
+            .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        mockMvc.perform(get("/cells").param("sheetId", gridSheet.getId().toString()).param("range", "B2:C3"))
+            .andExpect(jsonPath("$.data.length()").value(4))
+            .andExpect(jsonPath("$.data[0].value").value("B2"))
+            .andExpect(jsonPath("$.data[3].value").value("C3"));
+
+        mockMvc.perform(get("/cells").param("sheetId", gridSheet.getId().toString()).param("range", "B2:C"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testColumnsSortAndFilterInGridOrder() throws Exception {
+        Sheet wideSheet = new Sheet();
+        wideSheet.setName("Wide Sheet");
+        wideSheet.setBook(book);
+        wideSheet = sheetRepository.save(wideSheet);
+        for (String col : List.of("AA", "B", "z", "AB")) {
+            cellRepository.save(new Cell(wideSheet, 1, col, "1", null));
+        }
+        cellRepository.save(new Cell(wideSheet, 2, "AA", "5", null));
+
+        // Letters would sort AA, AB, B, z; the column index gives B, z, AA, AB
+        mockMvc.perform(get("/cells").param("sheetId", wideSheet.getId().toString()))
+            .andExpect(jsonPath("$.data[*].colNum", contains("B", "z", "AA", "AB", "AA")));
+
+        List<Cell> range = cellRepository.findInRange(wideSheet.getId(), 1, 2, CellRef.columnIndex("Z"), CellRef.columnIndex("AA"));
+        assertEquals(List.of("z", "AA", "AA"), range.stream().map(Cell::getColNum).toList());
+        assertEquals(List.of("1", "1", "5"), cellRepository.findValuesInRange(wideSheet.getId(), 1, 2, 26, 27).stream().sorted().toList());
+    }
+
+    @Test
+    void testReadingCellsIsTwoQueries() throws Exception {
+        Sheet readSheet = new Sheet();
+        readSheet.setName("Read Sheet");
+        readSheet.setBook(book);
+        readSheet = sheetRepository.save(readSheet);
+        for (int row = 1; row <= 40; row++) {
+            cellRepository.save(new Cell(readSheet, row, "A", String.valueOf(row), null));
+        }
+
+        // The sheet lookup, then the cells themselves; neither fetches the sheet or book again per cell
+        String sheetId = readSheet.getId().toString();
+        assertEquals(2, statementsFor(get("/cells").param("sheetId", sheetId).param("limit", "25"),
+                jsonPath("$.data.length()").value(25)), counter.statements()::toString);
+        assertEquals(2, statementsFor(get("/cells").param("sheetId", sheetId).param("after", "A25"),
+                jsonPath("$.data.length()").value(15)), counter.statements()::toString);
+        assertEquals(2, statementsFor(get("/cells/" + sheetId + "/7/A"),
+                jsonPath("$.data.value").value("7")), counter.statements()::toString);
+    }
+
+    // Statements one request issues, starting from an empty persistence context and including its flushed writes
+    private int statementsFor(RequestBuilder request, ResultMatcher expected) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        counter.reset();
+        mockMvc.perform(request).andExpect(expected);
+        entityManager.flush();
+        return counter.count();
+    }
+
+    @Test
+    void testReadsAreConditionalOnTheSheetVersion() throws Exception {
+        Sheet versionedSheet = new Sheet();
+        versionedSheet.setName("Versioned Sheet");
+        versionedSheet.setBook(book);
+        versionedSheet = sheetRepository.save(versionedSheet);
+        String sheetId = versionedSheet.getId().toString();
+        cellRepository.save(new Cell(versionedSheet, 1, "A", "1", null));
+
+        String etag = mockMvc.perform(get("/cells").param("sheetId", sheetId))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader("ETag");
+        assertEquals("\"" + sheetId + "-0\"", etag);
+
+        // Only the sheet row is read to answer an unchanged poll
+        assertEquals(1, statementsFor(get("/cells").param("sheetId", sheetId).header("If-None-Match", etag),
+                status().isNotModified()), counter.statements()::toString);
+        mockMvc.perform(get("/sheets/" + sheetId).header("If-None-Match", etag))
+            .andExpect(status().isNotModified());
+        mockMvc.perform(get("/cells/" + sheetId + "/1/A").header("If-None-Match", etag))
+            .andExpect(status().isNotModified());
+
+        // Writes, including the one that recalculates A2, and deletes each move the version on once
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(
+                Map.of("sheet", Map.of("id", versionedSheet.getId()), "rowNum", 2, "colNum", "A", "formula", "=A1*2"))))
+            .andExpect(status().isCreated());
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(
+                Map.of("sheet", Map.of("id", versionedSheet.getId()), "rowNum", 1, "colNum", "A", "value", "5"))))
+            .andExpect(status().isOk());
+        mockMvc.perform(delete("/cells/" + sheetId + "/2/A"))
+            .andExpect(status().isOk());
+        entityManager.clear();
+
+        mockMvc.perform(get("/cells").param("sheetId", sheetId).header("If-None-Match", etag))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"" + sheetId + "-3\""))
+            .andExpect(jsonPath("$.data[0].value").value("5"));
+        mockMvc.perform(get("/sheets/" + sheetId))
+            .andExpect(header().string("ETag", "\"" + sheetId + "-3\""))
+            .andExpect(jsonPath("$.data.version").value(3));
+    }
+
+    @Test
+    void testChangesSinceVersionAreNetPerCell() throws Exception {
+        Sheet syncedSheet = new Sheet();
+        syncedSheet.setName("Synced Sheet");
+        syncedSheet.setBook(book);
+        syncedSheet = sheetRepository.save(syncedSheet);
+        String path = "/sheets/" + syncedSheet.getId() + "/changes";
+        postCell(syncedSheet, 1, "A", "1", null);
+        postCell(syncedSheet, 1, "C", "5", null);
+        postCell(syncedSheet, 1, "F", null, "=A1*10");
+
+        // The client's copy is at version 3; six more writes follow
+        postCell(syncedSheet, 1, "A", "2", null);
+        postCell(syncedSheet, 1, "A", "3", null);
+        postCell(syncedSheet, 1, "B", null, "=A1+1");
+        postCell(syncedSheet, 1, "D", "gone", null);
+        mockMvc.perform(delete("/cells/" + syncedSheet.getId() + "/1/D")).andExpect(status().isOk());
+        mockMvc.perform(delete("/cells/" + syncedSheet.getId() + "/1/C")).andExpect(status().isOk());
+        // The delta is read from the database, which has to see the deletes this test transaction holds back
+        entityManager.flush();
+        entityManager.clear();
+
+        // A1 once with its latest value, D1 not at all, and F1, which was only recalculated, as well
+        mockMvc.perform(get(path).param("since", "3"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.since").value(3))
+            .andExpect(jsonPath("$.data.version").value(9))
+            .andExpect(jsonPath("$.data.changes.length()").value(4))
+            .andExpect(jsonPath("$.data.changes[0].colNum").value("A"))
+            .andExpect(jsonPath("$.data.changes[0].operation").value("UPDATE"))
+            .andExpect(jsonPath("$.data.changes[0].value").value("3"))
+            .andExpect(jsonPath("$.data.changes[1].colNum").value("B"))
+            .andExpect(jsonPath("$.data.changes[1].operation").value("ADD"))
+            .andExpect(jsonPath("$.data.changes[1].value").value("4.0"))
+            .andExpect(jsonPath("$.data.changes[1].formula").value("=A1+1"))
+            .andExpect(jsonPath("$.data.changes[2].colNum").value("C"))
+            .andExpect(jsonPath("$.data.changes[2].operation").value("DELETE"))
+            .andExpect(jsonPath("$.data.changes[3].colNum").value("F"))
+            .andExpect(jsonPath("$.data.changes[3].operation").value("UPDATE"))
+            .andExpect(jsonPath("$.data.changes[3].value").value("30.0"));
+
+        // A client that is up to date costs one query
+        assertEquals(1, statementsFor(get(path).param("since", "9"), jsonPath("$.data.changes").isEmpty()),
+                counter.statements()::toString);
+        mockMvc.perform(get(path).param("since", "10"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get(path).param("since", "-1"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sheets/999999/changes").param("since", "0"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testCellCacheServesRecalculationAndEvictsOnRollback() throws Exception {
+        postCell(30, "A", "5", null);
+        // First formula write loads the sheet into the cache
+        postCell(30, "B", null, "=A30 * 3");
+        assertNotNull(sheetCellCache.peek(sheet.getId()));
+
+        long hitsBefore = sheetCellCache.getHits();
+        postCell(30, "A", "7", null);
+        assertTrue(sheetCellCache.getHits() > hitsBefore);
+
+        SheetCellCache.SheetCells cached = sheetCellCache.peek(sheet.getId());
+        assertEquals("21.0", cached.get(CellRef.parse("B30")).value());
+        mockMvc.perform(get("/cells/" + sheet.getId() + "/30/B"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.value").value("21.0"));
+
+        // A rolled back write must not leave its value behind in the cache
+        TestTransaction.flagForRollback();
+        TestTransaction.end();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                cellService.createOrUpdateCell(new Cell(sheet, 31, "A", null, "=A30 + 1"));
+                assertNotNull(sheetCellCache.peek(sheet.getId()));
+                status.setRollbackOnly();
+            });
+            assertNull(sheetCellCache.peek(sheet.getId()));
+        } finally {
+            TestTransaction.start();
+        }
+    }
+
+    @Test
+    void testRecalculationAndRequestMetricsAreRecorded() throws Exception {
+        // A40 -> B40 -> C40 and A40 -> D40: three formulas, at most two in a row
+        postCell(40, "A", "2", null);
+        postCell(40, "B", null, "=A40 + 1");
+        postCell(40, "C", null, "=B40 * 2");
+        postCell(40, "D", null, "=A40 * 10");
+
+        DistributionSummary cells = meterRegistry.get("recalculation.cells").summary();
+        DistributionSummary depth = meterRegistry.get("recalculation.depth").summary();
+        long recalculationsBefore = cells.count();
+        double cellsBefore = cells.totalAmount();
+        double depthBefore = depth.totalAmount();
+        long evaluationsBefore = meterRegistry.get("formula.evaluations").timer().count();
+
+        postCell(40, "A", "3", null);
+        assertEquals(recalculationsBefore + 1, cells.count());
+        assertEquals(cellsBefore + 3, cells.totalAmount());
+        assertEquals(depthBefore + 2, depth.totalAmount());
+        assertEquals(evaluationsBefore + 3, meterRegistry.get("formula.evaluations").timer().count());
+
+        // One timer per status: 201 for the new cells, 200 for the update
+        long cellPosts = meterRegistry.get("http.server.requests").tag("uri", "/cells").tag("method", "POST").timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+        assertTrue(cellPosts >= 5);
+        assertNotNull(meterRegistry.get("hikaricp.connections.pending").gauge());
+        assertNotNull(meterRegistry.get("cell_cache.gets").tag("result", "hit").functionCounter());
+    }
+
+    private void postCell(int rowNum, String colNum, String value, String formula) throws Exception {
+        postCell(sheet, rowNum, colNum, value, formula);
+    }
+
+    private void postCell(Sheet target, int rowNum, String colNum, String value, String formula) throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        body.put("sheet", Map.of("id", target.getId()));
+        body.put("rowNum", rowNum);
+        body.put("colNum", colNum);
+        body.put("value", value);
+        body.put("formula", formula);
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(body)))
+            .andExpect(status().is2xxSuccessful());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testConcurrentWritesAreLinearizedPerSheet() throws Exception {
+        int sheetCount = 4;
+        int threads = 16;
+        int incrementsPerThread = 10;
+
+        Book stressBook = new Book();
+        stressBook.setName("stress-book-" + System.nanoTime());
+        stressBook = bookRepository.save(stressBook);
+        try {
+            List<Sheet> sheets = new ArrayList<>();
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            for (int i = 0; i < sheetCount; i++) {
+                Sheet stressSheet = new Sheet();
+                stressSheet.setName("stress-" + i);
+                stressSheet.setBook(stressBook);
+                Sheet saved = sheetRepository.save(stressSheet);
+                sheets.add(saved);
+                tx.executeWithoutResult(status -> {
+                    cellService.createOrUpdateCell(new Cell(saved, 1, "A", "0", null));
+                    cellService.createOrUpdateCell(new Cell(saved, 1, "B", null, "=A1 * 2"));
+                    cellService.createOrUpdateCell(new Cell(saved, 1, "C", null, "=SUM(A1:B1)"));
+                });
+            }
+
+            // Read-modify-write of A1 under the sheet lock: any interleaving would lose increments
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Sheet target = sheets.get(t % sheetCount);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        tx.executeWithoutResult(status -> {
+                            sheetLocks.lock(target.getId());
+                            Cell a1 = cellService.getCellBySheetRowCol(target, 1, "A").orElseThrow();
+                            int next = Integer.parseInt(a1.getValue()) + 1;
+                            cellService.createOrUpdateCell(new Cell(target, 1, "A", String.valueOf(next), null));
+                        });
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            int expected = threads / sheetCount * incrementsPerThread;
+            for (Sheet target : sheets) {
+                assertEquals(String.valueOf(expected), cellRepository.findBySheetAndRowNumAndColNum(target, 1, "A").orElseThrow().getValue());
+                assertEquals(String.valueOf(expected * 2.0), cellRepository.findBySheetAndRowNumAndColNum(target, 1, "B").orElseThrow().getValue());
+                assertEquals(String.valueOf(expected * 3.0), cellRepository.findBySheetAndRowNumAndColNum(target, 1, "C").orElseThrow().getValue());
+                assertEquals(Set.of(CellRef.parse("B1"), CellRef.parse("C1")), dependencyGraphService.dependentsOf(target.getId(), CellRef.parse("A1")));
+            }
+        } finally {
+            Integer bookId = stressBook.getId();
+            activityLogRepository.deleteAll(activityLogRepository.findAll().stream()
+                    .filter(log -> bookId.equals(log.getBookId())).toList());
+            bookRepository.deleteById(bookId);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSubscribersReceiveCoalescedChangesAfterCommit() throws Exception {
+        Book eventBook = new Book();
+        eventBook.setName("event-book-" + System.nanoTime());
+        eventBook = bookRepository.save(eventBook);
+        try {
+            Sheet eventSheet = new Sheet();
+            eventSheet.setName("events");
+            eventSheet.setBook(eventBook);
+            Sheet saved = sheetRepository.save(eventSheet);
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.executeWithoutResult(status -> {
+                cellService.createOrUpdateCell(new Cell(saved, 1, "A", "1", null));
+                cellService.createOrUpdateCell(new Cell(saved, 1, "B", null, "=A1*2"));
+            });
+            long subscribedAt = sheetRepository.findVersionById(saved.getId()).orElseThrow();
+
+            MvcResult events = mockMvc.perform(get("/sheets/" + saved.getId() + "/events"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andReturn();
+            awaitEvent(events, "event:subscribed");
+
+            // Two writes to A1 in one window: one event with the last value of A1 and the recalculated B1
+            tx.executeWithoutResult(status -> cellService.createOrUpdateCell(new Cell(saved, 1, "A", "2", null)));
+            tx.executeWithoutResult(status -> cellService.createOrUpdateCell(new Cell(saved, 1, "A", "3", null)));
+            // Rolled back, so never published
+            tx.executeWithoutResult(status -> {
+                cellService.createOrUpdateCell(new Cell(saved, 1, "C", "rolled back", null));
+                status.setRollbackOnly();
+            });
+            sheetEventHub.flush();
+            // The hub also flushes by itself every window, so the two commits may arrive as one event or as two
+            String content = awaitEvent(events, "\"version\":" + (subscribedAt + 2));
+            Map<String, Object> client = new HashMap<>();
+            long clientVersion = subscribedAt;
+            for (String event : content.split("\n\n")) {
+                if (!event.startsWith("event:cells")) {
+                    continue;
+                }
+                String json = event.lines().filter(line -> line.startsWith("data:")).findFirst().orElseThrow().substring("data:".length());
+                Map<?, ?> data = objectMapper.readValue(json, Map.class);
+                assertTrue(((Number) data.get("since")).longValue() <= clientVersion, json);
+                for (Object change : (List<?>) data.get("changes")) {
+                    Map<Object, Object> cell = withoutNulls((Map<?, ?>) change);
+                    client.put(cell.get("colNum") + "" + cell.get("rowNum"), cell);
+                }
+                clientVersion = ((Number) data.get("version")).longValue();
+            }
+            assertEquals(subscribedAt + 2, clientVersion);
+            assertEquals(Map.of(
+                    "A1", Map.of("rowNum", 1, "colNum", "A", "operation", "UPDATE", "value", "3"),
+                    "B1", Map.of("rowNum", 1, "colNum", "B", "operation", "UPDATE", "value", "6.0", "formula", "=A1*2")), client);
+            assertFalse(content.contains("rolled back"));
+
+            mockMvc.perform(delete("/sheets/" + saved.getId())).andExpect(status().isOk());
+            awaitEvent(events, "event:deleted");
+
+            mockMvc.perform(get("/sheets/" + saved.getId() + "/events"))
+                .andExpect(status().isNotFound());
+        } finally {
+            Integer bookId = eventBook.getId();
+            activityLogRepository.deleteAll(activityLogRepository.findAll().stream()
+                    .filter(log -> bookId.equals(log.getBookId())).toList());
+            bookRepository.deleteById(bookId);
+        }
+    }
+
+    // Events are written by the hub's sender threads, so the response fills in asynchronously
+    private String awaitEvent(MvcResult result, String event) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            String content = result.getResponse().getContentAsString();
+            if (content.contains(event)) {
+                return content;
+            }
+            assertTrue(System.nanoTime() < deadline, "No " + event + " in: " + content);
+            Thread.sleep(20);
+        }
+    }
+
+    private static Map<Object, Object> withoutNulls(Map<?, ?> map) {
+        Map<Object, Object> copy = new HashMap<>();
+        map.forEach((key, value) -> {
+            if (value != null) {
+                copy.put(key, value);
+            }
+        });
+        return copy;
+    }
+
+    @Test
+    void testInvalidFormulaIsRejected() throws Exception {
+        Map<String, Object> requestBody = Map.of(
+            "sheet", Map.of("id", sheet.getId()),
+            "rowNum", 23,
+            "colNum", "A",
+            "formula", "=SUM(A1:A2"
+        );
+
+        mockMvc.perform(post("/cells")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requestBody)))
+            .andExpect(status().isBadRequest());
+    }
+
     void testPutCreatesNewCellIfNotExists() throws Exception {
         Map<String, Object> requestBody = Map.of(
             "sheet", Map.of("id", sheet.getId()),
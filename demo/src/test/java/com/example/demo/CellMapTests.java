@@ -0,0 +1,81 @@
+package com.example.demo;
+
+import com.example.demo.formula.CellMap;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CellSet;
+import com.example.demo.formula.RangeRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellMapTests {
+
+    @Test
+    void testPackRoundTripsAndSortsRowMajor() {
+        CellRef ref = CellRef.parse("XFD1048576");
+        assertEquals(ref, CellRef.unpack(ref.packed()));
+        assertTrue(CellRef.pack(1, CellRef.MAX_COLUMN) < CellRef.pack(2, 1));
+        assertTrue(CellRef.pack(2, 1) < CellRef.pack(2, 2));
+    }
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        CellMap<String> map = new CellMap<>();
+        CellSet set = new CellSet();
+        Map<CellRef, String> expected = new HashMap<>();
+
+        // A small grid forces long probe chains, removals in the middle of them and several resizes
+        for (int i = 0; i < 50_000; i++) {
+            CellRef ref = new CellRef(1 + random.nextInt(60), 1 + random.nextInt(40));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(ref), map.remove(ref.packed()));
+                set.remove(ref.packed());
+            } else {
+                String value = String.valueOf(i);
+                assertEquals(expected.put(ref, value), map.put(ref.packed(), value));
+                set.add(ref.packed());
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.size(), set.size());
+        }
+
+        expected.forEach((ref, value) -> {
+            assertEquals(value, map.get(ref.row(), ref.col()));
+            assertTrue(set.contains(ref.packed()));
+        });
+        assertEquals(expected.keySet(), set.toCellRefs());
+    }
+
+    @Test
+    void testForEachInRangeProbesOrScans() {
+        CellMap<String> map = new CellMap<>();
+        for (int row = 1; row <= 20; row++) {
+            for (int col = 1; col <= 5; col++) {
+                map.put(row, col, row + ":" + col);
+            }
+        }
+
+        // Smaller than the map: each coordinate is probed
+        assertEquals(Set.of("2:2", "2:3", "3:2", "3:3"), collect(map, RangeRef.parse("B2:C3")));
+        // Larger than the map: the table is scanned
+        Set<String> column = collect(map, RangeRef.parse("E1:E100000"));
+        assertEquals(20, column.size());
+        assertTrue(column.contains("20:5"));
+    }
+
+    private static Set<String> collect(CellMap<String> map, RangeRef range) {
+        Set<String> values = new HashSet<>();
+        map.forEachInRange(range, (row, col, value) -> {
+            assertTrue(range.contains(row, col));
+            values.add(value);
+        });
+        return values;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo;
+
+import com.example.demo.model.CellDependency;
+import com.example.demo.repository.CellDependencyRepository;
+import com.example.demo.service.DependencyGraphService;
+import com.example.demo.service.SheetLocks;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DependencyGraphServiceTests {
+
+    // Formula cells A1..A{formulas} of the sheet, each reading B1
+    private static List<CellDependency> formulas(int sheetId, int formulas) {
+        List<CellDependency> dependencies = new ArrayList<>();
+        for (int row = 1; row <= formulas; row++) {
+            dependencies.add(new CellDependency(null, sheetId, row, 1, 1, 2, 1, 2));
+        }
+        return dependencies;
+    }
+
+    private static CellDependencyRepository repository() {
+        CellDependencyRepository repository = mock(CellDependencyRepository.class);
+        when(repository.findBySheetId(1)).thenReturn(formulas(1, 2));
+        when(repository.findBySheetId(2)).thenReturn(formulas(2, 1));
+        when(repository.findBySheetId(3)).thenReturn(formulas(3, 1));
+        return repository;
+    }
+
+    @Test
+    void testLeastRecentlyUsedGraphsAreEvictedAndReloaded() {
+        CellDependencyRepository repository = repository();
+        DependencyGraphService service = new DependencyGraphService(repository, new SheetLocks(64, 0), 3);
+        service.graphFor(1);
+        service.graphFor(2);
+        assertEquals(2, service.getLoadedGraphs());
+
+        // Sheet 2 was used last, so loading sheet 3 evicts sheet 1
+        service.graphFor(2);
+        service.graphFor(3);
+        assertEquals(2, service.getLoadedGraphs());
+        assertEquals(2, service.graphFor(1).size());
+        verify(repository, times(2)).findBySheetId(1);
+        verify(repository, times(1)).findBySheetId(2);
+    }
+
+    @Test
+    void testGraphOfALockedSheetIsKept() {
+        CellDependencyRepository repository = repository();
+        SheetLocks sheetLocks = new SheetLocks(64, 0);
+        DependencyGraphService service = new DependencyGraphService(repository, sheetLocks, 2);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            sheetLocks.lock(1);
+            service.graphFor(1);
+            service.graphFor(2);
+            assertEquals(2, service.getLoadedGraphs());
+        } finally {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Once the writer is done, the next overflow check evicts it
+        service.graphFor(3);
+        assertEquals(2, service.getLoadedGraphs());
+        service.graphFor(2);
+        verify(repository, times(1)).findBySheetId(2);
+        service.graphFor(1);
+        verify(repository, times(2)).findBySheetId(1);
+    }
+}
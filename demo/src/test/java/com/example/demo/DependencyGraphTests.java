@@ -0,0 +1,114 @@
+package com.example.demo;
+
+import com.example.demo.exception.CircularReferenceException;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.DependencyGraph;
+import com.example.demo.formula.RangeRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyGraphTests {
+    private final DependencyGraph graph = new DependencyGraph();
+
+    private static CellRef ref(String ref) {
+        return CellRef.parse(ref);
+    }
+
+    private void formula(String cell, String... reads) {
+        List<RangeRef> ranges = Arrays.stream(reads).map(RangeRef::parse).toList();
+        graph.checkForCycle(ref(cell), ranges);
+        graph.setPrecedents(ref(cell), ranges);
+    }
+
+    @Test
+    void testDiamondIsOrderedAndEvaluatedOnce() {
+        // A1 -> B1, C1 -> D1
+        formula("B1", "A1");
+        formula("C1", "A1");
+        formula("D1", "B1", "C1");
+
+        List<CellRef> order = graph.recalculationOrder(List.of(ref("A1")));
+        assertEquals(3, order.size());
+        assertEquals(Set.of(ref("B1"), ref("C1"), ref("D1")), Set.copyOf(order));
+        assertEquals(ref("D1"), order.get(2));
+    }
+
+    @Test
+    void testChainFollowsInputs() {
+        formula("A3", "A2");
+        formula("A4", "A3", "A1");
+        formula("A2", "A1");
+
+        assertEquals(List.of(ref("A2"), ref("A3"), ref("A4")), graph.recalculationOrder(List.of(ref("A1"))));
+    }
+
+    @Test
+    void testDepthIsTheLongestChain() {
+        // A1 -> B1 -> C1 -> D1 and A1 -> D1 directly; E1 only fans out from A1
+        formula("B1", "A1");
+        formula("C1", "B1");
+        formula("D1", "C1", "A1");
+        formula("E1", "A1");
+
+        assertEquals(3, graph.depthOf(graph.recalculationOrder(List.of(ref("A1")))));
+        assertEquals(2, graph.depthOf(graph.recalculationOrder(List.of(ref("B1")))));
+        assertEquals(0, graph.depthOf(graph.recalculationOrder(List.of(ref("Z9")))));
+    }
+
+    @Test
+    void testRangeDependents() {
+        formula("B1", "A1:A10");
+        formula("C1", "B1");
+
+        assertEquals(List.of(ref("B1"), ref("C1")), graph.recalculationOrder(List.of(ref("A5"))));
+        assertTrue(graph.recalculationOrder(List.of(ref("A11"))).isEmpty());
+    }
+
+    @Test
+    void testRangesAreFoundAcrossRowBlocksAndWholeColumns() {
+        // Rows 60-70 straddle two blocks of the range index; C:C is too tall to index and is checked for every cell
+        formula("D1", "B60:C70");
+        formula("E1", "C1:C1048576");
+        formula("F1", "B60:C70", "B1:B2");
+
+        assertEquals(Set.of(ref("D1"), ref("F1")), graph.dependentsOf(ref("B64")));
+        assertEquals(Set.of(ref("D1"), ref("E1"), ref("F1")), graph.dependentsOf(ref("C70")));
+        assertEquals(Set.of(ref("E1")), graph.dependentsOf(ref("C71")));
+        assertTrue(graph.dependentsOf(ref("B71")).isEmpty());
+
+        // Dropping the last reader of a range takes it out of the index
+        formula("D1", "A1");
+        formula("F1", "A1");
+        formula("E1", "A1");
+        assertTrue(graph.dependentsOf(ref("B64")).isEmpty());
+        assertTrue(graph.dependentsOf(ref("C500")).isEmpty());
+    }
+
+    @Test
+    void testReplacingPrecedentsDropsOldEdges() {
+        formula("B1", "A1");
+        formula("B1", "A2");
+
+        assertTrue(graph.dependentsOf(ref("A1")).isEmpty());
+        assertEquals(Set.of(ref("B1")), graph.dependentsOf(ref("A2")));
+    }
+
+    @Test
+    void testCyclesAreRejected() {
+        assertThrows(CircularReferenceException.class, () -> formula("A1", "A1"));
+        assertThrows(CircularReferenceException.class, () -> formula("A5", "A1:A10"));
+
+        formula("B1", "A1");
+        formula("C1", "B1");
+        assertThrows(CircularReferenceException.class, () -> formula("A1", "C1"));
+        assertThrows(CircularReferenceException.class, () -> formula("A1", "B1:C1"));
+
+        // The rejected formulas left the graph untouched
+        assertTrue(graph.precedentsOf(ref("A1")).isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo;
+
+import com.example.demo.exception.FormulaException;
+import com.example.demo.formula.CellRef;
+import com.example.demo.formula.CompiledFormula;
+import com.example.demo.formula.FormulaCompiler;
+import com.example.demo.formula.RangeRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaCompilerTests {
+    private final FormulaCompiler compiler = new FormulaCompiler(100);
+    private final Map<String, String> values = new HashMap<>();
+
+    private double eval(String formula) {
+        return compiler.compile(formula).evaluate((row, col) -> values.get(CellRef.columnName(col) + row));
+    }
+
+    @Test
+    void testSimpleReferences() {
+        values.put("A1", "8");
+        values.put("A2", "18");
+        assertEquals(26.0, eval("=A1+A2"));
+        assertEquals(-10.0, eval("=A1 - A2"));
+        assertEquals(0.0, eval("=A1/B7"));
+    }
+
+    @Test
+    void testPrecedenceAndParentheses() {
+        values.put("A1", "2");
+        assertEquals(14.0, eval("=2+3*4"));
+        assertEquals(20.0, eval("=(2+3)*4"));
+        assertEquals(-6.0, eval("=-A1*3"));
+        assertEquals(512.0, eval("=2^3^2"));
+        assertEquals(1.5, eval("=3/A1"));
+    }
+
+    @Test
+    void testStoredNumbersParseLikeDoubleParseDouble() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String text = (random.nextBoolean() ? "-" : "") + Math.abs(random.nextLong() % 100_000_000_000L)
+                    + (random.nextBoolean() ? "." + random.nextInt(1_000_000) : "");
+            values.put("A1", text);
+            assertEquals(Double.parseDouble(text), eval("=A1"), text);
+        }
+        for (String text : List.of("21.0", "0.1", "9007199254740993", "1e3", " 4.5 ", "+7", ".5", "5.", "-0", "NaN")) {
+            values.put("A1", text);
+            assertEquals(Double.parseDouble(text.trim()), eval("=A1"), text);
+        }
+        values.put("A1", "12abc");
+        assertThrows(FormulaException.class, () -> eval("=A1"));
+    }
+
+    @Test
+    void testFunctionsOverRanges() {
+        values.put("A1", "1");
+        values.put("A2", "2");
+        values.put("A3", "text");
+        values.put("B1", "10");
+        assertEquals(13.0, eval("=SUM(A1:B3)"));
+        assertEquals(13.0, eval("=SUM(B3:A1)"));
+        assertEquals(3.0, eval("=COUNT(A1:B3)"));
+        assertEquals(1.0, eval("=MIN(A1:A3)"));
+        assertEquals(10.0, eval("=MAX(A1:A3, B1)"));
+        assertEquals(1.5, eval("=AVG(A1:A2)"));
+        assertEquals(5.0, eval("=IF(SUM(A1:A2) >= 3, 5, 6)"));
+        assertEquals(6.0, eval("=if(A1 <> 1, 5, 6)"));
+    }
+
+    @Test
+    void testReferencesAreCollected() {
+        CompiledFormula compiled = compiler.compile("=A1 + SUM(B2:C3) * D4");
+        assertEquals(Set.of(CellRef.parse("A1"), CellRef.parse("D4")), compiled.getCellRefs());
+        assertEquals(List.of(RangeRef.parse("B2:C3")), compiled.getRangeRefs());
+    }
+
+    @Test
+    void testCompiledFormulasAreCached() {
+        CompiledFormula first = compiler.compile("=A1+A2");
+        assertSame(first, compiler.compile("= A1+A2 "));
+        assertEquals(1, compiler.cacheSize());
+    }
+
+    @Test
+    void testInvalidFormulas() {
+        assertThrows(FormulaException.class, () -> compiler.compile("=A1+"));
+        assertThrows(FormulaException.class, () -> compiler.compile("=(A1+A2"));
+        assertThrows(FormulaException.class, () -> compiler.compile("=FOO(A1)"));
+        assertThrows(FormulaException.class, () -> compiler.compile("=IF(A1, 2)"));
+        assertThrows(FormulaException.class, () -> eval("=A1:A3"));
+
+        values.put("A1", "abc");
+        assertThrows(FormulaException.class, () -> eval("=A1+1"));
+    }
+
+    @Test
+    void testColumnConversion() {
+        assertEquals(1, CellRef.columnIndex("A"));
+        assertEquals(27, CellRef.columnIndex("AA"));
+        assertEquals(16384, CellRef.columnIndex("XFD"));
+        assertEquals("AZ", CellRef.columnName(52));
+        assertEquals("B12", CellRef.parse("b12").toString());
+    }
+}
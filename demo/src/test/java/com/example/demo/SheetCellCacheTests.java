@@ -0,0 +1,75 @@
+package com.example.demo;
+
+import com.example.demo.formula.CellRef;
+import com.example.demo.model.Cell;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.service.SheetCellCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SheetCellCacheTests {
+
+    private static CellRepository repository(int sheetId, List<Cell> cells) {
+        CellRepository repository = mock(CellRepository.class);
+        stubSheet(repository, sheetId, cells);
+        return repository;
+    }
+
+    private static void stubSheet(CellRepository repository, int sheetId, List<Cell> cells) {
+        when(repository.countBySheetId(sheetId)).thenReturn((long) cells.size());
+        when(repository.findRowsForBatch(eq(sheetId), anyInt(), anyInt())).thenReturn(cells);
+    }
+
+    private static Cell cell(int row, String colNum) {
+        return new Cell(null, row, colNum, "1", null);
+    }
+
+    @Test
+    void testWritesThatGrowTheCacheEvictTheLeastRecentlyUsedSheet() {
+        CellRepository repository = repository(1, List.of(cell(1, "A"), cell(2, "A")));
+        stubSheet(repository, 2, List.of(cell(1, "A")));
+        SheetCellCache cache = new SheetCellCache(repository, 3);
+        assertNotNull(cache.sheet(1));
+        assertNotNull(cache.sheet(2));
+        assertEquals(3, cache.getCachedCells());
+
+        // Overwriting a cell does not grow the sheet; a new one pushes the cache past its bound
+        cache.put(2, CellRef.of(1, "A"), "2", null);
+        assertEquals(2, cache.getCachedSheets());
+        cache.put(2, CellRef.of(2, "A"), "3", null);
+
+        assertNull(cache.peek(1));
+        assertNotNull(cache.peek(2));
+        assertEquals(2, cache.getCachedCells());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void testSheetThatOutgrowsTheCacheIsDroppedAndCountedAgainOnceItShrinks() {
+        CellRepository repository = repository(1, List.of(cell(1, "A")));
+        SheetCellCache cache = new SheetCellCache(repository, 2);
+        assertNotNull(cache.sheet(1));
+
+        cache.put(1, CellRef.of(2, "A"), "2", null);
+        assertNotNull(cache.peek(1));
+        cache.put(1, CellRef.of(3, "A"), "3", null);
+        assertNull(cache.peek(1));
+
+        stubSheet(repository, 1, List.of(cell(1, "A"), cell(2, "A"), cell(3, "A")));
+        assertNull(cache.sheet(1));
+        assertNull(cache.sheet(1));
+        verify(repository, times(2)).countBySheetId(1);
+
+        // A delete may bring the sheet back under the bound, so its next load counts it again
+        stubSheet(repository, 1, List.of(cell(1, "A"), cell(2, "A")));
+        cache.remove(1, CellRef.of(3, "A"));
+        assertNotNull(cache.sheet(1));
+        assertEquals(2, cache.getCachedCells());
+    }
+}
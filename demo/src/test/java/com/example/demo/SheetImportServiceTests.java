@@ -0,0 +1,56 @@
+package com.example.demo;
+
+import com.example.demo.model.Sheet;
+import com.example.demo.service.CellService;
+import com.example.demo.service.ImportJob;
+import com.example.demo.service.SheetDataFormat;
+import com.example.demo.service.SheetImportService;
+import com.example.demo.service.SheetLocks;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class SheetImportServiceTests {
+
+    private static ImportJob await(SheetImportService service, Sheet sheet, String csv) throws Exception {
+        ImportJob job = service.submit(sheet, SheetDataFormat.CSV, false, new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (job.getStatus() != ImportJob.Status.COMPLETED && job.getStatus() != ImportJob.Status.FAILED && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return job;
+    }
+
+    @Test
+    void testUnexpectedFailuresAreCountedAndBadInputIsNot() throws Exception {
+        CellService cellService = mock(CellService.class);
+        when(cellService.importCells(any(), anyList())).thenThrow(new DataAccessResourceFailureException("connection lost"));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SheetImportService service = new SheetImportService(cellService, new SheetLocks(64, 0), new ObjectMapper(), 10, 1, meterRegistry);
+        Sheet sheet = new Sheet();
+        sheet.setId(1);
+        try {
+            ImportJob job = await(service, sheet, "x,A,1,\n");
+            assertEquals(ImportJob.Status.FAILED, job.getStatus());
+            assertTrue(job.getError().contains("line 1"), job.getError());
+            assertEquals(0, meterRegistry.get("background.failures").tag("task", "sheet-import").counter().count());
+
+            job = await(service, sheet, "1,A,1,\n");
+            assertEquals(ImportJob.Status.FAILED, job.getStatus());
+            assertEquals("connection lost", job.getError());
+            assertEquals(1, meterRegistry.get("background.failures").tag("task", "sheet-import").counter().count());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -1,32 +1,61 @@
 package com.example.demo;
 
+import com.example.demo.dto.ActivityLogPartition;
 import com.example.demo.model.Book;
+import com.example.demo.model.Cell;
 import com.example.demo.model.Sheet;
+import com.example.demo.model.SheetSnapshot;
 import com.example.demo.model.ActivityLog;
 import com.example.demo.model.ActivityLog.EntityType;
 import com.example.demo.model.ActivityLog.OperationType;
 import com.example.demo.repository.BookRepository;
 import com.example.demo.repository.SheetRepository;
 import com.example.demo.repository.ActivityLogRepository;
+import com.example.demo.repository.CellRepository;
+import com.example.demo.repository.SheetSnapshotRepository;
+import com.example.demo.service.ActivityLogArchiver;
+import com.example.demo.service.SheetSnapshotService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "activity-log.async=false")
 @AutoConfigureMockMvc
 @Transactional
+@Import(SqlStatementCounter.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class SheetIntegrationTests {
 
@@ -35,6 +64,13 @@ public class SheetIntegrationTests {
     @Autowired private BookRepository bookRepository;
     @Autowired private SheetRepository sheetRepository;
     @Autowired private ActivityLogRepository activityLogRepository;
+    @Autowired private CellRepository cellRepository;
+    @Autowired private EntityManager entityManager;
+    @Autowired private SqlStatementCounter counter;
+    @Autowired private SheetSnapshotService sheetSnapshotService;
+    @Autowired private SheetSnapshotRepository sheetSnapshotRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private ActivityLogArchiver activityLogArchiver;
 
     private Book testBook;
 
@@ -193,4 +229,517 @@ public class SheetIntegrationTests {
         List<ActivityLog> logs = activityLogRepository.findByEntityType(EntityType.SHEET);
         assertTrue(logs.stream().noneMatch(log -> log.getOperation() == OperationType.DELETE));
     }
+
+    @Test
+    void testListingSheetsIsOneQuery() throws Exception {
+        Sheet sheet = null;
+        for (int i = 0; i < 3; i++) {
+            Book book = new Book();
+            book.setName("list-book-" + i);
+            book = bookRepository.save(book);
+            sheet = new Sheet();
+            sheet.setName("list");
+            sheet.setBook(book);
+            sheet = sheetRepository.save(sheet);
+        }
+
+        // Books are not loaded one per sheet
+        assertEquals(1, statementsFor(get("/sheets"), status().isOk()), counter.statements()::toString);
+        assertEquals(1, statementsFor(get("/sheets/" + sheet.getId()), status().isOk()), counter.statements()::toString);
+    }
+
+    @Test
+    void testDeletingSheetDoesNotLoadItsCells() throws Exception {
+        Sheet empty = new Sheet();
+        empty.setName("delete-empty");
+        empty.setBook(testBook);
+        empty = sheetRepository.save(empty);
+        Sheet full = new Sheet();
+        full.setName("delete-full");
+        full.setBook(testBook);
+        full = sheetRepository.save(full);
+        for (int row = 1; row <= 50; row++) {
+            cellRepository.save(new Cell(full, row, "A", String.valueOf(row), null));
+        }
+
+        int emptyStatements = statementsFor(delete("/sheets/" + empty.getId()), status().isOk());
+        int fullStatements = statementsFor(delete("/sheets/" + full.getId()), status().isOk());
+        assertEquals(emptyStatements, fullStatements, counter.statements()::toString);
+        assertEquals(3, fullStatements, counter.statements()::toString);
+        assertEquals(0, cellRepository.countBySheetId(full.getId()));
+    }
+
+    @Test
+    void testRangeReadReturnsDenseArrays() throws Exception {
+        Sheet sheet = new Sheet();
+        sheet.setName("range");
+        sheet.setBook(testBook);
+        sheet = sheetRepository.save(sheet);
+        cellRepository.save(new Cell(sheet, 2, "B", "1", null));
+        cellRepository.save(new Cell(sheet, 3, "C", "2.0", "=B2*2"));
+        cellRepository.save(new Cell(sheet, 2, "D", "x", null));
+        cellRepository.save(new Cell(sheet, 9, "B", "outside", null));
+
+        String etag = mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/B2:D3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.range").value("B2:D3"))
+                .andExpect(jsonPath("$.data.layout").value("rows"))
+                .andExpect(jsonPath("$.data.values", hasSize(2)))
+                .andExpect(jsonPath("$.data.values[0]", contains("1", null, "x")))
+                .andExpect(jsonPath("$.data.values[1]", contains(null, "2.0", null)))
+                .andExpect(jsonPath("$.data.formulas").doesNotExist())
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/d3:b2").param("layout", "columns").param("formulas", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.values", hasSize(3)))
+                .andExpect(jsonPath("$.data.values[0]", contains("1", null)))
+                .andExpect(jsonPath("$.data.values[1]", contains(null, "2.0")))
+                .andExpect(jsonPath("$.data.formulas[1]", contains(null, "=B2*2")));
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/B2:D3").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // The sheet lookup for the ETag, then its version and the cells in one range scan
+        assertEquals(3, statementsFor(get("/sheets/" + sheet.getId() + "/range/A1:Z1000"), status().isOk()), counter.statements()::toString);
+
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/A1:ZZ100000"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/B2:D3").param("layout", "diagonal"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/B2:3"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sheets/999999/range/A1:B2"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testRangeReadIsSmallerThanCellList() throws Exception {
+        Sheet sheet = new Sheet();
+        sheet.setName("range-size");
+        sheet.setBook(testBook);
+        sheet = sheetRepository.save(sheet);
+        List<Cell> cells = new ArrayList<>();
+        for (int row = 1; row <= 100; row++) {
+            for (String col : List.of("A", "B", "C", "D", "E", "F", "G", "H", "I", "J")) {
+                cells.add(new Cell(sheet, row, col, String.valueOf(row * 10), null));
+            }
+        }
+        cellRepository.saveAll(cells);
+
+        int dense = mockMvc.perform(get("/sheets/" + sheet.getId() + "/range/A1:J100"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray().length;
+        int list = mockMvc.perform(get("/cells").param("sheetId", String.valueOf(sheet.getId())).param("range", "A1:J100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(1000)))
+                .andReturn().getResponse().getContentAsByteArray().length;
+        assertTrue(dense * 4 < list, dense + " bytes dense, " + list + " bytes as a list");
+    }
+
+    @Test
+    void testRangeWriteAppliesOnlyTheDifference() throws Exception {
+        Sheet sheet = new Sheet();
+        sheet.setName("range-write");
+        sheet.setBook(testBook);
+        sheet = sheetRepository.save(sheet);
+        String range = "/sheets/" + sheet.getId() + "/range/A1:C2";
+
+        String first = writeRange(range, "{\"values\": [[1, \"2\", \"=A1+B1\"], [\"x\", null, \"=C1*2\"]]}")
+                .andExpect(jsonPath("$.data.created").value(5))
+                .andExpect(jsonPath("$.data.unchanged").value(1))
+                .andReturn().getResponse().getContentAsString();
+        long v1 = objectMapper.readTree(first).get("data").get("version").asLong();
+        mockMvc.perform(get(range))
+                .andExpect(jsonPath("$.data.values[0]", contains("1", "2", "3.0")))
+                .andExpect(jsonPath("$.data.values[1]", contains("x", null, "6.0")));
+
+        // B1 changes and A2 is cleared; the formulas are left as they were but depend on B1
+        writeRange(range, "{\"values\": [[\"1\", \"5\", \"=A1+B1\"], [\"\", null, \"=C1*2\"]]}")
+                .andExpect(jsonPath("$.data.version").value(v1 + 1))
+                .andExpect(jsonPath("$.data.created").value(0))
+                .andExpect(jsonPath("$.data.updated").value(1))
+                .andExpect(jsonPath("$.data.deleted").value(1))
+                .andExpect(jsonPath("$.data.unchanged").value(4))
+                .andExpect(jsonPath("$.data.recalculated").value(2));
+        mockMvc.perform(get(range).param("layout", "columns"))
+                .andExpect(jsonPath("$.data.values[0]", contains("1", null)))
+                .andExpect(jsonPath("$.data.values[2]", contains("6.0", "12.0")));
+
+        // The same contents again change nothing, not even the version
+        writeRange(range, "{\"values\": [[\"1\", \"5\", \"=A1+B1\"], [null, null, \"=C1*2\"]]}")
+                .andExpect(jsonPath("$.data.version").value(v1 + 1))
+                .andExpect(jsonPath("$.data.unchanged").value(6));
+
+        // One grouped entry per write, which history and delta reads expand cell by cell
+        mockMvc.perform(get("/activity").param("sheetId", String.valueOf(sheet.getId())))
+                .andExpect(jsonPath("$.data[*].entityType", contains("RANGE", "RANGE")))
+                .andExpect(jsonPath("$.data[*].value", contains("A1:C2", "A1:C2")))
+                .andExpect(jsonPath("$.data[*].changeCount", contains(2, 5)))
+                .andExpect(jsonPath("$.data[0].changes").doesNotExist());
+        mockMvc.perform(get("/sheets/" + sheet.getId()).param("version", String.valueOf(v1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.cells[*].value", contains("1", "2", "3.0", "x", "6.0")));
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/changes").param("since", String.valueOf(v1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.changes[*].colNum", contains("B", "C", "A", "C")))
+                .andExpect(jsonPath("$.data.changes[*].operation", contains("UPDATE", "UPDATE", "DELETE", "UPDATE")))
+                .andExpect(jsonPath("$.data.changes[*].value", contains("5", "6.0", null, "12.0")));
+        mockMvc.perform(get("/sheets/" + sheet.getId() + "/diff").param("from", "0").param("to", String.valueOf(v1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.changes", hasSize(5)))
+                .andExpect(jsonPath("$.data.changes[*].operation", everyItem(is("ADD"))));
+    }
+
+    @Test
+    void testRangeWriteStatementsDoNotGrowWithTheRange() throws Exception {
+        Sheet sheet = new Sheet();
+        sheet.setName("range-write-size");
+        sheet.setBook(testBook);
+        sheet = sheetRepository.save(sheet);
+
+        writeRange("/sheets/" + sheet.getId() + "/range/L1:L1", "{\"values\": [[\"warm-up\"]]}");
+        int small = statementsFor(put("/sheets/" + sheet.getId() + "/range/A1:J1").contentType(MediaType.APPLICATION_JSON)
+                .content(rangeValues(1, 10, "a")), status().isOk());
+        int large = statementsFor(put("/sheets/" + sheet.getId() + "/range/A2:J101").contentType(MediaType.APPLICATION_JSON)
+                .content(rangeValues(100, 10, "a")), status().isOk());
+        assertEquals(small, large, counter.statements()::toString);
+        // Inserts, updates and deletes are a batch each, whichever of them a write needs
+        String mixed = rangeValues(100, 10, "b").replace("\"b-1-1\"", "null");
+        int rewrite = statementsFor(put("/sheets/" + sheet.getId() + "/range/A2:J101").contentType(MediaType.APPLICATION_JSON)
+                .content(mixed), status().isOk());
+        assertEquals(large, rewrite, counter.statements()::toString);
+        // Four log rows, counted by the cells they changed
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activity_log WHERE sheet_id = ?", Integer.class, sheet.getId()));
+        assertEquals(1 + 10 + 1000 + 1000, activityLogRepository.countSheetEntries(sheet.getId(), -1));
+
+        String path = "/sheets/" + sheet.getId() + "/range/A1:B2";
+        writeRange(path, "{\"values\": [[\"1\"]]}", status().isBadRequest());
+        writeRange(path, "{\"values\": [[\"1\", \"2\"], [\"3\"]]}", status().isBadRequest());
+        writeRange(path, "{\"values\": [[\"1\", {\"a\": 1}], [\"3\", \"4\"]]}", status().isBadRequest());
+        writeRange(path, "{}", status().isBadRequest());
+        writeRange(path + "?layout=diagonal", "{\"values\": [[\"1\", \"2\"], [\"3\", \"4\"]]}", status().isBadRequest());
+        writeRange(path, "{\"values\": [[\"=B1\", \"=A1\"], [null, null]]}", status().isBadRequest());
+        writeRange("/sheets/999999/range/A1:A1", "{\"values\": [[\"1\"]]}", status().isNotFound());
+    }
+
+    private ResultActions writeRange(String path, String body) throws Exception {
+        return writeRange(path, body, status().isOk());
+    }
+
+    private ResultActions writeRange(String path, String body, ResultMatcher expected) throws Exception {
+        return mockMvc.perform(put(path).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(expected);
+    }
+
+    // {"values": [...]} with rows x cols distinct strings
+    private String rangeValues(int rows, int cols, String prefix) throws Exception {
+        List<List<String>> values = new ArrayList<>();
+        for (int row = 1; row <= rows; row++) {
+            List<String> line = new ArrayList<>();
+            for (int col = 1; col <= cols; col++) {
+                line.add(prefix + "-" + row + "-" + col);
+            }
+            values.add(line);
+        }
+        return objectMapper.writeValueAsString(Map.of("values", values));
+    }
+
+    // Statements one request issues, starting from an empty persistence context and including its flushed writes
+    private int statementsFor(RequestBuilder request, ResultMatcher expected) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        counter.reset();
+        mockMvc.perform(request).andExpect(expected);
+        entityManager.flush();
+        return counter.count();
+    }
+
+    // The export runs on its own thread and connection, so its data has to be committed first
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testExportSheetStreamsCsvNdjsonAndGzip() throws Exception {
+        Book exportBook = new Book();
+        exportBook.setName("export-book-" + System.nanoTime());
+        exportBook = bookRepository.save(exportBook);
+        try {
+            Sheet sheet = new Sheet();
+            sheet.setName("export");
+            sheet.setBook(exportBook);
+            sheet = sheetRepository.save(sheet);
+            cellRepository.save(new Cell(sheet, 2, "A", "hello, \"world\"", null));
+            cellRepository.save(new Cell(sheet, 1, "B", "3.0", "=A1+1"));
+            cellRepository.save(new Cell(sheet, 1, "A", "2", null));
+
+            String csv = export(sheet.getId(), "csv", false);
+            assertEquals("rowNum,colNum,value,formula\n1,A,2,\n1,B,3.0,=A1+1\n2,A,\"hello, \"\"world\"\"\",\n", csv);
+
+            String ndjson = export(sheet.getId(), "ndjson", false);
+            String[] lines = ndjson.split("\n");
+            assertEquals(3, lines.length);
+            assertEquals("=A1+1", objectMapper.readTree(lines[1]).get("formula").asText());
+
+            assertEquals(csv, export(sheet.getId(), "csv", true));
+        } finally {
+            bookRepository.deleteById(exportBook.getId());
+        }
+    }
+
+    private String export(Integer sheetId, String format, boolean gzip) throws Exception {
+        MvcResult started = mockMvc.perform(get("/sheets/" + sheetId + "/export")
+                .param("format", format).param("gzip", String.valueOf(gzip)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        if (gzip) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            }
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testExportUnknownSheetOrFormat() throws Exception {
+        MvcResult missing = mockMvc.perform(get("/sheets/999999/export")).andReturn();
+        mockMvc.perform(asyncDispatch(missing))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message", containsString("not found")));
+
+        MvcResult badFormat = mockMvc.perform(get("/sheets/999999/export").param("format", "xlsx")).andReturn();
+        mockMvc.perform(asyncDispatch(badFormat))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testImportSheetFromCsvAndNdjson() throws Exception {
+        Book importBook = new Book();
+        importBook.setName("import-book-" + System.nanoTime());
+        importBook = bookRepository.save(importBook);
+        try {
+            Sheet sheet = new Sheet();
+            sheet.setName("import");
+            sheet.setBook(importBook);
+            sheet = sheetRepository.save(sheet);
+
+            String csv = "rowNum,colNum,value,formula\n1,A,2,\n1,b,,=A1*10\n2,A,\"x, \"\"y\"\"\",\n2,A,4,\n";
+            JsonNode job = awaitImport(sheet.getId(), "csv", csv);
+            assertEquals("COMPLETED", job.get("status").asText(), job.toString());
+            assertEquals(3, job.get("created").asInt());
+            assertEquals(3, job.get("rowsRead").asInt());
+            assertEquals("20.0", cellRepository.findBySheetAndRowNumAndColNum(sheet, 1, "B").orElseThrow().getValue());
+            assertEquals("4", cellRepository.findBySheetAndRowNumAndColNum(sheet, 2, "A").orElseThrow().getValue());
+
+            job = awaitImport(sheet.getId(), "ndjson", "{\"rowNum\":1,\"colNum\":\"A\",\"value\":\"5\"}\n");
+            assertEquals("COMPLETED", job.get("status").asText(), job.toString());
+            assertEquals(1, job.get("updated").asInt());
+            assertEquals(1, job.get("recalculated").asInt());
+            assertEquals("50.0", cellRepository.findBySheetAndRowNumAndColNum(sheet, 1, "B").orElseThrow().getValue());
+
+            // A bad row fails the job and leaves the sheet untouched
+            job = awaitImport(sheet.getId(), "csv", "1,A,7,\nx,A,8,\n");
+            assertEquals("FAILED", job.get("status").asText());
+            assertTrue(job.get("error").asText().contains("line 2"), job.toString());
+            assertEquals("5", cellRepository.findBySheetAndRowNumAndColNum(sheet, 1, "A").orElseThrow().getValue());
+
+            // Each chunk commits on its own, so a bad row in the second chunk keeps the first
+            StringBuilder chunks = new StringBuilder();
+            for (int row = 1; row < 5000; row++) {
+                chunks.append(row).append(",C,").append(row).append(",\n");
+            }
+            chunks.append("1,D,,=C5001*1\n5001,C,9,\nx,C,1,\n");
+            job = awaitImport(sheet.getId(), "csv", chunks.toString());
+            assertEquals("FAILED", job.get("status").asText());
+            assertEquals(5000, job.get("rowsRead").asInt());
+            assertEquals("4999", cellRepository.findBySheetAndRowNumAndColNum(sheet, 4999, "C").orElseThrow().getValue());
+            assertTrue(cellRepository.findBySheetAndRowNumAndColNum(sheet, 5001, "C").isEmpty());
+
+            // Formulas from earlier chunks are evaluated again once a later chunk writes what they read
+            job = awaitImport(sheet.getId(), "ndjson", "{\"rowNum\":5001,\"colNum\":\"C\",\"value\":\"9\"}\n");
+            assertEquals("COMPLETED", job.get("status").asText(), job.toString());
+            assertEquals(1, job.get("recalculated").asInt());
+            assertEquals("9.0", cellRepository.findBySheetAndRowNumAndColNum(sheet, 1, "D").orElseThrow().getValue());
+        } finally {
+            // Committed activity rows would leak into other tests' log counts
+            Integer bookId = importBook.getId();
+            activityLogRepository.deleteAll(activityLogRepository.findAll().stream()
+                    .filter(log -> bookId.equals(log.getBookId())).toList());
+            bookRepository.deleteById(bookId);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSheetAtEarlierVersionsAndDiffs() throws Exception {
+        Book historyBook = new Book();
+        historyBook.setName("history-book-" + System.nanoTime());
+        historyBook = bookRepository.save(historyBook);
+        try {
+            String created = mockMvc.perform(post("/sheets")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"name\": \"history\", \"book\": {\"id\": " + historyBook.getId() + "}}"))
+                    .andExpect(status().isCreated())
+                    .andReturn().getResponse().getContentAsString();
+            int sheetId = objectMapper.readTree(created).get("data").get("id").asInt();
+
+            long v1 = writeCell(sheetId, "A", "1", null);
+            long v2 = writeCell(sheetId, "B", null, "=A1*2");
+            sheetSnapshotService.takeSnapshot(sheetId);
+            long v3 = writeCell(sheetId, "A", "5", null);
+            long v4 = writeCell(sheetId, "C", "7", null);
+            mockMvc.perform(put("/sheets/" + sheetId).contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"renamed\"}"))
+                    .andExpect(status().isOk());
+            mockMvc.perform(delete("/cells/" + sheetId + "/1/C")).andExpect(status().isOk());
+            long v6 = sheetRepository.findVersionById(sheetId).orElseThrow();
+
+            List<SheetSnapshot> snapshots = sheetSnapshotRepository.findAll().stream()
+                    .filter(snapshot -> snapshot.getSheetId() == sheetId).toList();
+            assertEquals(List.of(v2), snapshots.stream().map(SheetSnapshot::getVersion).toList());
+
+            // Before the snapshot the whole log is replayed; after it only the tail, with B1 evaluated again
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v1)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.name").value("history"))
+                    .andExpect(jsonPath("$.data.cells[*].colNum", contains("A")))
+                    .andExpect(jsonPath("$.data.cells[0].value").value("1"));
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v3)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.version").value(v3))
+                    .andExpect(jsonPath("$.data.cells[*].value", contains("5", "10.0")));
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v6)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.name").value("renamed"))
+                    .andExpect(jsonPath("$.data.cells[*].colNum", contains("A", "B")));
+
+            mockMvc.perform(get("/sheets/" + sheetId + "/diff").param("from", String.valueOf(v2)).param("to", String.valueOf(v6)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.changes[*].colNum", contains("A", "B")))
+                    .andExpect(jsonPath("$.data.changes[*].operation", contains("UPDATE", "UPDATE")))
+                    .andExpect(jsonPath("$.data.changes[*].value", contains("5", "10.0")));
+            mockMvc.perform(get("/sheets/" + sheetId + "/diff").param("from", String.valueOf(v3)).param("to", String.valueOf(v4)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.changes[*].operation", contains("ADD")));
+
+            // Pretend everything up to v2 happened long ago
+            jdbcTemplate.update("UPDATE activity_log SET updated_at = '2020-01-01 00:00:00' WHERE sheet_id = ? AND sheet_version <= ?", sheetId, v2);
+            mockMvc.perform(get("/sheets/" + sheetId).param("asOf", "2020-01-01T00:00:30"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.version").value(v2))
+                    .andExpect(jsonPath("$.data.cells[*].value", contains("1", "2.0")));
+            mockMvc.perform(get("/sheets/" + sheetId).param("asOf", "2019-12-31T23:59:59"))
+                    .andExpect(status().isNotFound());
+            mockMvc.perform(get("/sheets/" + sheetId).param("asOf", "yesterday"))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v6 + 1)))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/sheets/" + sheetId + "/diff").param("from", String.valueOf(v3)).param("to", String.valueOf(v2)))
+                    .andExpect(status().isBadRequest());
+        } finally {
+            Integer bookId = historyBook.getId();
+            activityLogRepository.deleteAll(activityLogRepository.findAll().stream()
+                    .filter(log -> bookId.equals(log.getBookId())).toList());
+            bookRepository.deleteById(bookId);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testArchivingOldPartitionsKeepsLaterHistoryReadable(@TempDir Path archiveDir) throws Exception {
+        Book archiveBook = new Book();
+        archiveBook.setName("archive-book-" + System.nanoTime());
+        archiveBook = bookRepository.save(archiveBook);
+        int sheetId = -1;
+        try {
+            String created = mockMvc.perform(post("/sheets")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"name\": \"archived\", \"book\": {\"id\": " + archiveBook.getId() + "}}"))
+                    .andExpect(status().isCreated())
+                    .andReturn().getResponse().getContentAsString();
+            sheetId = objectMapper.readTree(created).get("data").get("id").asInt();
+            long v1 = writeCell(sheetId, "A", "1", null);
+            writeCell(sheetId, "B", null, "=A1*2");
+            long v3 = writeCell(sheetId, "A", "5", null);
+
+            // Move everything so far into the oldest partition, then write once more today
+            List<ActivityLogPartition> partitions = activityLogRepository.findPartitions();
+            String oldest = partitions.get(0).name();
+            int moved = jdbcTemplate.update("UPDATE activity_log SET updated_at = '2000-01-15 12:00:00' WHERE sheet_id = ?", sheetId);
+            long v4 = writeCell(sheetId, "C", "7", null);
+
+            assertEquals(List.of(oldest), activityLogArchiver.archivePartitions(partitions.get(0).before(), archiveDir));
+            assertFalse(activityLogRepository.findPartitions().stream().anyMatch(partition -> partition.name().equals(oldest)));
+            assertEquals(1, activityLogRepository.countSheetEntries(sheetId, -1));
+
+            List<String> archived;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(archiveDir.resolve("activity_log-" + oldest + ".ndjson.gz")))) {
+                archived = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+            }
+            int archivedSheetId = sheetId;
+            assertEquals(moved, archived.stream().filter(line -> line.contains("\"sheet_id\":" + archivedSheetId + ",")).count());
+            Map<String, Object> daily = jdbcTemplate.queryForMap(
+                    "SELECT SUM(entries) AS entries, MIN(day) AS day, MAX(last_version) AS last_version FROM activity_log_daily WHERE sheet_id = ?", sheetId);
+            assertEquals(moved, ((Number) daily.get("entries")).intValue());
+            assertEquals("2000-01-15", daily.get("day").toString());
+            assertEquals(v3, ((Number) daily.get("last_version")).longValue());
+
+            // The sheet was snapshotted where its archived entries end, so later versions still rebuild
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v3)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.cells[*].value", contains("5", "10.0")));
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v4)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.cells[*].value", contains("5", "10.0", "7")));
+            mockMvc.perform(get("/sheets/" + sheetId).param("version", String.valueOf(v1)))
+                    .andExpect(status().isGone());
+            mockMvc.perform(get("/sheets/" + sheetId + "/changes").param("since", String.valueOf(v1)))
+                    .andExpect(status().isGone());
+            mockMvc.perform(get("/sheets/" + sheetId + "/changes").param("since", String.valueOf(v3)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.data.changes[*].colNum", contains("C")));
+
+            LocalDate later = LocalDate.now().plusMonths(12);
+            activityLogArchiver.addPartitions(later);
+            List<ActivityLogPartition> extended = activityLogRepository.findPartitions();
+            assertTrue(extended.get(extended.size() - 2).before().isAfter(later));
+            assertNull(extended.get(extended.size() - 1).before());
+        } finally {
+            jdbcTemplate.update("DELETE FROM activity_log_daily WHERE sheet_id = ?", sheetId);
+            Integer bookId = archiveBook.getId();
+            activityLogRepository.deleteAll(activityLogRepository.findAll().stream()
+                    .filter(log -> bookId.equals(log.getBookId())).toList());
+            bookRepository.deleteById(bookId);
+        }
+    }
+
+    // Commits one cell write in row 1 and returns the sheet version it produced
+    private long writeCell(int sheetId, String colNum, String value, String formula) throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        body.put("sheet", Map.of("id", sheetId));
+        body.put("rowNum", 1);
+        body.put("colNum", colNum);
+        body.put("value", value);
+        body.put("formula", formula);
+        mockMvc.perform(post("/cells").contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(body)))
+                .andExpect(status().is2xxSuccessful());
+        return sheetRepository.findVersionById(sheetId).orElseThrow();
+    }
+
+    private JsonNode awaitImport(Integer sheetId, String format, String body) throws Exception {
+        String response = mockMvc.perform(post("/sheets/" + sheetId + "/import").param("format", format)
+                .contentType(MediaType.TEXT_PLAIN).content(body))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        String jobId = objectMapper.readTree(response).get("data").get("id").asText();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            JsonNode job = objectMapper.readTree(mockMvc.perform(get("/sheets/" + sheetId + "/import/" + jobId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString()).get("data");
+            String state = job.get("status").asText();
+            if (state.equals("COMPLETED") || state.equals("FAILED") || System.nanoTime() > deadline) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+    }
 }
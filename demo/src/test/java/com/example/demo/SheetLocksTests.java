@@ -0,0 +1,67 @@
+package com.example.demo;
+
+import com.example.demo.exception.SheetBusyException;
+import com.example.demo.service.SheetLocks;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SheetLocksTests {
+
+    private static boolean tryWrite(SheetLocks locks, int sheetId) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return locks.callLocked(sheetId, () -> true);
+            } catch (SheetBusyException e) {
+                return false;
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testCallLockedHoldsTheSheetOnlyWhileTheWriteRuns() throws Exception {
+        SheetLocks locks = new SheetLocks(64, 50);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> writer = CompletableFuture.supplyAsync(() -> locks.callLocked(1, () -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "written";
+        }));
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+        // Another writer to the sheet times out; other sheets go ahead
+        assertFalse(tryWrite(locks, 1));
+        assertTrue(tryWrite(locks, 2));
+
+        release.countDown();
+        assertEquals("written", writer.get(5, TimeUnit.SECONDS));
+        assertTrue(tryWrite(locks, 1));
+    }
+
+    @Test
+    void testCallLockedInsideATransactionHoldsTheSheetUntilItCompletes() throws Exception {
+        SheetLocks locks = new SheetLocks(64, 50);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertEquals("written", locks.callLocked(1, () -> "written"));
+            assertFalse(tryWrite(locks, 1));
+        } finally {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(tryWrite(locks, 1));
+    }
+}
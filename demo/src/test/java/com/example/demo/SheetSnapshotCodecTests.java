@@ -0,0 +1,60 @@
+package com.example.demo;
+
+import com.example.demo.dto.CellExportRow;
+import com.example.demo.formula.CellRef;
+import com.example.demo.service.SheetCellCache;
+import com.example.demo.service.SheetSnapshotCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SheetSnapshotCodecTests {
+
+    @Test
+    void testCellsRoundTrip() {
+        List<CellExportRow> cells = List.of(
+                new CellExportRow(1, "A", "1", null),
+                new CellExportRow(1, "XFD", null, null),
+                new CellExportRow(7, "B", "2.0", "=A1*2"),
+                new CellExportRow(1_048_576, "C", "héllo, \"wörld\"\n", null),
+                new CellExportRow(1_048_576, "D", "x".repeat(70_000), null),
+                // Out of order: stored as a negative row step
+                new CellExportRow(3, "A", "", "=SUM(A1:A2)"));
+
+        SheetSnapshotCodec.Contents decoded = SheetSnapshotCodec.decode(SheetSnapshotCodec.encode("Sheet 1", cells.iterator()));
+        assertEquals("Sheet 1", decoded.name());
+        assertEquals(cells.size(), decoded.cells().size());
+        for (CellExportRow cell : cells) {
+            SheetCellCache.CachedCell stored = decoded.cells().get(cell.rowNum(), CellRef.columnIndex(cell.colNum()));
+            assertEquals(new SheetCellCache.CachedCell(cell.value(), cell.formula()), stored, cell.toString());
+        }
+    }
+
+    @Test
+    void testEmptySheetAndUnaddressableCells() {
+        SheetSnapshotCodec.Contents empty = SheetSnapshotCodec.decode(SheetSnapshotCodec.encode(null, List.<CellExportRow>of().iterator()));
+        assertNull(empty.name());
+        assertTrue(empty.cells().isEmpty());
+
+        SheetSnapshotCodec.Contents legacy = SheetSnapshotCodec.decode(
+                SheetSnapshotCodec.encode("s", List.of(new CellExportRow(1, "A1", "bad", null), new CellExportRow(2, "A", "ok", null)).iterator()));
+        assertEquals(1, legacy.cells().size());
+        assertEquals("ok", legacy.cells().get(2, 1).value());
+    }
+
+    @Test
+    void testRegularSheetCompressesWell() {
+        List<CellExportRow> cells = new ArrayList<>();
+        for (int row = 1; row <= 10_000; row++) {
+            cells.add(new CellExportRow(row, "A", String.valueOf(row), null));
+            cells.add(new CellExportRow(row, "B", String.valueOf(row * 2.0), "=A" + row + "*2"));
+        }
+        byte[] data = SheetSnapshotCodec.encode("big", cells.iterator());
+        // Well under the ~20 bytes per cell of the raw text
+        assertTrue(data.length < cells.size() * 5, "snapshot of " + data.length + " bytes");
+        assertEquals(cells.size(), SheetSnapshotCodec.decode(data).cells().size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Counts the SQL statements the application prepares, JPA and JdbcTemplate alike, so tests can pin the number
+ * of queries an endpoint issues. A JDBC batch counts once. Import it into a test class and call reset()
+ * before the request under test.
+ */
+public class SqlStatementCounter implements BeanPostProcessor {
+    private final List<String> statements = new ArrayList<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof CountingDataSource)) {
+            return new CountingDataSource(dataSource);
+        }
+        return bean;
+    }
+
+    public synchronized void reset() {
+        statements.clear();
+    }
+
+    public synchronized int count() {
+        return statements.size();
+    }
+
+    // The statements since the last reset, for assertion messages
+    public synchronized List<String> statements() {
+        return List.copyOf(statements);
+    }
+
+    private synchronized void record(String sql) {
+        statements.add(sql);
+    }
+
+    private class CountingDataSource extends DelegatingDataSource {
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement", "prepareCall" -> record((String) args[0]);
+                            case "createStatement" -> record("<statement>");
+                            default -> { }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.demo.loadtest;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.example.demo.DemoApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Boots the application against an embedded MariaDB (or --jdbc-url), seeds it, replays the operation mix and writes
+ * {@code result.json} plus one HdrHistogram percentile distribution ({@code <request>.hgrm}) per request type.
+ */
+public class LoadTest {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        DB db = null;
+        ConfigurableApplicationContext app = null;
+        try {
+            String jdbcUrl = options.jdbcUrl();
+            if (jdbcUrl == null) {
+                db = DB.newEmbeddedDB(embeddedDatabaseConfig().build());
+                db.start();
+                jdbcUrl = createDatabase(db.getConfiguration().getPort());
+            }
+
+            app = new SpringApplicationBuilder(DemoApplication.class).run(
+                    "--server.port=0",
+                    "--spring.datasource.url=" + jdbcUrl,
+                    "--spring.datasource.username=" + options.jdbcUser(),
+                    "--spring.datasource.password=" + options.jdbcPassword(),
+                    // Statement logging alone would dominate the measured latencies
+                    "--spring.jpa.show-sql=false");
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            Workload workload = new Workload(URI.create("http://localhost:" + port), options);
+
+            System.out.println("Seeding " + options.sheets() + " sheets of " + options.rows() + "x" + options.cols() + " cells");
+            workload.seed();
+            System.out.println("Running " + options.clients() + " clients for " + options.warmupSeconds() + "s warmup + "
+                    + options.durationSeconds() + "s");
+            Instant startedAt = Instant.now();
+            Workload.Results results = workload.run();
+            report(options, startedAt, results);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (db != null) {
+                db.stop();
+            }
+        }
+    }
+
+    private static DBConfigurationBuilder embeddedDatabaseConfig() {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        // 0 picks a free port
+        config.setPort(0);
+        // mysqld refuses to start as root unless the user is named explicitly
+        config.addArg("--user=root");
+        return config;
+    }
+
+    // Over JDBC rather than DB.createDB, which shells out to the mariadb client and its ncurses dependency
+    private static String createDatabase(int port) throws SQLException {
+        String server = "jdbc:mysql://localhost:" + port + "/";
+        try (Connection connection = DriverManager.getConnection(server + "mysql", "root", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE IF NOT EXISTS loadtest");
+        }
+        return server + "loadtest";
+    }
+
+    private static void report(LoadTestOptions options, Instant startedAt, Workload.Results results) throws IOException {
+        Files.createDirectories(options.out());
+        double seconds = options.durationSeconds();
+        long totalCount = 0;
+        long totalErrors = 0;
+
+        Map<String, Object> requests = new LinkedHashMap<>();
+        System.out.printf("%-12s %9s %9s %9s %9s %9s %9s %9s %7s%n",
+                "request", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Map.Entry<String, Histogram> entry : results.latencies().entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            Map<Integer, Long> statuses = results.statuses().get(name);
+            long errors = statuses.entrySet().stream()
+                    .filter(status -> status.getKey() < 200 || status.getKey() >= 300)
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+            totalCount += histogram.getTotalCount();
+            totalErrors += errors;
+
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("mean", round(histogram.getMean() / MICROS_PER_MILLI));
+            latency.put("p50", millis(histogram, 50));
+            latency.put("p90", millis(histogram, 90));
+            latency.put("p99", millis(histogram, 99));
+            latency.put("p999", millis(histogram, 99.9));
+            latency.put("max", round(histogram.getMaxValue() / MICROS_PER_MILLI));
+
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("count", histogram.getTotalCount());
+            request.put("throughput", round(histogram.getTotalCount() / seconds));
+            request.put("errors", errors);
+            request.put("statuses", statuses);
+            request.put("latencyMs", latency);
+            requests.put(name, request);
+
+            System.out.printf("%-12s %9d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %7d%n",
+                    name, histogram.getTotalCount(), histogram.getTotalCount() / seconds, latency.get("p50"),
+                    latency.get("p90"), latency.get("p99"), latency.get("p999"), latency.get("max"), errors);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(options.out().resolve(name + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("count", totalCount);
+        totals.put("throughput", round(totalCount / seconds));
+        totals.put("errors", totalErrors);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startedAt", startedAt.toString());
+        result.put("options", options.toMap());
+        result.put("totals", totals);
+        result.put("requests", requests);
+        Path file = options.out().resolve("result.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), result);
+        System.out.println("Wrote " + file.toAbsolutePath());
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return round(histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
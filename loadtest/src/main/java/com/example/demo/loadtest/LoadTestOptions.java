@@ -0,0 +1,119 @@
+package com.example.demo.loadtest;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line options, given as {@code --name=value}. Every option has a default so a bare run is a useful smoke test.
+ */
+public record LoadTestOptions(
+        int clients,
+        int warmupSeconds,
+        int durationSeconds,
+        int rate,
+        int books,
+        int sheets,
+        int rows,
+        int cols,
+        Map<String, Integer> mix,
+        long randomSeed,
+        Path out,
+        String jdbcUrl,
+        String jdbcUser,
+        String jdbcPassword) {
+
+    private static final Set<String> KNOWN = Set.of(
+            "clients", "warmup", "duration", "rate", "books", "sheets", "rows", "cols", "mix",
+            "random-seed", "out", "jdbc-url", "jdbc-user", "jdbc-password");
+
+    static final String DEFAULT_MIX = "putCell=50,getCell=20,getCells=20,putFormula=8,recycleSheet=2";
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got '" + arg + "'.");
+            }
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+                intOption(values, "clients", 16),
+                intOption(values, "warmup", 5),
+                intOption(values, "duration", 30),
+                intOption(values, "rate", 0),
+                intOption(values, "books", 2),
+                intOption(values, "sheets", 16),
+                intOption(values, "rows", 200),
+                intOption(values, "cols", 10),
+                parseMix(values.getOrDefault("mix", DEFAULT_MIX)),
+                Long.parseLong(values.getOrDefault("random-seed", "42")),
+                Path.of(values.getOrDefault("out", "target/loadtest")),
+                values.get("jdbc-url"),
+                values.getOrDefault("jdbc-user", "root"),
+                values.getOrDefault("jdbc-password", ""));
+        for (String name : values.keySet()) {
+            if (!KNOWN.contains(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name + ".");
+            }
+        }
+        if (options.clients < 1 || options.durationSeconds < 1 || options.warmupSeconds < 0 || options.rate < 0) {
+            throw new IllegalArgumentException("clients and duration must be positive, warmup and rate non-negative.");
+        }
+        if (options.books < 1 || options.sheets < options.books || options.rows < 1) {
+            throw new IllegalArgumentException("Need at least one book, one sheet per book and one row.");
+        }
+        // One column past the value columns holds the row formulas
+        if (options.cols < 1 || options.cols > 25) {
+            throw new IllegalArgumentException("cols must be between 1 and 25.");
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> values, String name, int defaultValue) {
+        String value = values.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be an integer.");
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2 || !Workload.OPERATIONS.contains(parts[0])) {
+                throw new IllegalArgumentException("Bad mix entry '" + entry + "'; operations are " + Workload.OPERATIONS + ".");
+            }
+            int weight = Integer.parseInt(parts[1]);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weights must not be negative.");
+            }
+            weights.put(parts[0], weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("The mix needs at least one positive weight.");
+        }
+        return weights;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("clients", clients);
+        map.put("warmupSeconds", warmupSeconds);
+        map.put("durationSeconds", durationSeconds);
+        map.put("rate", rate);
+        map.put("books", books);
+        map.put("sheets", sheets);
+        map.put("rows", rows);
+        map.put("cols", cols);
+        map.put("mix", mix);
+        map.put("randomSeed", randomSeed);
+        map.put("database", jdbcUrl == null ? "embedded" : jdbcUrl);
+        return map;
+    }
+}
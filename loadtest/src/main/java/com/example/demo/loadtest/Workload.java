@@ -0,0 +1,286 @@
+package com.example.demo.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seeds a pool of sheets over HTTP, then replays the configured operation mix against them from concurrent clients.
+ * Every sheet holds values in columns A.. for {@code rows} rows; {@code putFormula} writes a row total into the
+ * column after them, so later value writes to that row also pay for a recalculation.
+ */
+final class Workload {
+    static final List<String> OPERATIONS = List.of("putCell", "putFormula", "getCell", "getCells", "recycleSheet");
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final LoadTestOptions options;
+    private final URI baseUri;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicIntegerArray sheetIds;
+    private final int[] sheetBooks;
+    private final AtomicInteger sheetNames = new AtomicInteger();
+    private final String[] operations;
+    private final int[] cumulativeWeights;
+
+    Workload(URI baseUri, LoadTestOptions options) {
+        this.baseUri = baseUri;
+        this.options = options;
+        this.sheetIds = new AtomicIntegerArray(options.sheets());
+        this.sheetBooks = new int[options.sheets()];
+
+        List<String> names = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : options.mix().entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                names.add(entry.getKey());
+                weights.add(total);
+            }
+        }
+        this.operations = names.toArray(String[]::new);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    record Results(Map<String, Histogram> latencies, Map<String, Map<Integer, Long>> statuses) {
+    }
+
+    void seed() throws InterruptedException {
+        Client client = new Client(new Random(options.randomSeed()), Long.MAX_VALUE, Long.MAX_VALUE, 0);
+        int[] bookIds = new int[options.books()];
+        for (int i = 0; i < bookIds.length; i++) {
+            bookIds[i] = client.idOf(client.send("createBook", post("/books", Map.of("name", "loadtest-" + i)), System.nanoTime()));
+        }
+        for (int slot = 0; slot < sheetBooks.length; slot++) {
+            sheetBooks[slot] = bookIds[slot % bookIds.length];
+            int sheetId = client.createSheet(sheetBooks[slot], System.nanoTime());
+            if (sheetId < 0 || !client.fill(sheetId)) {
+                throw new IllegalStateException("Could not seed sheet " + slot + ".");
+            }
+            sheetIds.set(slot, sheetId);
+        }
+    }
+
+    Results run() throws InterruptedException {
+        long now = System.nanoTime();
+        long measureFrom = now + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        long interval = options.rate() == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) * options.clients() / options.rate();
+
+        List<Client> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.clients(); i++) {
+            Client client = new Client(new Random(options.randomSeed() + i + 1), measureFrom, end, interval);
+            // Stagger open-loop clients so their schedules do not fire in bursts
+            client.next = now + interval * i / options.clients();
+            clients.add(client);
+            threads.add(new Thread(client, "loadtest-client-" + i));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, Histogram> latencies = new TreeMap<>();
+        Map<String, Map<Integer, Long>> statuses = new TreeMap<>();
+        for (Client client : clients) {
+            client.latencies.forEach((name, histogram) ->
+                    latencies.computeIfAbsent(name, k -> new Histogram(3)).add(histogram));
+            client.statuses.forEach((name, counts) -> counts.forEach((status, count) ->
+                    statuses.computeIfAbsent(name, k -> new TreeMap<>()).merge(status, count, Long::sum)));
+        }
+        return new Results(latencies, statuses);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+    }
+
+    private HttpRequest delete(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).DELETE().build();
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(baseUri.resolve(path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String column(int index) {
+        return String.valueOf((char) ('A' + index));
+    }
+
+    /*
+     * One simulated user. Closed loop by default: the next operation starts when the previous one returns. With
+     * --rate each client follows a fixed schedule instead and latency is measured from the scheduled start, so a
+     * stalled server shows up in the percentiles rather than as fewer samples (coordinated omission).
+     */
+    private final class Client implements Runnable {
+        private final Random random;
+        private final long measureFrom;
+        private final long end;
+        private final long interval;
+        private long next;
+        private final Map<String, Histogram> latencies = new TreeMap<>();
+        private final Map<String, Map<Integer, Long>> statuses = new TreeMap<>();
+
+        Client(Random random, long measureFrom, long end, long interval) {
+            this.random = random;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.interval = interval;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long start;
+                    if (interval > 0) {
+                        start = next;
+                        next += interval;
+                        long wait = start - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        start = System.nanoTime();
+                    }
+                    if (start >= end) {
+                        return;
+                    }
+                    execute(pick(), start);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String pick() {
+            int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (roll >= cumulativeWeights[i]) {
+                i++;
+            }
+            return operations[i];
+        }
+
+        private void execute(String operation, long start) throws InterruptedException {
+            int slot = random.nextInt(sheetIds.length());
+            int sheetId = sheetIds.get(slot);
+            int row = 1 + random.nextInt(options.rows());
+            int cols = options.cols();
+            switch (operation) {
+                case "putCell" -> send("putCell", post("/cells", Map.of(
+                        "sheet", Map.of("id", sheetId),
+                        "rowNum", row,
+                        "colNum", column(random.nextInt(cols)),
+                        "value", value())), start);
+                case "putFormula" -> send("putFormula", post("/cells", Map.of(
+                        "sheet", Map.of("id", sheetId),
+                        "rowNum", row,
+                        "colNum", column(cols),
+                        "formula", "=SUM(A" + row + ":" + column(cols - 1) + row + ")")), start);
+                case "getCell" -> send("getCell", get("/cells/" + sheetId + "/" + row + "/" + column(random.nextInt(cols))), start);
+                case "getCells" -> send("getCells", get("/cells?sheetId=" + sheetId), start);
+                case "recycleSheet" -> recycle(slot, start);
+                default -> throw new IllegalStateException("Unknown operation " + operation);
+            }
+        }
+
+        // Replaces a pooled sheet with a freshly filled one and deletes the old sheet with all its cells
+        private void recycle(int slot, long start) throws InterruptedException {
+            int sheetId = createSheet(sheetBooks[slot], start);
+            if (sheetId < 0 || !fill(sheetId)) {
+                return;
+            }
+            int oldSheetId = sheetIds.getAndSet(slot, sheetId);
+            send("deleteSheet", delete("/sheets/" + oldSheetId), System.nanoTime());
+        }
+
+        private int createSheet(int bookId, long start) throws InterruptedException {
+            HttpResponse<byte[]> response = send("createSheet", post("/sheets", Map.of(
+                    "name", "sheet-" + sheetNames.incrementAndGet(),
+                    "book", Map.of("id", bookId))), start);
+            return response != null && response.statusCode() == 201 ? idOf(response) : -1;
+        }
+
+        private boolean fill(int sheetId) throws InterruptedException {
+            List<Map<String, Object>> cells = new ArrayList<>(BATCH_SIZE);
+            for (int row = 1; row <= options.rows(); row++) {
+                for (int col = 0; col < options.cols(); col++) {
+                    cells.add(Map.of("rowNum", row, "colNum", column(col), "value", value()));
+                    if (cells.size() == BATCH_SIZE || (row == options.rows() && col == options.cols() - 1)) {
+                        HttpResponse<byte[]> response = send("putBatch", post("/cells/batch", Map.of(
+                                "sheet", Map.of("id", sheetId),
+                                "cells", cells)), System.nanoTime());
+                        if (response == null || response.statusCode() != 200) {
+                            return false;
+                        }
+                        cells = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private String value() {
+            return String.valueOf(random.nextInt(100_000) / 100.0);
+        }
+
+        // Returns null when the request failed without a response; that is counted as status 0
+        private HttpResponse<byte[]> send(String name, HttpRequest request, long start) throws InterruptedException {
+            HttpResponse<byte[]> response = null;
+            try {
+                response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            } catch (IOException e) {
+                // counted below
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            if (start >= measureFrom) {
+                latencies.computeIfAbsent(name, k -> new Histogram(3)).recordValue(micros);
+                statuses.computeIfAbsent(name, k -> new TreeMap<>())
+                        .merge(response == null ? 0 : response.statusCode(), 1L, Long::sum);
+            }
+            return response;
+        }
+
+        private int idOf(HttpResponse<byte[]> response) {
+            try {
+                if (response == null || response.statusCode() >= 300) {
+                    throw new IllegalStateException("Request failed: " + (response == null ? "no response" : new String(response.body())));
+                }
+                return mapper.readTree(response.body()).path("data").path("id").asInt();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}